@@ -1,7 +1,12 @@
+import java.io.OutputStream
+import org.gradle.process.ExecOperations
+import javax.inject.Inject
+
 plugins {
     id("java-library")
     id("maven-publish")
     id("jacoco")
+    alias(libs.plugins.jmh)
     alias(libs.plugins.jreleaser)
 }
 
@@ -47,6 +52,28 @@ dependencies {
 
 }
 
+// Multi-release JAR: classes in src/main/java21 replace their Java 11 version on Java 21+
+val java21: SourceSet by sourceSets.creating {
+    java.srcDir("src/main/java21")
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+}
+
+tasks.named<JavaCompile>(java21.compileJavaTaskName) {
+    javaCompiler.set(javaToolchains.compilerFor {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    })
+    options.release.set(21)
+}
+
+tasks.jar {
+    into("META-INF/versions/21") {
+        from(java21.output)
+    }
+    manifest {
+        attributes("Multi-Release" to "true")
+    }
+}
+
 // Set Gradle version
 tasks.wrapper {
     gradleVersion = "8.14"
@@ -54,7 +81,219 @@ tasks.wrapper {
 }
 
 tasks.test {
-    useJUnitPlatform()
+    useJUnitPlatform {
+        excludeTags("scaling")
+    }
+}
+
+// Keep the font indexes of the tests out of the user cache
+tasks.withType<Test>().configureEach {
+    systemProperty("stellar.fonts.indexDir", layout.buildDirectory.dir("test/font-index").get().asFile.path)
+}
+
+// Runs the tests on Java 21 against the multi-release jar, so that the classes in
+// src/main/java21 are tested in place of their Java 11 version
+val test21 by tasks.registering(Test::class) {
+    description = "Runs the tests on Java 21 with the multi-release jar."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = files(tasks.jar) + sourceSets.test.get().output +
+        (sourceSets.test.get().runtimeClasspath - sourceSets.main.get().output)
+    javaLauncher.set(javaToolchains.launcherFor {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    })
+    useJUnitPlatform {
+        excludeTags("scaling")
+    }
+}
+
+// Render generated documents from 10 to 5,000 pages and compare with the stored baselines,
+// e.g. `./gradlew scalingTest -Dstellar.scaling.margin=0.5` (see ScalingTest for the options);
+// not part of `check` as timings depend on the machine
+val scalingTest by tasks.registering(Test::class) {
+    description = "Runs the scaling regression suite."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("scaling")
+    }
+    maxHeapSize = "2g"
+    testLogging.showStandardStreams = true
+    outputs.upToDateWhen { false }
+    System.getProperties().stringPropertyNames()
+        .filter { it.startsWith("stellar.scaling.") }
+        .forEach { systemProperty(it, System.getProperty(it)) }
+}
+
+tasks.check {
+    dependsOn(test21)
+}
+
+// Benchmarks in src/jmh/java, run with `./gradlew jmh` (use -Pjmh.includes=<regex> to select)
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+    // Report the allocation rate of each benchmark next to its time
+    profilers.set(listOf("gc"))
+    findProperty("jmh.includes")?.let { includes.set(listOf(it as String)) }
+}
+
+// Fast-start CLI in build/stellar-cli: `./gradlew cli` copies the jars and the launcher script,
+// trains a class-data sharing archive by rendering the test corpus and reports the startup
+// time with and without it
+val cliDir = layout.buildDirectory.dir("stellar-cli")
+val cliJars = files(tasks.jar, configurations.runtimeClasspath)
+
+val cliLibs by tasks.registering(Sync::class) {
+    description = "Copies the jars of the command line interface."
+    from(cliJars)
+    into(cliDir.map { it.dir("lib") })
+    preserve {
+        include("stellar.jsa", "classpath.txt")
+    }
+}
+
+val cliScripts by tasks.registering(Copy::class) {
+    description = "Copies the launcher script of the command line interface."
+    from("src/cli/bin")
+    into(cliDir.map { it.dir("bin") })
+    filePermissions {
+        unix("rwxr-xr-x")
+    }
+}
+
+val cliArchive by tasks.registering(CdsArchive::class) {
+    description = "Creates the class-data sharing archive of the command line interface."
+    dependsOn(cliLibs)
+    // The archive is only valid for the jars listed in this order
+    classpath.from(cliDir.map { dir -> cliJars.files.map { dir.file("lib/${it.name}") } })
+    corpus.set(layout.projectDirectory.dir("src/test/resources"))
+    documents.set(linkedMapOf(
+        "whales" to "whale.css",
+        "turtles" to "turtles.css",
+        "policy" to "policy.css",
+        "useless" to "useless.css",
+        "basic" to "basic.css"))
+    launcher.set(javaToolchains.launcherFor {
+        languageVersion.set(JavaLanguageVersion.of(11))
+    })
+    workDir.set(layout.buildDirectory.dir("cds"))
+    archive.set(cliDir.map { it.file("lib/stellar.jsa") })
+    classpathFile.set(cliDir.map { it.file("lib/classpath.txt") })
+}
+
+tasks.register("cli") {
+    description = "Assembles the fast-start command line interface in build/stellar-cli."
+    group = "distribution"
+    dependsOn(cliLibs, cliScripts, cliArchive)
+}
+
+/**
+ * Creates an application class-data sharing archive from the classes loaded when rendering
+ * the documents of a corpus, then measures the startup time with and without the archive.
+ */
+abstract class CdsArchive @Inject constructor(private val execOps: ExecOperations) : DefaultTask() {
+
+    @get:InputFiles
+    abstract val classpath: ConfigurableFileCollection
+
+    @get:InputDirectory
+    abstract val corpus: DirectoryProperty
+
+    /**
+     * The name of each PSML document in the corpus and its stylesheet.
+     */
+    @get:Input
+    abstract val documents: MapProperty<String, String>
+
+    @get:Nested
+    abstract val launcher: Property<JavaLauncher>
+
+    @get:Internal
+    abstract val workDir: DirectoryProperty
+
+    @get:OutputFile
+    abstract val archive: RegularFileProperty
+
+    @get:OutputFile
+    abstract val classpathFile: RegularFileProperty
+
+    @TaskAction
+    fun create() {
+        val java = launcher.get().executablePath.asFile.absolutePath
+        val jars = classpath.files.toList()
+        val cp = jars.joinToString(File.pathSeparator) { it.absolutePath }
+        val jsa = archive.get().asFile
+        classpathFile.get().asFile.writeText(jars.joinToString("\n", postfix = "\n") { it.name })
+
+        // Record the classes loaded by the CLI when rendering each document
+        val classes = linkedSetOf<String>()
+        for ((document, stylesheet) in documents.get()) {
+            val dir = prepare(document, stylesheet)
+            val list = File(dir, "classes.lst")
+            run(dir, java, "-XX:DumpLoadedClassList=${list.absolutePath}", "-cp", cp, MAIN)
+            list.readLines().filterTo(classes) { it.isNotBlank() && !it.startsWith("#") }
+        }
+        val classList = workDir.file("classes.lst").get().asFile
+        classList.writeText(classes.joinToString("\n", postfix = "\n"))
+
+        run(workDir.get().asFile, java, "-Xshare:dump", "-XX:SharedClassListFile=${classList.absolutePath}",
+            "-XX:SharedArchiveFile=${jsa.absolutePath}", "-cp", cp)
+        logger.lifecycle("Created class-data sharing archive of ${classes.size} classes: $jsa")
+
+        // Time the whole run, startup included, on the first document
+        val first = documents.get().keys.first()
+        val dir = workDir.dir(first).get().asFile
+        val without = median { run(dir, java, "-Xshare:off", "-cp", cp, MAIN) }
+        val with = median { run(dir, java, "-XX:SharedArchiveFile=${jsa.absolutePath}", "-Xshare:auto", "-cp", cp, MAIN) }
+        val report = "Rendering $first.psml takes ${without}ms without the archive and ${with}ms with it (median of $RUNS runs)"
+        logger.lifecycle(report)
+        workDir.file("startup.txt").get().asFile.writeText(report + "\n")
+    }
+
+    /**
+     * Creates a working directory with the main.properties of the CLI to render a document.
+     */
+    private fun prepare(document: String, stylesheet: String): File {
+        val dir = workDir.dir(document).get().asFile
+        dir.mkdirs()
+        val resources = corpus.get().asFile
+        fun path(file: File) = file.absolutePath.replace('\\', '/')
+        File(dir, "main.properties").writeText("""
+            source=${path(File(resources, "psml/$document.psml"))}
+            output=${path(File(dir, "$document.pdf"))}
+            stylesheet=${path(File(resources, "css/$stylesheet"))}
+            fonts=${path(File(resources, "fonts"))}
+            """.trimIndent() + "\n")
+        return dir
+    }
+
+    private fun run(dir: File, vararg command: String) {
+        execOps.exec {
+            workingDir = dir
+            commandLine(*command)
+            standardOutput = OutputStream.nullOutputStream()
+            errorOutput = OutputStream.nullOutputStream()
+        }
+    }
+
+    private fun median(action: () -> Unit): Long {
+        val times = (1..RUNS).map {
+            val start = System.nanoTime()
+            action()
+            (System.nanoTime() - start) / 1_000_000
+        }
+        return times.sorted()[RUNS / 2]
+    }
+
+    companion object {
+        const val MAIN = "org.pageseeder.stellar.Main"
+        const val RUNS = 5
+    }
 }
 
 tasks.withType<Javadoc> {
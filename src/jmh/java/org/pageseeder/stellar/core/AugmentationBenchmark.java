@@ -0,0 +1,77 @@
+package org.pageseeder.stellar.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the augmentation of a PSML document in separate passes with the single traversal
+ * of a {@link DocumentAugmenter}.
+ *
+ * <p>The separate passes load the info values and bookmarks with the {@link LegacyLoading}
+ * scans, since {@link Info#load} and {@link Bookmarks#load} now use the single traversal too.
+ * Each invocation augments a fresh copy of the document.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AugmentationBenchmark {
+
+  @Param({"whales", "policy-processed"})
+  public String document;
+
+  private Document template;
+
+  private Document doc;
+
+  @Setup(Level.Trial)
+  public void load() throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    this.template = factory.newDocumentBuilder().parse(new File("src/test/resources/psml/" + this.document + ".psml"));
+  }
+
+  @Setup(Level.Invocation)
+  public void copy() {
+    this.doc = (Document) this.template.cloneNode(true);
+  }
+
+  @Benchmark
+  public void sequential(Blackhole bh) throws Exception {
+    TOC.injectLinks(this.doc, TOC.DEFAULT_MAX_LEVEL);
+    TitlePage.injectTitleFragment(this.doc, new TitlePageConfig());
+    PsmlDecorator.addClasses(this.doc);
+    PsmlDecorator.addIds(this.doc);
+    bh.consume(LegacyLoading.loadInfo(this.doc));
+    bh.consume(LegacyLoading.loadBookmarks(this.doc, Bookmarks.DEFAULT_MAX_LEVEL));
+  }
+
+  @Benchmark
+  public void fused(Blackhole bh) {
+    Info.Collector info = Info.collector();
+    Bookmarks.Collector bookmarks = Bookmarks.collector(Bookmarks.DEFAULT_MAX_LEVEL);
+    new DocumentAugmenter(List.of(
+        TOC.linksStep(TOC.DEFAULT_MAX_LEVEL),
+        TitlePage.step(new TitlePageConfig()),
+        PsmlDecorator.classesStep(),
+        PsmlDecorator.idsStep(),
+        info,
+        bookmarks)).augment(this.doc);
+    bh.consume(info.getInfo());
+    bh.consume(bookmarks.getBookmarks());
+  }
+
+}
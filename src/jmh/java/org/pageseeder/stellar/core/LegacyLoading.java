@@ -0,0 +1,165 @@
+package org.pageseeder.stellar.core;
+
+import com.lowagie.text.pdf.PdfName;
+import com.lowagie.text.pdf.PdfString;
+import org.eclipse.jdt.annotation.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xhtmlrenderer.pdf.DOMUtil;
+
+import javax.xml.xpath.XPathExpressionException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The loading of the PDF info values and bookmarks as it was before it was merged into the
+ * single traversal of the {@link DocumentAugmenter}: one DOM scan per kind of element and an
+ * XPath query for the headings.
+ *
+ * <p>Only used as the baseline of {@link AugmentationBenchmark}.
+ */
+final class LegacyLoading {
+
+  private LegacyLoading() {}
+
+  /**
+   * Loads the PDF info values with a separate scan for each element.
+   */
+  static Map<PdfName, PdfString> loadInfo(Document doc) {
+    Map<PdfName, PdfString> values = new HashMap<>();
+    Element root = doc.getDocumentElement();
+    Element document = (Element) root.getElementsByTagName("document").item(0);
+    if (document != null) {
+      String date = document.getAttribute("date");
+      String version = document.getAttribute("version");
+      if (!date.isEmpty()) {
+        values.put(PdfName.DATE, Utils.toPdfDate(date));
+      }
+      if (!version.isEmpty() && !"current".equals(version)) {
+        values.put(PdfName.VERSION, new PdfString(version));
+      }
+    }
+    Element documentInfo = (Element) root.getElementsByTagName("documentinfo").item(0);
+    if (documentInfo != null) {
+      Element title = (Element) root.getElementsByTagName("displaytitle").item(0);
+      if (title != null) {
+        values.put(PdfName.TITLE, new PdfString(Utils.normalizeSpace(title.getTextContent())));
+      }
+      Element description = (Element) root.getElementsByTagName("description").item(0);
+      if (description != null) {
+        values.put(PdfName.SUBJECT, new PdfString(Utils.normalizeSpace(description.getTextContent())));
+      }
+    }
+    Element metadata = (Element) root.getElementsByTagName("metadata").item(0);
+    if (metadata != null) {
+      NodeList properties = metadata.getElementsByTagName("property");
+      for (int i = 0; i < properties.getLength(); i++) {
+        Element property = (Element) properties.item(i);
+        switch (property.getAttribute("name")) {
+          case "subject":
+            values.put(PdfName.SUBJECT, getProperty(property));
+            break;
+          case "authors":
+          case "author":
+            values.put(PdfName.AUTHOR, getProperty(property));
+            break;
+          case "keywords":
+            values.put(PdfName.KEYWORDS, getProperty(property));
+            break;
+          default:
+            // Ignore other metadata
+        }
+      }
+    }
+    return values;
+  }
+
+  /**
+   * Loads the bookmarks from the table of contents, or from the headings found with
+   * <code>//heading|//section/title</code>.
+   */
+  static List<PsmlBookmark> loadBookmarks(Document doc, int maxLevel) throws XPathExpressionException {
+    List<PsmlBookmark> bookmarks = new ArrayList<>();
+    Element toc = DOMUtil.getChild(doc.getDocumentElement(), "toc");
+    if (toc != null && toc.hasChildNodes()) {
+      Element tree = DOMUtil.getChild(toc, "toc-tree");
+      if (tree != null) {
+        for (Element part : DOMUtil.getChildren(tree, "toc-part")) {
+          loadBookmark(null, part, bookmarks, maxLevel);
+        }
+      }
+    } else {
+      Deque<PsmlBookmark> stack = new ArrayDeque<>();
+      NodeList nodes = Utils.getNodes(doc, "//heading|//section/title");
+      for (int i = 0; i < nodes.getLength(); i++) {
+        Element element = (Element) nodes.item(i);
+        int level = Utils.getIntAttribute(element, "level", 3);
+        if (level <= maxLevel) {
+          PsmlBookmark top = addBookmarkFromHeading(PsmlBookmark.fromHeading(element), stack, level);
+          if (top != null) {
+            bookmarks.add(top);
+          }
+        }
+      }
+    }
+    return bookmarks;
+  }
+
+  private static @Nullable PsmlBookmark addBookmarkFromHeading(PsmlBookmark bookmark, Deque<PsmlBookmark> stack, int level) {
+    while (stack.size() >= level) {
+      stack.pop();
+    }
+    PsmlBookmark parent = stack.peek();
+    if (level == 1) {
+      stack.push(bookmark);
+      return bookmark;
+    }
+    PsmlBookmark top = null;
+    while (level > stack.size() + 1) {
+      PsmlBookmark ghost = new PsmlBookmark("", "");
+      if (parent != null) {
+        parent.addChild(ghost);
+      } else {
+        top = ghost;
+      }
+      stack.push(ghost);
+      parent = ghost;
+    }
+    stack.push(bookmark);
+    parent.addChild(bookmark);
+    return top;
+  }
+
+  private static void loadBookmark(@Nullable PsmlBookmark parent, Element part, List<PsmlBookmark> bookmarks, int maxLevel) {
+    PsmlBookmark bookmark = PsmlBookmark.fromPart(part);
+    if (parent == null) {
+      bookmarks.add(bookmark);
+    } else {
+      parent.addChild(bookmark);
+    }
+    int level = Utils.getIntAttribute(part, "level", -1);
+    if (level < maxLevel) {
+      for (Element p : DOMUtil.getChildren(part, "toc-part")) {
+        loadBookmark(bookmark, p, bookmarks, maxLevel);
+      }
+    }
+  }
+
+  private static PdfString getProperty(Element property) {
+    if ("true".equals(property.getAttribute("multiple"))) {
+      return new PdfString(DOMUtil.getChildren(property, "value").stream()
+          .map(Node::getTextContent)
+          .map(Utils::normalizeSpace)
+          .collect(Collectors.joining(", ")));
+    }
+    return new PdfString(Utils.normalizeSpace(property.getAttribute("value")));
+  }
+
+}
@@ -0,0 +1,236 @@
+package org.pageseeder.stellar.core;
+
+import com.lowagie.text.pdf.PdfWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.resource.XMLResource;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each stage of the PDF pipeline separately on the test corpus.
+ *
+ * <p>Stages that modify the document or the renderer start from a fresh copy prepared outside
+ * of the measurement. The cost of writing the outline and metadata is the difference between
+ * {@link #createPdfWithOutline} and {@link #createPdf}; {@link #outlineDestinations} measures
+ * locating the bookmarks on the laid out pages on its own.
+ *
+ * <p>Run with <code>./gradlew jmh -Pjmh.includes=PipelineBenchmark</code>; the GC profiler
+ * reports the allocation rate of each stage next to its time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PipelineBenchmark {
+
+  private static final File PSML_DIR = new File("src/test/resources/psml");
+
+  private static final File FONTS_DIR = new File("src/test/resources/fonts");
+
+  private static final Map<String, String> STYLESHEETS = Map.of(
+      "useless", "useless.css",
+      "whales", "whale.css",
+      "policy", "policy.css");
+
+  @Param({"useless", "whales", "policy"})
+  public String document;
+
+  private File file;
+
+  private byte[] source;
+
+  private Document template;
+
+  private Document augmented;
+
+  private List<File> fonts;
+
+  private PdfRenderEngine engine;
+
+  private Document doc;
+
+  @Setup(Level.Trial)
+  public void load() throws Exception {
+    this.file = new File(PSML_DIR, this.document + ".psml");
+    this.source = Files.readAllBytes(this.file.toPath());
+    this.template = parse(this.source, this.file);
+    this.fonts = Fonts.listFonts(FONTS_DIR);
+    this.engine = new PdfRenderEngine(PdfRenderConfig.builder()
+        .fontsDir(FONTS_DIR)
+        .authorStylesheet(new File("src/test/resources/css", STYLESHEETS.get(this.document)))
+        .build());
+    this.augmented = (Document) this.template.cloneNode(true);
+    this.engine.augment(this.augmented);
+  }
+
+  @Setup(Level.Invocation)
+  public void copy() {
+    this.doc = (Document) this.template.cloneNode(true);
+  }
+
+  @Benchmark
+  public Document xmlLoad() {
+    return parse(this.source, this.file);
+  }
+
+  @Benchmark
+  public Document tocLinks() {
+    TOC.injectLinks(this.doc, TOC.DEFAULT_MAX_LEVEL);
+    return this.doc;
+  }
+
+  @Benchmark
+  public Document decoratorClasses() {
+    PsmlDecorator.addClasses(this.doc);
+    return this.doc;
+  }
+
+  @Benchmark
+  public Document decoratorIds() {
+    PsmlDecorator.addIds(this.doc);
+    return this.doc;
+  }
+
+  @Benchmark
+  public Document titlePage() {
+    TitlePage.injectTitleFragment(this.doc, new TitlePageConfig());
+    return this.doc;
+  }
+
+  @Benchmark
+  public Info infoLoad() {
+    return Info.load(this.doc);
+  }
+
+  @Benchmark
+  public Bookmarks bookmarksLoad() {
+    return Bookmarks.load(this.doc, Bookmarks.DEFAULT_MAX_LEVEL);
+  }
+
+  /**
+   * The baseline for {@link #loadFonts}.
+   */
+  @Benchmark
+  public ITextRenderer newRenderer() {
+    return new ITextRenderer();
+  }
+
+  @Benchmark
+  public ITextRenderer loadFonts() {
+    ITextRenderer renderer = new ITextRenderer();
+    Fonts.loadFonts(renderer, this.fonts);
+    return renderer;
+  }
+
+  @Benchmark
+  public void layout(Ready ready, Blackhole bh) {
+    ready.renderer.layout();
+    bh.consume(ready.renderer.getRootBox());
+  }
+
+  @Benchmark
+  public void createPdf(LaidOut laidOut) {
+    laidOut.renderer.createPDF(OutputStream.nullOutputStream());
+  }
+
+  @Benchmark
+  public void createPdfWithOutline(LaidOut laidOut) {
+    laidOut.renderer.setListener(laidOut.listener);
+    laidOut.renderer.createPDF(OutputStream.nullOutputStream());
+  }
+
+  @Benchmark
+  public Object outlineDestinations(Located located) {
+    PageLocator locator = new PageLocator(located.renderer);
+    com.lowagie.text.Document document = new com.lowagie.text.Document();
+    PdfWriter writer = PdfWriter.getInstance(document, OutputStream.nullOutputStream());
+    document.open();
+    located.bookmarks.writeOutline(writer, bookmark -> {
+      PageLocator.Location location = locator.locate(bookmark.getIdref());
+      return location != null ? new PageLocator.Location(location.getPageNo() + 1, location.getY()) : null;
+    });
+    return writer.getRootOutline();
+  }
+
+  private static Document parse(byte[] source, File file) {
+    InputSource input = new InputSource(new ByteArrayInputStream(source));
+    input.setSystemId(file.toURI().toString());
+    return XMLResource.load(input).getDocument();
+  }
+
+  /**
+   * A renderer with the fonts loaded and a fresh copy of the augmented document set.
+   */
+  @State(Scope.Thread)
+  public static class Ready {
+
+    ITextRenderer renderer;
+
+    @Setup(Level.Invocation)
+    public void prepare(PipelineBenchmark benchmark) {
+      this.renderer = benchmark.newReadyRenderer();
+    }
+  }
+
+  /**
+   * A renderer which has laid out a fresh copy of the augmented document.
+   */
+  @State(Scope.Thread)
+  public static class LaidOut {
+
+    ITextRenderer renderer;
+
+    PsmlToPdfCreationListener listener;
+
+    @Setup(Level.Invocation)
+    public void prepare(PipelineBenchmark benchmark) {
+      Document doc = (Document) benchmark.template.cloneNode(true);
+      this.listener = benchmark.engine.augment(doc);
+      this.renderer = benchmark.engine.newRenderer(benchmark.file.getAbsoluteFile().getParentFile());
+      this.renderer.setDocument(doc, benchmark.file.toURI().toString(), benchmark.engine.newNamespaceHandler());
+      this.renderer.layout();
+    }
+  }
+
+  /**
+   * A renderer which has laid out the augmented document once for the whole trial.
+   */
+  @State(Scope.Thread)
+  public static class Located {
+
+    ITextRenderer renderer;
+
+    Bookmarks bookmarks;
+
+    @Setup(Level.Trial)
+    public void prepare(PipelineBenchmark benchmark) {
+      this.renderer = benchmark.newReadyRenderer();
+      this.renderer.layout();
+      this.bookmarks = Bookmarks.load(benchmark.augmented, Bookmarks.DEFAULT_MAX_LEVEL);
+    }
+  }
+
+  private ITextRenderer newReadyRenderer() {
+    ITextRenderer renderer = this.engine.newRenderer(this.file.getAbsoluteFile().getParentFile());
+    Document copy = (Document) this.augmented.cloneNode(true);
+    renderer.setDocument(copy, this.file.toURI().toString(), this.engine.newNamespaceHandler());
+    return renderer;
+  }
+}
@@ -1,22 +1,60 @@
 package org.pageseeder.stellar;
 
+import org.pageseeder.stellar.batch.RenderBatch;
+import org.pageseeder.stellar.batch.RenderWatcher;
+import org.pageseeder.stellar.core.FontRegistry;
+import org.pageseeder.stellar.core.Fonts;
 import org.pageseeder.stellar.core.PdfGenerator;
+import org.pageseeder.stellar.core.PdfRenderConfig;
+import org.pageseeder.stellar.core.PdfRenderEngine;
 import org.pageseeder.stellar.core.TitlePageConfig;
+import org.pageseeder.stellar.server.RenderServer;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 public final class Main {
 
+  /**
+   * The properties of the main properties and manifests whose value is a file or directory.
+   */
+  private static final Set<String> FILE_PROPERTIES = Set.of("source", "dir", "output", "stylesheet", "fonts",
+      "diagnostics", "cache");
+
   public static void main(String[] args) throws Exception {
+    boolean hasManifest = args.length > 1 && ("batch".equals(args[0]) || "watch".equals(args[0]));
     Properties main = new Properties();
     File f  = new File("main.properties");
-    checkExists(f);
-    try (InputStream in = new FileInputStream(f)) {
-      main.load(in);
+    // With a manifest, the main properties are optional defaults
+    if (!hasManifest || f.exists()) {
+      checkExists(f);
+      try (InputStream in = new FileInputStream(f)) {
+        main.load(in);
+      }
+    }
+
+    if (args.length > 0 && "server".equals(args[0])) {
+      serve(main);
+      return;
+    }
+    if (args.length > 0 && "fonts".equals(args[0])) {
+      reportFonts(main);
+      return;
+    }
+    if (args.length > 0 && "batch".equals(args[0])) {
+      if (!runBatch(main, args.length > 1 ? new File(args[1]) : null)) System.exit(1);
+      return;
+    }
+    if (args.length > 0 && "watch".equals(args[0])) {
+      watch(main, args.length > 1 ? new File(args[1]) : null);
+      return;
     }
 
     // Get arguments
@@ -24,8 +62,13 @@ public final class Main {
     File output = getFile(main.getProperty("output"));
     File stylesheet = getFile(main.getProperty("stylesheet"));
     File fontsDir = getFile(main.getProperty("fonts"));
+    File diagnosticsDir = getFile(main.getProperty("diagnostics"));
+    File cacheDir = getFile(main.getProperty("cache"));
     int maxBookmarkLevel = getInt(main.getProperty("maxBookmarkLevel"), 6);
     int maxTocLevel = getInt(main.getProperty("maxTocLevel"), 6);
+    int maxImageDpi = getInt(main.getProperty("maxImageDpi"), 0);
+    int parallelism = getInt(main.getProperty("parallelism"), 1);
+    boolean lazyFonts = !"false".equals(main.getProperty("lazyFonts"));
 
     TitlePageConfig titlePageConfig = null;
     for (Map.Entry<Object, Object> p : main.entrySet()) {
@@ -47,10 +90,190 @@ public final class Main {
     PdfGenerator generator = new PdfGenerator();
     generator.setMaxBookmarkLevel(maxBookmarkLevel);
     generator.setMaxTocLevel(maxTocLevel);
+    generator.setMaxImageDpi(maxImageDpi);
+    generator.setParallelism(parallelism);
+    generator.setLazyFonts(lazyFonts);
     if (titlePageConfig != null) generator.setTitlePageConfig(titlePageConfig);
     if (stylesheet != null) generator.setAuthorStylesheet(stylesheet);
     if (fontsDir != null) generator.setFontsDir(fontsDir);
+    if (diagnosticsDir != null) generator.setDiagnosticsDir(diagnosticsDir);
+    if (cacheDir != null) generator.setCacheDir(cacheDir);
     generator.generatePDF(source, output);
+    if (generator.getRenderCache() != null) System.out.println(generator.getRenderCache());
+  }
+
+  /**
+   * Starts a render server with a default profile from the main properties and a profile for
+   * each <code>profile.[name].*</code> group of properties.
+   */
+  private static void serve(Properties main) throws Exception {
+    Map<String, PdfRenderEngine> profiles = new HashMap<>();
+    profiles.put(RenderServer.DEFAULT_PROFILE, new PdfRenderEngine(toConfig(main)));
+    Map<String, Properties> named = new HashMap<>();
+    for (String key : main.stringPropertyNames()) {
+      if (key.startsWith("profile.") && key.indexOf('.', 8) > 8) {
+        String name = key.substring(8, key.indexOf('.', 8));
+        named.computeIfAbsent(name, n -> new Properties()).setProperty(key.substring(9 + name.length()), main.getProperty(key));
+      }
+    }
+    for (Map.Entry<String, Properties> profile : named.entrySet()) {
+      profiles.put(profile.getKey(), new PdfRenderEngine(toConfig(profile.getValue())));
+    }
+
+    int threads = getInt(main.getProperty("server.threads"), Runtime.getRuntime().availableProcessors());
+    InetSocketAddress address = new InetSocketAddress(main.getProperty("server.host", "127.0.0.1"),
+        getInt(main.getProperty("server.port"), 8199));
+    RenderServer server = new RenderServer(address, profiles, getFile(main.getProperty("server.documents")),
+        threads, getInt(main.getProperty("server.queue"), threads * 4));
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(10)));
+    server.start();
+  }
+
+  /**
+   * Parses all the fonts in the fonts directory and reports the time taken by each file and
+   * any failure.
+   */
+  private static void reportFonts(Properties main) {
+    File fontsDir = getFile(main.getProperty("fonts"));
+    if (fontsDir == null) throw new IllegalArgumentException("The fonts property is required");
+    checkExists(fontsDir);
+    long start = System.nanoTime();
+    List<File> fonts = Fonts.listFonts(fontsDir);
+    List<FontRegistry.FontLoad> loads = FontRegistry.preload(fonts);
+    long elapsed = (System.nanoTime() - start) / 1_000_000;
+    int failed = 0;
+    for (FontRegistry.FontLoad load : loads) {
+      if (load.getError() != null) failed++;
+      System.out.println(load);
+    }
+    System.out.println("Loaded "+fonts.size()+" font files ("+FontRegistry.getFamilies(fonts).size()+" families) in "
+        +elapsed+"ms using "+Runtime.getRuntime().availableProcessors()+" processors, "+failed+" failed");
+  }
+
+  /**
+   * Renders the jobs of a manifest, or of the main properties if there is no manifest, and
+   * prints the status of each job.
+   *
+   * @return <code>true</code> if all the documents were rendered
+   */
+  private static boolean runBatch(Properties main, File manifestFile) throws Exception {
+    Properties manifest = toJobs(main, manifestFile);
+    RenderBatch batch = RenderBatch.fromManifest(manifest, settings -> new PdfRenderEngine(toConfig(settings)));
+    int threads = getInt(manifest.getProperty("batch.threads"), Runtime.getRuntime().availableProcessors());
+    long start = System.nanoTime();
+    List<RenderBatch.Result> results = batch.run(threads);
+    long elapsed = (System.nanoTime() - start) / 1_000_000;
+    int failed = 0;
+    for (RenderBatch.Result result : results) {
+      if (!result.isSuccessful()) failed++;
+      System.out.println(result);
+    }
+    System.out.println("Rendered "+(results.size() - failed)+" of "+results.size()+" documents in "+elapsed+"ms using "
+        +Math.min(threads, Math.max(results.size(), 1))+" threads, "+failed+" failed");
+    return failed == 0;
+  }
+
+  /**
+   * Renders the jobs of a manifest, or the source of the main properties, and renders them again
+   * whenever their sources change until the process is stopped.
+   */
+  private static void watch(Properties main, File manifestFile) throws Exception {
+    Properties manifest = toJobs(main, manifestFile);
+    int threads = getInt(manifest.getProperty("batch.threads"), Runtime.getRuntime().availableProcessors());
+    long debounce = getInt(manifest.getProperty("watch.debounce"), (int) RenderWatcher.DEFAULT_DEBOUNCE);
+    try (RenderWatcher watcher = new RenderWatcher(manifest, settings -> new PdfRenderEngine(toConfig(settings)),
+        threads, debounce, results -> {
+          for (RenderBatch.Result result : results) {
+            System.out.println(result);
+          }
+        })) {
+      Runtime.getRuntime().addShutdownHook(new Thread(watcher::close));
+      System.out.println("Watching for changes, press Ctrl+C to stop");
+      watcher.run();
+    }
+  }
+
+  /**
+   * Returns the manifest with the jobs to render.
+   *
+   * <p>Without a manifest file, the <code>source</code> and <code>output</code> of the main
+   * properties are rendered as the job "main", in addition to any job they define.
+   *
+   * @throws IllegalArgumentException if there is no job to render
+   */
+  private static Properties toJobs(Properties main, File manifestFile) throws Exception {
+    Properties manifest = toManifest(main, manifestFile);
+    if (manifestFile == null && main.getProperty("source") != null && main.getProperty("output") != null) {
+      manifest.setProperty("job.main.source", main.getProperty("source"));
+      manifest.setProperty("job.main.output", main.getProperty("output"));
+    }
+    if (manifest.stringPropertyNames().stream().noneMatch(name -> name.startsWith("job."))) {
+      throw new IllegalArgumentException("No job in "+(manifestFile != null ? manifestFile.getName() : "main.properties")
+          +": specify job.<name>.source and job.<name>.output, or source and output");
+    }
+    return manifest;
+  }
+
+  /**
+   * Returns the properties of the manifest file on top of the main properties, or the main
+   * properties if there is no manifest file.
+   *
+   * <p>Relative files in the manifest are resolved against the directory of the manifest, so
+   * that it can be run from any directory.
+   */
+  private static Properties toManifest(Properties main, File manifestFile) throws Exception {
+    if (manifestFile == null) return main;
+    checkExists(manifestFile);
+    Properties properties = new Properties();
+    try (InputStream in = new FileInputStream(manifestFile)) {
+      properties.load(in);
+    }
+    File base = manifestFile.getAbsoluteFile().getParentFile();
+    // The settings of the main properties apply unless the manifest overrides them
+    Properties manifest = new Properties(main);
+    for (String key : properties.stringPropertyNames()) {
+      String value = properties.getProperty(key);
+      manifest.setProperty(key, isFileProperty(key) ? resolve(base, value) : value);
+    }
+    return manifest;
+  }
+
+  /**
+   * @return <code>true</code> if the property is a file setting or a file of a job
+   */
+  private static boolean isFileProperty(String key) {
+    int dot = key.lastIndexOf('.');
+    return FILE_PROPERTIES.contains(key.substring(dot + 1)) && (dot < 0 || key.startsWith("job."));
+  }
+
+  private static String resolve(File base, String path) {
+    return new File(path).isAbsolute() ? path : new File(base, path).getPath();
+  }
+
+  private static PdfRenderConfig toConfig(Properties properties) {
+    File stylesheet = getFile(properties.getProperty("stylesheet"));
+    File fontsDir = getFile(properties.getProperty("fonts"));
+    if (stylesheet != null) checkExists(stylesheet);
+    if (fontsDir != null) checkExists(fontsDir);
+    TitlePageConfig titlePageConfig = null;
+    for (String name : properties.stringPropertyNames()) {
+      if (name.startsWith("titlePage.")) {
+        if (titlePageConfig == null) titlePageConfig = new TitlePageConfig();
+        titlePageConfig.addItem(name.substring(10), properties.getProperty(name));
+      }
+    }
+    return PdfRenderConfig.builder()
+        .maxBookmarkLevel(getInt(properties.getProperty("maxBookmarkLevel"), 6))
+        .maxTocLevel(getInt(properties.getProperty("maxTocLevel"), 6))
+        .maxImageDpi(getInt(properties.getProperty("maxImageDpi"), 0))
+        .parallelism(getInt(properties.getProperty("parallelism"), 1))
+        .authorStylesheet(stylesheet)
+        .fontsDir(fontsDir)
+        .lazyFonts(!"false".equals(properties.getProperty("lazyFonts")))
+        .diagnosticsDir(getFile(properties.getProperty("diagnostics")))
+        .cacheDir(getFile(properties.getProperty("cache")))
+        .titlePage(titlePageConfig)
+        .build();
   }
 
   private static int getInt(String value, int defaultValue) {
@@ -1,14 +1,43 @@
 package org.pageseeder.stellar.ant;
 
+import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.DynamicElement;
+import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.types.Mapper;
+import org.apache.tools.ant.util.FileNameMapper;
+import org.apache.tools.ant.util.GlobPatternMapper;
+
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import org.eclipse.jdt.annotation.Nullable;
-import org.pageseeder.stellar.core.PdfGenerator;
+import org.pageseeder.stellar.core.PdfRenderConfig;
+import org.pageseeder.stellar.core.PdfRenderEngine;
+import org.pageseeder.stellar.core.RenderCache;
+import org.pageseeder.stellar.core.RenderScheduler;
 import org.pageseeder.stellar.core.TitlePageConfig;
 
+/**
+ * Ant task to export PSML documents to PDF.
+ *
+ * <p>The task either converts a single <code>src</code> file to a <code>dest</code> file, or
+ * every file in nested <code>&lt;fileset&gt;</code> elements to the <code>todir</code>
+ * directory. In batch mode, documents are rendered concurrently by up to <code>threads</code>
+ * workers sharing a single {@link PdfRenderEngine}; a failed document does not stop the
+ * others and a summary is printed at the end.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.5.0
+ * @version 0.7.0
+ */
 public class PdfExportTask extends Task implements DynamicElement {
 
   private @Nullable String src;
@@ -23,8 +52,34 @@ public class PdfExportTask extends Task implements DynamicElement {
 
   private int maxTocLevel = 6;
 
+  private int maxImageDpi = 0;
+
+  private @Nullable String diagnosticsDir;
+
+  private int parallelism = 1;
+
+  private @Nullable String cacheDir;
+
+  private boolean lazyFonts = true;
+
   private @Nullable TitlePageConfig titlePageConfig = null;
 
+  private @Nullable String todir;
+
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  private boolean failOnError = true;
+
+  /**
+   * The maximum number of exports in progress per thread, so that documents can be read
+   * while others are laid out without loading all the filesets at once.
+   */
+  private static final int JOBS_PER_THREAD = 2;
+
+  private final List<FileSet> filesets = new ArrayList<>();
+
+  private @Nullable Mapper mapper;
+
   public void setSrc(String src) {
     this.src = src;
   }
@@ -49,6 +104,99 @@ public class PdfExportTask extends Task implements DynamicElement {
     this.maxTocLevel = maxTocLevel;
   }
 
+  /**
+   * @param maxImageDpi the maximum effective resolution of embedded images, 0 to embed images as is
+   */
+  public void setMaxImageDpi(int maxImageDpi) {
+    this.maxImageDpi = maxImageDpi;
+  }
+
+  /**
+   * @param diagnosticsDir the directory where augmented PSML documents are written for debugging
+   */
+  public void setDiagnosticsDir(String diagnosticsDir) {
+    this.diagnosticsDir = diagnosticsDir;
+  }
+
+  /**
+   * @param parallelism the maximum number of parts of a large document rendered concurrently
+   */
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * @param cacheDir the directory where rendered PDF files are cached to skip unchanged documents
+   */
+  public void setCacheDir(String cacheDir) {
+    this.cacheDir = cacheDir;
+  }
+
+  /**
+   * @param lazyFonts whether only the fonts referenced by the stylesheets are loaded
+   */
+  public void setLazyFonts(boolean lazyFonts) {
+    this.lazyFonts = lazyFonts;
+  }
+
+  /**
+   * @param todir the directory where PDF files are written in batch mode
+   */
+  public void setTodir(String todir) {
+    this.todir = todir;
+  }
+
+  /**
+   * @param threads the maximum number of documents to render concurrently in batch mode
+   */
+  public void setThreads(int threads) {
+    if (threads < 1) {
+      throw new BuildException("The number of threads must be at least 1");
+    }
+    this.threads = threads;
+  }
+
+  /**
+   * @param failOnError whether the build should fail if any document could not be exported in batch mode
+   */
+  public void setFailOnError(boolean failOnError) {
+    this.failOnError = failOnError;
+  }
+
+  /**
+   * Add a set of PSML files to export in batch mode.
+   *
+   * @param fileset the PSML files to export
+   */
+  public void addFileset(FileSet fileset) {
+    this.filesets.add(fileset);
+  }
+
+  /**
+   * Define the mapper used to compute the name of each PDF file from the PSML file in batch mode.
+   *
+   * <p>By default, <code>*.psml</code> files are mapped to <code>*.pdf</code>.
+   *
+   * @return the mapper to configure
+   */
+  public Mapper createMapper() {
+    if (this.mapper != null) {
+      throw new BuildException("Cannot define more than one mapper");
+    }
+    Mapper m = new Mapper(getProject());
+    this.mapper = m;
+    return m;
+  }
+
+  /**
+   * Add a nested file name mapper in batch mode.
+   *
+   * @param fileNameMapper the mapper to add
+   */
+  public void add(FileNameMapper fileNameMapper) {
+    createMapper().add(fileNameMapper);
+  }
+
   // Support for nested <title-page> configuration
   public void addConfiguredTitlePage(TitlePageConfig config) {
     this.titlePageConfig = config;
@@ -69,6 +217,10 @@ public class PdfExportTask extends Task implements DynamicElement {
 
   @Override
   public void execute() throws BuildException {
+    if (!this.filesets.isEmpty()) {
+      executeBatch();
+      return;
+    }
     if (this.src == null || this.dest == null) {
       throw new BuildException("Both src and dest attributes are required");
     }
@@ -81,27 +233,126 @@ public class PdfExportTask extends Task implements DynamicElement {
 
       log("Exporting PSML file: "+input.getName()+" to PDF "+output.getName());
 
-      PdfGenerator generator = newPdfGenerator();
-
-      // Pass title-page config if present
-      if (titlePageConfig != null) {
-        generator.setTitlePageConfig(titlePageConfig);
-      }
-
-      generator.generatePDF(input, output);
+      PdfRenderEngine engine = newRenderEngine();
+      engine.render(input, output);
 
       log("Conversion completed successfully");
+      logCache(engine);
 
     } catch (Exception e) {
       throw new BuildException("Error converting PSML to Markdown: " + e.getMessage(), e);
     }
   }
 
+  /**
+   * Export all the files in the nested filesets using a bounded pool of workers.
+   */
+  private void executeBatch() {
+    if (this.todir == null) {
+      throw new BuildException("The todir attribute is required when using nested filesets");
+    }
+    if (this.src != null || this.dest != null) {
+      throw new BuildException("The src and dest attributes cannot be used with nested filesets");
+    }
+    File outputDir = getProject().resolveFile(this.todir);
+    List<Job> jobs = collectJobs(outputDir);
+    if (jobs.isEmpty()) {
+      log("No PSML file to export");
+      return;
+    }
+
+    PdfRenderEngine engine = newRenderEngine();
+    int poolSize = Math.min(this.threads, jobs.size());
+    log("Exporting "+jobs.size()+" PSML files to PDF using "+poolSize+" threads");
+
+    long start = System.nanoTime();
+    int failed = 0;
+    try (RenderScheduler scheduler = RenderScheduler.create(poolSize)) {
+      List<Future<Job>> results = new ArrayList<>(jobs.size());
+      Semaphore inFlight = new Semaphore(JOBS_PER_THREAD * poolSize);
+      for (Job job : jobs) {
+        inFlight.acquire();
+        results.add(scheduler.submit(() -> {
+          try {
+            return job.run(engine, scheduler);
+          } finally {
+            inFlight.release();
+          }
+        }));
+      }
+      for (Future<Job> result : results) {
+        Job job = result.get();
+        if (job.error == null) {
+          log("Exported "+job.name, Project.MSG_VERBOSE);
+        } else {
+          failed++;
+          log("Unable to export "+job.name+": "+job.error.getMessage(), job.error, Project.MSG_ERR);
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new BuildException("PDF export interrupted", ex);
+    } catch (ExecutionException ex) {
+      throw new BuildException("Unexpected error during PDF export", ex.getCause());
+    }
+
+    long elapsed = (System.nanoTime() - start) / 1_000_000;
+    log("Exported "+(jobs.size() - failed)+" of "+jobs.size()+" PSML files to PDF in "+elapsed+"ms ("+failed+" failed)");
+    logCache(engine);
+    if (failed > 0 && this.failOnError) {
+      throw new BuildException("Unable to export "+failed+" PSML files to PDF");
+    }
+  }
+
+  /**
+   * Report the number of documents restored from the render cache if it is enabled.
+   */
+  private void logCache(PdfRenderEngine engine) {
+    RenderCache cache = engine.getRenderCache();
+    if (cache != null) {
+      log("Render cache: "+cache.getHits()+" hits, "+cache.getMisses()+" misses");
+    }
+  }
+
+  /**
+   * Collect the files to export from the nested filesets.
+   *
+   * @param outputDir the directory where PDF files are written
+   * @return the list of export jobs
+   */
+  private List<Job> collectJobs(File outputDir) {
+    FileNameMapper fileNameMapper = getFileNameMapper();
+    List<Job> jobs = new ArrayList<>();
+    for (FileSet fileset : this.filesets) {
+      DirectoryScanner scanner = fileset.getDirectoryScanner(getProject());
+      File baseDir = fileset.getDir(getProject());
+      for (String name : scanner.getIncludedFiles()) {
+        String[] mapped = fileNameMapper.mapFileName(name);
+        if (mapped == null || mapped.length == 0) {
+          log("Skipping "+name+": not matched by mapper", Project.MSG_VERBOSE);
+        } else {
+          jobs.add(new Job(name, new File(baseDir, name), new File(outputDir, mapped[0])));
+        }
+      }
+    }
+    return jobs;
+  }
+
+  private FileNameMapper getFileNameMapper() {
+    if (this.mapper != null) {
+      return this.mapper.getImplementation();
+    }
+    GlobPatternMapper glob = new GlobPatternMapper();
+    glob.setFrom("*.psml");
+    glob.setTo("*.pdf");
+    return glob;
+  }
+
   /**
    * Ensure the output directory exists.
    * @param outputDir the output directory.
    */
-  private static void ensureOutputDirectory(File outputDir) {
+  private static synchronized void ensureOutputDirectory(File outputDir) {
     if (!outputDir.exists()) {
       boolean created = outputDir.mkdirs();
       if (!created) {
@@ -111,19 +362,19 @@ public class PdfExportTask extends Task implements DynamicElement {
   }
 
   /**
-   * Create a new PDF generator using the configuration of this task.
+   * Create a new PDF render engine using the configuration of this task.
    *
-   * @return a new PDF generator.
+   * @return a new PDF render engine.
    */
-  private PdfGenerator newPdfGenerator() {
-    PdfGenerator generator = new PdfGenerator();
+  private PdfRenderEngine newRenderEngine() {
+    PdfRenderConfig.Builder config = PdfRenderConfig.builder();
 
     if (this.fontsDir != null) {
       File fonts = getProject().resolveFile(this.fontsDir);
       if (!fonts.exists()) {
         throw new BuildException("Font directory does not exist: " + fonts);
       }
-      generator.setFontsDir(fonts);
+      config.fontsDir(fonts);
     }
 
     if (this.stylesheet != null) {
@@ -131,12 +382,63 @@ public class PdfExportTask extends Task implements DynamicElement {
       if (!authorStylesheet.exists()) {
         throw new BuildException("Stylesheet file does not exist: " + authorStylesheet);
       }
-      generator.setAuthorStylesheet(authorStylesheet);
+      config.authorStylesheet(authorStylesheet);
+    }
+
+    if (this.diagnosticsDir != null) {
+      config.diagnosticsDir(getProject().resolveFile(this.diagnosticsDir));
+    }
+
+    config.maxBookmarkLevel(this.maxBookmarkLevel);
+    config.maxTocLevel(this.maxTocLevel);
+    config.maxImageDpi(this.maxImageDpi);
+    config.parallelism(this.parallelism);
+    config.lazyFonts(this.lazyFonts);
+
+    if (this.cacheDir != null) {
+      config.cacheDir(getProject().resolveFile(this.cacheDir));
     }
 
-    generator.setMaxBookmarkLevel(this.maxBookmarkLevel);
-    generator.setMaxTocLevel(this.maxTocLevel);
+    // Pass title-page config if present
+    config.titlePage(this.titlePageConfig);
+
+    return new PdfRenderEngine(config.build());
+  }
+
+  /**
+   * A single PSML file to export in batch mode.
+   */
+  private static final class Job {
+
+    private final String name;
 
-    return generator;
+    private final File input;
+
+    private final File output;
+
+    private @Nullable Exception error;
+
+    Job(String name, File input, File output) {
+      this.name = name;
+      this.input = input;
+      this.output = output;
+    }
+
+    /**
+     * Render this job, recording any error instead of throwing it.
+     *
+     * @param engine the engine to use
+     * @param scheduler the scheduler running this job
+     * @return this job
+     */
+    Job run(PdfRenderEngine engine, RenderScheduler scheduler) {
+      try {
+        ensureOutputDirectory(this.output.getParentFile());
+        engine.render(this.input, this.output, scheduler);
+      } catch (Exception ex) {
+        this.error = ex;
+      }
+      return this;
+    }
   }
-}
\ No newline at end of file
+}
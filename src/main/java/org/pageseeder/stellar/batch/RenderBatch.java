@@ -0,0 +1,383 @@
+package org.pageseeder.stellar.batch;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.pageseeder.stellar.core.PdfRenderEngine;
+import org.pageseeder.stellar.core.RenderScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A batch of PSML documents rendered as PDF in a single JVM.
+ *
+ * <p>The jobs of a batch are defined by a manifest of properties. Settings such as the
+ * <code>stylesheet</code> or <code>fonts</code> apply to all jobs, and each job named
+ * <code>job.[name].*</code> is either:
+ * <ul>
+ *   <li>a single file: <code>job.[name].source</code> and <code>job.[name].output</code>;</li>
+ *   <li>a directory: every file under <code>job.[name].dir</code> matching the glob pattern
+ *   <code>job.[name].include</code> (<code>**&#47;*.psml</code> by default) is written to the
+ *   <code>job.[name].output</code> pattern, where <code>{path}</code> is replaced by the path of
+ *   the file relative to the directory and <code>{name}</code> by its name, both without the
+ *   extension.</li>
+ * </ul>
+ * Any other <code>job.[name].[setting]</code> property overrides the setting for that job.
+ *
+ * <p>Jobs with the same settings share a {@link PdfRenderEngine}, and all engines share the
+ * fonts and stylesheets parsed by the JVM, so only the first document pays for them.
+ * Documents are rendered concurrently by a {@link RenderScheduler}; a failed document does not
+ * stop the others.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+public final class RenderBatch {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RenderBatch.class);
+
+  /**
+   * The glob pattern of the files to render in a directory when not specified.
+   */
+  public static final String DEFAULT_INCLUDE = "**/*.psml";
+
+  /**
+   * The properties of a job which are not render settings.
+   */
+  private static final Set<String> JOB_PROPERTIES = Set.of("source", "output", "dir", "include");
+
+  /**
+   * The prefixes of properties used by other modes of the command line interface.
+   */
+  private static final List<String> OTHER_PREFIXES = List.of("job.", "batch.", "watch.", "server.", "profile.");
+
+  /**
+   * The maximum number of jobs in progress per thread of the scheduler, so that documents
+   * can be read while others are laid out without loading the whole batch at once.
+   */
+  private static final int JOBS_PER_THREAD = 2;
+
+  private final List<Job> jobs;
+
+  /**
+   * The directories of the jobs rendering all matching files in a directory.
+   */
+  private final List<Path> directories;
+
+  private RenderBatch(List<Job> jobs, List<Path> directories) {
+    this.jobs = Collections.unmodifiableList(jobs);
+    this.directories = Collections.unmodifiableList(directories);
+  }
+
+  /**
+   * Creates a batch from the jobs defined in the specified manifest.
+   *
+   * @param manifest the settings and jobs
+   * @param engines creates an engine from the render settings of a job
+   * @return the batch of jobs in the order of their names, then of the files in each directory
+   *
+   * @throws IllegalArgumentException if a job is incomplete or several jobs write the same file
+   * @throws UncheckedIOException if a directory cannot be listed
+   */
+  public static RenderBatch fromManifest(Properties manifest, Function<Properties, PdfRenderEngine> engines) {
+    Properties defaults = new Properties();
+    for (String key : manifest.stringPropertyNames()) {
+      if (!JOB_PROPERTIES.contains(key) && OTHER_PREFIXES.stream().noneMatch(key::startsWith)) {
+        defaults.setProperty(key, manifest.getProperty(key));
+      }
+    }
+    Set<String> names = new TreeSet<>();
+    for (String key : manifest.stringPropertyNames()) {
+      if (key.startsWith("job.") && key.indexOf('.', 4) > 4) {
+        names.add(key.substring(4, key.indexOf('.', 4)));
+      }
+    }
+
+    // Jobs with the same settings share the same engine
+    Map<Properties, PdfRenderEngine> shared = new HashMap<>();
+    Map<File, String> outputs = new HashMap<>();
+    List<Job> jobs = new ArrayList<>();
+    List<Path> directories = new ArrayList<>();
+    for (String name : names) {
+      String prefix = "job." + name + '.';
+      Properties settings = new Properties();
+      settings.putAll(defaults);
+      for (String key : manifest.stringPropertyNames()) {
+        if (key.startsWith(prefix) && !JOB_PROPERTIES.contains(key.substring(prefix.length()))) {
+          settings.setProperty(key.substring(prefix.length()), manifest.getProperty(key));
+        }
+      }
+      PdfRenderEngine engine = shared.computeIfAbsent(settings, engines);
+      String dir = manifest.getProperty(prefix + "dir");
+      if (dir != null) directories.add(new File(dir).toPath());
+      for (Job job : toJobs(name, manifest, prefix, engine)) {
+        String previous = outputs.putIfAbsent(job.output.getAbsoluteFile(), job.name);
+        if (previous != null) {
+          throw new IllegalArgumentException("Jobs " + previous + " and " + job.name + " both write " + job.output);
+        }
+        jobs.add(job);
+      }
+    }
+    LOGGER.debug("Batch of {} documents from {} jobs using {} engines", jobs.size(), names.size(), shared.size());
+    return new RenderBatch(jobs, directories);
+  }
+
+  /**
+   * @return the documents to render
+   */
+  public List<Job> getJobs() {
+    return this.jobs;
+  }
+
+  /**
+   * @return the directories of the jobs rendering all the matching files of a directory
+   */
+  public List<Path> getDirectories() {
+    return this.directories;
+  }
+
+  /**
+   * Renders all the documents of this batch.
+   *
+   * @param threads the maximum number of documents rendered concurrently
+   * @return the result of each job in the order of the jobs
+   *
+   * @throws InterruptedException if interrupted while waiting for the jobs to complete
+   */
+  public List<Result> run(int threads) throws InterruptedException {
+    if (this.jobs.isEmpty()) return List.of();
+    try (RenderScheduler scheduler = RenderScheduler.create(Math.min(threads, this.jobs.size()))) {
+      return run(this.jobs, scheduler);
+    }
+  }
+
+  /**
+   * Renders the specified jobs with the given scheduler.
+   *
+   * @return the result of each job in the order of the jobs
+   */
+  static List<Result> run(Collection<Job> jobs, RenderScheduler scheduler) throws InterruptedException {
+    List<Future<Result>> futures = new ArrayList<>(jobs.size());
+    Semaphore inFlight = new Semaphore(JOBS_PER_THREAD * scheduler.getThreads());
+    for (Job job : jobs) {
+      inFlight.acquire();
+      futures.add(scheduler.submit(() -> {
+        try {
+          return job.run(scheduler);
+        } finally {
+          inFlight.release();
+        }
+      }));
+    }
+    List<Result> results = new ArrayList<>(jobs.size());
+    try {
+      for (Future<Result> future : futures) {
+        results.add(future.get());
+      }
+    } catch (ExecutionException ex) {
+      // Jobs record their errors, so this is unexpected
+      throw new IllegalStateException("Unexpected error in batch", ex.getCause());
+    }
+    return results;
+  }
+
+  private static List<Job> toJobs(String name, Properties manifest, String prefix, PdfRenderEngine engine) {
+    String source = manifest.getProperty(prefix + "source");
+    String dir = manifest.getProperty(prefix + "dir");
+    String output = manifest.getProperty(prefix + "output");
+    if (output == null) throw new IllegalArgumentException("Job " + name + " has no output");
+    if (source != null && dir != null) throw new IllegalArgumentException("Job " + name + " has both a source and a dir");
+    if (source != null) return List.of(new Job(name, new File(source), new File(output), engine));
+    if (dir == null) throw new IllegalArgumentException("Job " + name + " has no source or dir");
+    if (!output.contains("{path}") && !output.contains("{name}")) {
+      throw new IllegalArgumentException("The output of job " + name + " must contain {path} or {name}");
+    }
+
+    Path root = new File(dir).toPath();
+    if (!Files.isDirectory(root)) throw new IllegalArgumentException("Job " + name + ": directory not found " + dir);
+    String include = manifest.getProperty(prefix + "include", DEFAULT_INCLUDE);
+    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + include);
+    // Like Ant, a leading "**/" also matches files directly in the directory
+    PathMatcher top = include.startsWith("**/")
+        ? FileSystems.getDefault().getPathMatcher("glob:" + include.substring(3)) : matcher;
+    List<Path> files;
+    try (Stream<Path> paths = Files.walk(root)) {
+      files = paths.filter(Files::isRegularFile)
+          .map(root::relativize)
+          .filter(path -> matcher.matches(path) || top.matches(path))
+          .sorted()
+          .collect(Collectors.toList());
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Unable to list files of job " + name, ex);
+    }
+    List<Job> jobs = new ArrayList<>(files.size());
+    for (Path file : files) {
+      String path = removeExtension(file.toString().replace(File.separatorChar, '/'));
+      String fileName = removeExtension(file.getFileName().toString());
+      File target = new File(output.replace("{path}", path).replace("{name}", fileName));
+      jobs.add(new Job(name + '/' + file.toString().replace(File.separatorChar, '/'), root.resolve(file).toFile(), target, engine));
+    }
+    if (jobs.isEmpty()) LOGGER.warn("No file matching {} in {} for job {}", include, dir, name);
+    return jobs;
+  }
+
+  private static String removeExtension(String path) {
+    int dot = path.lastIndexOf('.');
+    return dot > path.lastIndexOf('/') ? path.substring(0, dot) : path;
+  }
+
+  @Override
+  public String toString() {
+    return "RenderBatch{jobs=" + this.jobs.size() + '}';
+  }
+
+  /**
+   * A PSML document to render.
+   */
+  public static final class Job {
+
+    private final String name;
+
+    private final File input;
+
+    private final File output;
+
+    private final PdfRenderEngine engine;
+
+    Job(String name, File input, File output, PdfRenderEngine engine) {
+      this.name = name;
+      this.input = input;
+      this.output = output;
+      this.engine = engine;
+    }
+
+    /**
+     * @return the name of the job, followed by the path of the file for a directory
+     */
+    public String getName() {
+      return this.name;
+    }
+
+    /**
+     * @return the PSML file to render
+     */
+    public File getInput() {
+      return this.input;
+    }
+
+    /**
+     * @return the PDF file to write
+     */
+    public File getOutput() {
+      return this.output;
+    }
+
+    /**
+     * @return the engine rendering this document
+     */
+    public PdfRenderEngine getEngine() {
+      return this.engine;
+    }
+
+    /**
+     * Renders this document, recording any error instead of throwing it.
+     */
+    Result run(RenderScheduler scheduler) {
+      long start = System.nanoTime();
+      @Nullable Exception error = null;
+      try {
+        File dir = this.output.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+          throw new IOException("Unable to create output directory " + dir);
+        }
+        this.engine.render(this.input, this.output, scheduler);
+      } catch (Exception ex) {
+        LOGGER.debug("Unable to render {}", this.input, ex);
+        error = ex;
+      }
+      return new Result(this, (System.nanoTime() - start) / 1_000_000, error);
+    }
+
+    @Override
+    public String toString() {
+      return this.name + ": " + this.input + " -> " + this.output;
+    }
+  }
+
+  /**
+   * The status of a job once rendered.
+   */
+  public static final class Result {
+
+    private final Job job;
+
+    private final long time;
+
+    private final @Nullable Exception error;
+
+    Result(Job job, long time, @Nullable Exception error) {
+      this.job = job;
+      this.time = time;
+      this.error = error;
+    }
+
+    /**
+     * @return the job
+     */
+    public Job getJob() {
+      return this.job;
+    }
+
+    /**
+     * @return the time taken to render the document in milliseconds
+     */
+    public long getTime() {
+      return this.time;
+    }
+
+    /**
+     * @return the error if the document could not be rendered, <code>null</code> otherwise
+     */
+    public @Nullable Exception getError() {
+      return this.error;
+    }
+
+    /**
+     * @return <code>true</code> if the document was rendered
+     */
+    public boolean isSuccessful() {
+      return this.error == null;
+    }
+
+    @Override
+    public String toString() {
+      Exception ex = this.error;
+      return ex == null
+          ? "OK     " + this.job.name + " -> " + this.job.output + " (" + this.time + "ms)"
+          : "FAILED " + this.job.name + ": " + (ex.getMessage() != null ? ex.getMessage() : ex.toString());
+    }
+  }
+}
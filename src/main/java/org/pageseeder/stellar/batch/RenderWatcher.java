@@ -0,0 +1,292 @@
+package org.pageseeder.stellar.batch;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.pageseeder.stellar.core.Fonts;
+import org.pageseeder.stellar.core.PdfRenderEngine;
+import org.pageseeder.stellar.core.RenderScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Renders the jobs of a manifest, then renders them again whenever their sources change.
+ *
+ * <p>A {@link WatchService} monitors the directories of the PSML files, of their local images
+ * and of the author stylesheets, as well as the fonts directories and the directories of
+ * directory jobs, including their subdirectories.
+ *
+ * <p>Changes are debounced: once a change is detected, the watcher waits until no other change
+ * occurs for the debounce delay, so that saving several files or writing a file in several steps
+ * triggers a single render. Only the jobs depending on a changed file and new files in the
+ * directory of a job are rendered again.
+ *
+ * <p>The render engines are kept between renders so that fonts, stylesheets and decoded images
+ * stay warm; the engines of jobs using a fonts directory are created again when a font changes.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+public final class RenderWatcher implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RenderWatcher.class);
+
+  /**
+   * The default time without changes before rendering in milliseconds.
+   */
+  public static final long DEFAULT_DEBOUNCE = 100;
+
+  private final Properties manifest;
+
+  private final Function<Properties, PdfRenderEngine> factory;
+
+  /**
+   * Engines kept between renders by settings.
+   */
+  private final Map<Properties, PdfRenderEngine> engines = new HashMap<>();
+
+  private final RenderScheduler scheduler;
+
+  private final long debounce;
+
+  private final Consumer<List<RenderBatch.Result>> listener;
+
+  private final WatchService service;
+
+  private final Map<WatchKey, Path> watched = new HashMap<>();
+
+  /**
+   * The files each job depends on by output file.
+   */
+  private final Map<File, Set<Path>> dependencies = new HashMap<>();
+
+  /**
+   * Creates a new watcher; call {@link #run()} to render and watch the jobs.
+   *
+   * @param manifest the settings and jobs as defined by {@link RenderBatch}
+   * @param factory creates an engine from the render settings of a job
+   * @param threads the maximum number of documents rendered concurrently
+   * @param debounce the time without changes before rendering in milliseconds
+   * @param listener receives the results of each render
+   *
+   * @throws IOException if the watch service could not be created
+   */
+  public RenderWatcher(Properties manifest, Function<Properties, PdfRenderEngine> factory, int threads, long debounce,
+                       Consumer<List<RenderBatch.Result>> listener) throws IOException {
+    this.manifest = manifest;
+    this.factory = factory;
+    this.scheduler = RenderScheduler.create(threads);
+    this.debounce = debounce;
+    this.listener = listener;
+    this.service = FileSystems.getDefault().newWatchService();
+  }
+
+  /**
+   * Renders all the jobs, then renders the affected jobs after each change until this watcher
+   * is closed or the thread is interrupted.
+   *
+   * @throws IOException if a directory could not be watched
+   */
+  public void run() throws IOException {
+    try {
+      RenderBatch batch = newBatch();
+      render(batch, batch.getJobs());
+      while (true) {
+        Set<Path> changed = new HashSet<>();
+        boolean overflow = collect(this.service.take(), changed);
+        // Wait until the files are no longer changing
+        for (WatchKey key = this.service.poll(this.debounce, TimeUnit.MILLISECONDS); key != null;
+             key = this.service.poll(this.debounce, TimeUnit.MILLISECONDS)) {
+          overflow |= collect(key, changed);
+        }
+        update(changed, overflow);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException ex) {
+      LOGGER.debug("Watch service closed");
+    }
+  }
+
+  /**
+   * Stops watching files.
+   */
+  @Override
+  public void close() {
+    try {
+      this.service.close();
+    } catch (IOException ex) {
+      LOGGER.debug("Unable to close watch service: {}", ex.getMessage());
+    }
+    this.scheduler.close();
+  }
+
+  /**
+   * Renders the jobs affected by the changed files.
+   */
+  private void update(Set<Path> changed, boolean overflow) throws IOException, InterruptedException {
+    Set<File> fontsDirs = new HashSet<>();
+    for (PdfRenderEngine engine : this.engines.values()) {
+      File fontsDir = engine.getConfig().getFontsDir();
+      if (fontsDir != null && changed.stream().anyMatch(path -> isFontChange(toPath(fontsDir), path))) {
+        fontsDirs.add(fontsDir);
+      }
+    }
+    if (!fontsDirs.isEmpty()) {
+      // The fonts of an engine are listed once, new engines pick up the fonts added or removed
+      LOGGER.info("Fonts changed in {}", fontsDirs);
+      this.engines.values().removeIf(engine -> fontsDirs.contains(engine.getConfig().getFontsDir()));
+    }
+
+    // The jobs are listed again to find new files in directories
+    RenderBatch batch;
+    try {
+      batch = newBatch();
+    } catch (IllegalArgumentException | UncheckedIOException ex) {
+      LOGGER.warn("Unable to list jobs: {}", ex.getMessage());
+      return;
+    }
+    List<RenderBatch.Job> affected = new ArrayList<>();
+    for (RenderBatch.Job job : batch.getJobs()) {
+      Set<Path> files = this.dependencies.get(job.getOutput());
+      if (overflow || files == null || fontsDirs.contains(job.getEngine().getConfig().getFontsDir())
+          || files.stream().anyMatch(changed::contains)) {
+        affected.add(job);
+      }
+    }
+    render(batch, affected);
+  }
+
+  /**
+   * Indicates whether a changed path affects the fonts in a directory: font files and
+   * subdirectories count, but not the font index, temporary or hidden files.
+   */
+  private static boolean isFontChange(Path fontsDir, Path path) {
+    if (!path.startsWith(fontsDir) || path.equals(fontsDir)) return false;
+    for (Path name : fontsDir.relativize(path)) {
+      if (name.toString().startsWith(".")) return false;
+    }
+    return Fonts.isFontName(path.getFileName().toString()) || Files.isDirectory(path);
+  }
+
+  private void render(RenderBatch batch, List<RenderBatch.Job> jobs) throws IOException, InterruptedException {
+    List<RenderBatch.Result> results = RenderBatch.run(jobs, this.scheduler);
+    for (RenderBatch.Job job : jobs) {
+      this.dependencies.put(job.getOutput(), getDependencies(job));
+    }
+    this.dependencies.keySet().retainAll(batch.getJobs().stream().map(RenderBatch.Job::getOutput).collect(Collectors.toSet()));
+    // Watch new directories before reporting so that any later change is detected
+    watch(batch);
+    if (!results.isEmpty()) this.listener.accept(results);
+  }
+
+  /**
+   * Registers any directory containing a dependency of a job, and the directories of the fonts
+   * and of directory jobs with their subdirectories, that is not watched yet.
+   */
+  private void watch(RenderBatch batch) throws IOException {
+    Set<Path> dirs = new LinkedHashSet<>();
+    for (Set<Path> files : this.dependencies.values()) {
+      for (Path file : files) {
+        Path parent = file.getParent();
+        if (parent != null && Files.isDirectory(parent)) dirs.add(parent);
+      }
+    }
+    List<Path> trees = new ArrayList<>();
+    for (RenderBatch.Job job : batch.getJobs()) {
+      File fontsDir = job.getEngine().getConfig().getFontsDir();
+      if (fontsDir != null) trees.add(toPath(fontsDir));
+    }
+    for (Path dir : batch.getDirectories()) {
+      trees.add(dir.toAbsolutePath().normalize());
+    }
+    for (Path tree : new LinkedHashSet<>(trees)) {
+      if (!Files.isDirectory(tree)) continue;
+      try (Stream<Path> paths = Files.walk(tree)) {
+        paths.filter(Files::isDirectory).forEach(dirs::add);
+      }
+    }
+    dirs.removeAll(this.watched.values());
+    for (Path dir : dirs) {
+      WatchKey key = dir.register(this.service, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+      this.watched.put(key, dir);
+      LOGGER.debug("Watching {}", dir);
+    }
+  }
+
+  /**
+   * Adds the files changed in the directory of the specified key.
+   *
+   * @return <code>true</code> if events were lost
+   */
+  private boolean collect(WatchKey key, Set<Path> changed) {
+    boolean overflow = false;
+    @Nullable Path dir = this.watched.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        overflow = true;
+      } else if (dir != null) {
+        changed.add(dir.resolve((Path) event.context()));
+      }
+    }
+    if (!key.reset()) this.watched.remove(key);
+    return overflow;
+  }
+
+  private RenderBatch newBatch() {
+    return RenderBatch.fromManifest(this.manifest, settings -> this.engines.computeIfAbsent(settings, this.factory));
+  }
+
+  /**
+   * @return the files the job depends on, or only its input if the document cannot be parsed
+   */
+  private static Set<Path> getDependencies(RenderBatch.Job job) {
+    Set<Path> files = new HashSet<>();
+    try {
+      for (File file : job.getEngine().getDependencies(job.getInput())) {
+        files.add(toPath(file));
+      }
+    } catch (IOException | RuntimeException ex) {
+      LOGGER.debug("Unable to list dependencies of {}: {}", job.getInput(), ex.getMessage());
+      files.add(toPath(job.getInput()));
+      File stylesheet = job.getEngine().getConfig().getAuthorStylesheet();
+      if (stylesheet != null) files.add(toPath(stylesheet));
+    }
+    return files;
+  }
+
+  private static Path toPath(File file) {
+    return file.toPath().toAbsolutePath().normalize();
+  }
+
+  @Override
+  public String toString() {
+    return "RenderWatcher{directories=" + this.watched.size() + ", jobs=" + this.dependencies.size() + '}';
+  }
+}
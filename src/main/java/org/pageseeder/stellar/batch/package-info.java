@@ -0,0 +1,5 @@
+/**
+ * Renders batches of PSML documents described by a job manifest in a single JVM.
+ */
+@org.eclipse.jdt.annotation.NonNullByDefault
+package org.pageseeder.stellar.batch;
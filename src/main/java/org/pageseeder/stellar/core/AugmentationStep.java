@@ -0,0 +1,44 @@
+package org.pageseeder.stellar.core;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * A step in the augmentation of a PSML document before it is laid out.
+ *
+ * <p>Steps are run by a {@link DocumentAugmenter}, which walks the document once and calls
+ * {@link #visit(Element)} on every step for each element in document order. A step may modify
+ * the visited element and its descendants; changes that depend on the whole document should
+ * be made in {@link #end(Document)}.
+ *
+ * <p>Steps are stateful and must only be used for a single document.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+public interface AugmentationStep {
+
+  /**
+   * Called before the document is traversed.
+   *
+   * @param doc the document to augment
+   */
+  default void start(Document doc) {}
+
+  /**
+   * Called for each element of the document in document order, starting with the document element.
+   *
+   * @param element the current element
+   */
+  void visit(Element element);
+
+  /**
+   * Called once every element has been visited.
+   *
+   * @param doc the document to augment
+   */
+  default void end(Document doc) {}
+
+}
@@ -8,19 +8,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.pdf.DOMUtil;
 import org.xhtmlrenderer.pdf.ITextRenderer;
 import org.xhtmlrenderer.render.Box;
-import org.xhtmlrenderer.render.InlineLayoutBox;
-import org.xhtmlrenderer.render.PageBox;
-import org.xhtmlrenderer.render.RenderingContext;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * A utility class for loading bookmarks from a PSML document and generating the outline of a PDF document.
@@ -72,6 +68,17 @@ public final class Bookmarks {
     return new Bookmarks(bookmarks);
   }
 
+  /**
+   * Returns an augmentation step collecting the bookmarks of the document without modifying
+   * it, so that they can be loaded in the same traversal as other steps.
+   *
+   * @param maxLevel the maximum level of bookmarks to extract
+   * @return a new collector
+   */
+  public static Collector collector(int maxLevel) {
+    return new Collector(maxLevel);
+  }
+
   /**
    * Generates and writes the outline (bookmarks) of a PDF document based on the given list of bookmarks.
    * Adjusts the PDF document to display the outline in the PDF viewer.
@@ -82,14 +89,32 @@ public final class Bookmarks {
     if (this.list.isEmpty()) {
       LOGGER.info("No bookmarks to render");
     } else {
-      RenderingContext context = new RenderingContext(renderer.getSharedContext());
-      Box root = renderer.getRootBox();
       PdfWriter writer = renderer.getWriter();
       writer.setViewerPreferences(PdfWriter.PageModeUseOutlines);
-      writeBookmarks(renderer, context, root, writer.getRootOutline(), this.list);
+      Destinations destinations = new Destinations(renderer);
+      writeBookmarks(destinations::resolve, writer.getRootOutline(), this.list);
     }
   }
 
+  /**
+   * Writes the outline of a PDF assembled from several documents.
+   *
+   * @param writer the writer of the PDF
+   * @param locator returns the location of a bookmark as a page number starting at 1 and a
+   *                vertical position, or <code>null</code> if it cannot be located
+   */
+  void writeOutline(PdfWriter writer, Function<PsmlBookmark, PageLocator.@Nullable Location> locator) {
+    if (this.list.isEmpty()) return;
+    writer.setViewerPreferences(PdfWriter.PageModeUseOutlines);
+    writeBookmarks(bookmark -> {
+      PageLocator.Location location = locator.apply(bookmark);
+      if (location == null) return new PdfDestination(PdfDestination.FITH);
+      PdfDestination target = new PdfDestination(PdfDestination.XYZ, 0, location.getY(), 0);
+      target.addPage(writer.getPageReference(location.getPageNo()));
+      return target;
+    }, writer.getRootOutline(), this.list);
+  }
+
   /**
    * Loads a list of bookmarks from the specified PSML document.
    *
@@ -98,12 +123,9 @@ public final class Bookmarks {
    * @param maxLevel the maximum level of bookmarks to extract
    */
   public static void loadBookmarks(Document doc, List<PsmlBookmark> bookmarks, int maxLevel) {
-    Element toc = DOMUtil.getChild(doc.getDocumentElement(), "toc");
-    if (toc != null && toc.hasChildNodes()) {
-      loadBookmarksFromToc(toc, bookmarks, maxLevel);
-    } else {
-      loadBookmarksFromHeadings(doc, bookmarks, maxLevel);
-    }
+    Collector collector = new Collector(maxLevel);
+    new DocumentAugmenter(List.of(collector)).augment(doc);
+    bookmarks.addAll(collector.list);
   }
 
   private static void loadBookmarksFromToc(Element toc, List<PsmlBookmark> bookmarks, int maxLevel) {
@@ -117,29 +139,23 @@ public final class Bookmarks {
   }
 
   /**
-   * Populates a list of bookmarks by extracting headings from the given XML document.
+   * Populates a list of bookmarks from the specified headings and section titles.
    *
-   * @param doc the XML document containing heading elements to be processed
+   * @param headings the heading and section title elements in document order
    * @param bookmarks the list to populate with extracted {@code PsmlBookmark} objects
    * @param maxLevel the maximum heading level to be considered for bookmark extraction
    */
-  private static void loadBookmarksFromHeadings(Document doc, List<PsmlBookmark> bookmarks, int maxLevel) {
-    try {
-      Deque<PsmlBookmark> stack = new ArrayDeque<>();
-      NodeList nodes = Utils.getNodes(doc, "//heading|//section/title");
-      for (int i = 0; i < nodes.getLength(); i++) {
-        Element element = (Element) nodes.item(i);
-        int level = Utils.getIntAttribute(element, "level", 3);
-        if (level <= maxLevel) {
-          PsmlBookmark bookmark = PsmlBookmark.fromHeading(element);
-          PsmlBookmark top = addBookmarkFromHeading(bookmark, stack, level);
-          if (top != null) {
-            bookmarks.add(top);
-          }
+  private static void loadBookmarksFromHeadings(List<Element> headings, List<PsmlBookmark> bookmarks, int maxLevel) {
+    Deque<PsmlBookmark> stack = new ArrayDeque<>();
+    for (Element element : headings) {
+      int level = Utils.getIntAttribute(element, "level", 3);
+      if (level <= maxLevel) {
+        PsmlBookmark bookmark = PsmlBookmark.fromHeading(element);
+        PsmlBookmark top = addBookmarkFromHeading(bookmark, stack, level);
+        if (top != null) {
+          bookmarks.add(top);
         }
       }
-    } catch (Exception ex) {
-      LOGGER.error("Unable to extract bookmarks headings", ex);
     }
   }
 
@@ -198,52 +214,127 @@ public final class Bookmarks {
     }
   }
 
-  private static void writeBookmarks(ITextRenderer renderer, RenderingContext context, Box root, PdfOutline parent, List<PsmlBookmark> bookmarks) {
+  private static void writeBookmarks(Function<PsmlBookmark, PdfDestination> destinations, PdfOutline parent,
+                                     List<PsmlBookmark> bookmarks) {
     for (PsmlBookmark bookmark : bookmarks) {
       LOGGER.debug("Writing Bookmark {} {}", bookmark.getName(), bookmark.getIdref());
-      writeBookmark(renderer, context, root, parent, bookmark);
+      writeBookmark(destinations, parent, bookmark);
     }
   }
 
-  private static void writeBookmark(ITextRenderer renderer, RenderingContext c, Box root, PdfOutline parent, PsmlBookmark bookmark) {
-    float dotsPerPoint = renderer.getOutputDevice().getDotsPerPoint();
-    int startPageNo = renderer.getOutputDevice().getStartPageNo();
-    String idref = bookmark.getIdref();
-    PdfDestination target = null;
-    Box box = bookmark.getBox();
-    if (!idref.isEmpty()) {
-      box = renderer.getSharedContext().getBoxById(idref);
-    }
-    if (box != null) {
-      PageBox page = root.getLayer().getPage(c, getPageRefY(box));
-      int distanceFromTop = page.getMarginBorderPadding(c, CalculatedStyle.TOP);
-      distanceFromTop += box.getAbsY() - page.getTop();
-      target = new PdfDestination(PdfDestination.XYZ, 0, normalizeY(page, c, distanceFromTop / dotsPerPoint), 0);
-      target.addPage(renderer.getWriter().getPageReference(startPageNo + page.getPageNo() + 1));
-    }
-    if (target == null) {
-      // TODO new PdfDestination(PdfDestination.FITH, height); where height is the height of the page
-      target = new PdfDestination(PdfDestination.FITH);
-    }
-    PdfOutline outline = new PdfOutline(parent, target, bookmark.getName());
-    writeBookmarks(renderer, c, root, outline, bookmark.getChildren());
+  private static void writeBookmark(Function<PsmlBookmark, PdfDestination> destinations, PdfOutline parent,
+                                    PsmlBookmark bookmark) {
+    PdfOutline outline = new PdfOutline(parent, destinations.apply(bookmark), bookmark.getName());
+    writeBookmarks(destinations, outline, bookmark.getChildren());
   }
 
-  private static int getPageRefY(Box box) {
-    if (box instanceof InlineLayoutBox) {
-      InlineLayoutBox iB = (InlineLayoutBox) box;
-      return iB.getAbsY() + iB.getBaseline();
-    } else {
-      return box.getAbsY();
-    }
+  /**
+   * @return <code>true</code> if there are no bookmarks
+   */
+  boolean isEmpty() {
+    return this.list.isEmpty();
   }
 
-  private static float normalizeY(PageBox page, RenderingContext c,  float y) {
-    return page.getHeight(c) - y;
+  /**
+   * Resolves the destinations of bookmarks in the laid out document.
+   *
+   * <p>The page index and the values that only depend on the renderer are computed once
+   * for the whole outline.
+   */
+  private static final class Destinations {
+
+    private final ITextRenderer renderer;
+
+    private final PageLocator locator;
+
+    private final int startPageNo;
+
+    Destinations(ITextRenderer renderer) {
+      this.renderer = renderer;
+      this.locator = new PageLocator(renderer);
+      this.startPageNo = renderer.getOutputDevice().getStartPageNo();
+    }
+
+    PdfDestination resolve(PsmlBookmark bookmark) {
+      String idref = bookmark.getIdref();
+      Box box = bookmark.getBox();
+      if (!idref.isEmpty()) {
+        box = this.renderer.getSharedContext().getBoxById(idref);
+      }
+      if (box == null) {
+        // Not laid out, so there is no page or position to go to
+        return new PdfDestination(PdfDestination.FITH);
+      }
+      PageLocator.Location location = this.locator.locate(box);
+      PdfDestination target = new PdfDestination(PdfDestination.XYZ, 0, location.getY(), 0);
+      target.addPage(this.renderer.getWriter().getPageReference(this.startPageNo + location.getPageNo() + 1));
+      return target;
+    }
   }
 
   @Override
   public String toString() {
     return "Bookmarks=" + list;
   }
+
+  /**
+   * Collects the bookmarks of a PSML document.
+   *
+   * <p>If the document includes a non-empty "toc" element, bookmarks are loaded from its
+   * TOC parts; otherwise, they are built from the headings and section titles, which must
+   * have an ID by the end of the traversal.
+   */
+  public static final class Collector implements AugmentationStep {
+
+    private final int maxLevel;
+
+    private final List<PsmlBookmark> list = new ArrayList<>();
+
+    private final List<Element> headings = new ArrayList<>();
+
+    private @Nullable Element toc;
+
+    private boolean done = false;
+
+    private Collector(int maxLevel) {
+      this.maxLevel = maxLevel;
+    }
+
+    @Override
+    public void start(Document doc) {
+      Element child = DOMUtil.getChild(doc.getDocumentElement(), "toc");
+      this.toc = child != null && child.hasChildNodes() ? child : null;
+    }
+
+    @Override
+    public void visit(Element element) {
+      if (this.toc != null) return;
+      String name = element.getNodeName();
+      if ("heading".equals(name) || ("title".equals(name) && "section".equals(element.getParentNode().getNodeName()))) {
+        this.headings.add(element);
+      }
+    }
+
+    @Override
+    public void end(Document doc) {
+      Element tocElement = this.toc;
+      if (tocElement != null) {
+        loadBookmarksFromToc(tocElement, this.list, this.maxLevel);
+      } else {
+        loadBookmarksFromHeadings(this.headings, this.list, this.maxLevel);
+      }
+      this.headings.clear();
+      this.done = true;
+    }
+
+    /**
+     * @return the bookmarks collected from the document
+     *
+     * @throws IllegalStateException if the document has not been traversed yet
+     */
+    public Bookmarks getBookmarks() {
+      if (!this.done) throw new IllegalStateException("Document not traversed yet");
+      return new Bookmarks(this.list);
+    }
+  }
 }
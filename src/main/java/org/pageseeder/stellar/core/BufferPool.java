@@ -0,0 +1,254 @@
+package org.pageseeder.stellar.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of reusable growable buffers to render PDF documents in memory.
+ *
+ * <p>A buffer is acquired for each render and written to through its output stream; once
+ * the PDF has been sent, closing the buffer returns it to the pool. Buffers can be heap or direct
+ * buffers; direct buffers avoid a copy when the PDF is written to a channel.
+ *
+ * <p>The pool keeps at most the configured number of idle buffers, and buffers which have
+ * grown beyond the retained capacity are discarded rather than returned to the pool so that
+ * an occasional large document does not pin memory.
+ *
+ * <p>This class is thread-safe, but each buffer must only be used by one thread at a time.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+public final class BufferPool {
+
+  /**
+   * The default initial capacity of buffers (256KB).
+   */
+  public static final int DEFAULT_INITIAL_CAPACITY = 256 * 1024;
+
+  /**
+   * The default maximum capacity of buffers returned to the pool (16MB).
+   */
+  public static final int DEFAULT_MAX_RETAINED_CAPACITY = 16 * 1024 * 1024;
+
+  private final BlockingQueue<Buffer> idle;
+
+  private final int initialCapacity;
+
+  private final int maxRetainedCapacity;
+
+  private final boolean direct;
+
+  private final AtomicLong allocations = new AtomicLong();
+
+  private final AtomicLong reuses = new AtomicLong();
+
+  /**
+   * Creates a pool of heap buffers with the default capacities.
+   *
+   * @param maxIdle the maximum number of idle buffers kept in the pool
+   */
+  public BufferPool(int maxIdle) {
+    this(maxIdle, DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_RETAINED_CAPACITY, false);
+  }
+
+  /**
+   * Creates a pool of buffers.
+   *
+   * @param maxIdle the maximum number of idle buffers kept in the pool
+   * @param initialCapacity the initial capacity of new buffers in bytes
+   * @param maxRetainedCapacity the maximum capacity of buffers returned to the pool in bytes
+   * @param direct whether to allocate direct buffers
+   */
+  public BufferPool(int maxIdle, int initialCapacity, int maxRetainedCapacity, boolean direct) {
+    if (maxIdle < 1) throw new IllegalArgumentException("The pool must keep at least one buffer");
+    if (initialCapacity < 1) throw new IllegalArgumentException("The initial capacity must be strictly positive");
+    this.idle = new ArrayBlockingQueue<>(maxIdle);
+    this.initialCapacity = initialCapacity;
+    this.maxRetainedCapacity = maxRetainedCapacity;
+    this.direct = direct;
+  }
+
+  /**
+   * Returns an empty buffer from the pool or a new buffer if the pool is empty.
+   *
+   * @return an empty buffer to be closed after use
+   */
+  public Buffer acquire() {
+    Buffer buffer = this.idle.poll();
+    if (buffer != null) {
+      this.reuses.incrementAndGet();
+      buffer.open();
+      return buffer;
+    }
+    this.allocations.incrementAndGet();
+    return new Buffer(this, allocate(this.initialCapacity));
+  }
+
+  private ByteBuffer allocate(int capacity) {
+    return this.direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+
+  private void release(Buffer buffer) {
+    if (buffer.data.capacity() <= this.maxRetainedCapacity) {
+      this.idle.offer(buffer);
+    }
+  }
+
+  /**
+   * @return the number of buffers allocated by this pool
+   */
+  public long getAllocations() {
+    return this.allocations.get();
+  }
+
+  /**
+   * @return the number of times a buffer was reused
+   */
+  public long getReuses() {
+    return this.reuses.get();
+  }
+
+  /**
+   * @return the number of idle buffers in the pool
+   */
+  public int getIdle() {
+    return this.idle.size();
+  }
+
+  @Override
+  public String toString() {
+    return "BufferPool{allocations=" + this.allocations + ", reuses=" + this.reuses + ", idle=" + this.idle.size()
+        + ", direct=" + this.direct + '}';
+  }
+
+  /**
+   * A growable buffer from a pool.
+   *
+   * <p>Closing the buffer returns it to the pool; it must not be used afterwards. Closing
+   * its output stream has no effect, as renderers close the stream they write to.
+   */
+  public static final class Buffer implements AutoCloseable {
+
+    private final BufferPool pool;
+
+    private final OutputStream stream = new OutputStream() {
+      @Override
+      public void write(int b) {
+        ensureCapacity(1);
+        Buffer.this.data.put((byte) b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        Buffer.this.data.put(b, off, len);
+      }
+    };
+
+    private ByteBuffer data;
+
+    private boolean closed = false;
+
+    private Buffer(BufferPool pool, ByteBuffer data) {
+      this.pool = pool;
+      this.data = data;
+    }
+
+    private void open() {
+      this.data.clear();
+      this.closed = false;
+    }
+
+    /**
+     * @return the stream to write to this buffer
+     */
+    public OutputStream getOutputStream() {
+      return this.stream;
+    }
+
+    private void ensureCapacity(int length) {
+      if (this.closed) throw new IllegalStateException("Buffer returned to the pool");
+      if (this.data.remaining() < length) {
+        long required = (long) this.data.position() + length;
+        if (required > Integer.MAX_VALUE - 8) throw new OutOfMemoryError("Buffer too large");
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(required, this.data.capacity() * 2L));
+        ByteBuffer grown = this.pool.allocate(capacity);
+        this.data.flip();
+        grown.put(this.data);
+        this.data = grown;
+      }
+    }
+
+    /**
+     * @return the number of bytes written to this buffer
+     */
+    public int size() {
+      return this.data.position();
+    }
+
+    /**
+     * Returns a read-only view of the bytes written to this buffer.
+     *
+     * <p>The view is only valid until the buffer is written to or closed.
+     *
+     * @return a read-only buffer from the first to the last byte written
+     */
+    public ByteBuffer toByteBuffer() {
+      ByteBuffer view = this.data.duplicate();
+      view.flip();
+      return view.asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the content of this buffer to the specified channel.
+     *
+     * @param channel the channel to write to
+     * @throws IOException if an error occurs while writing to the channel
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+      ByteBuffer view = toByteBuffer();
+      while (view.hasRemaining()) {
+        channel.write(view);
+      }
+    }
+
+    /**
+     * Writes the content of this buffer to the specified stream.
+     *
+     * @param out the stream to write to
+     * @throws IOException if an error occurs while writing to the stream
+     */
+    public void writeTo(OutputStream out) throws IOException {
+      if (this.data.hasArray()) {
+        out.write(this.data.array(), this.data.arrayOffset(), this.data.position());
+      } else {
+        ByteBuffer view = toByteBuffer();
+        byte[] chunk = new byte[Math.min(view.remaining(), 64 * 1024)];
+        while (view.hasRemaining()) {
+          int n = Math.min(chunk.length, view.remaining());
+          view.get(chunk, 0, n);
+          out.write(chunk, 0, n);
+        }
+      }
+    }
+
+    /**
+     * Returns this buffer to its pool.
+     */
+    @Override
+    public void close() {
+      if (!this.closed) {
+        this.closed = true;
+        this.pool.release(this);
+      }
+    }
+  }
+}
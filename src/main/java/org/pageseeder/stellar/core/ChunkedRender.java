@@ -0,0 +1,457 @@
+package org.pageseeder.stellar.core;
+
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.PdfAction;
+import com.lowagie.text.pdf.PdfAnnotation;
+import com.lowagie.text.pdf.PdfDestination;
+import com.lowagie.text.pdf.PdfDictionary;
+import com.lowagie.text.pdf.PdfDocument;
+import com.lowagie.text.pdf.PdfName;
+import com.lowagie.text.pdf.PdfString;
+import com.lowagie.text.pdf.PdfWriter;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+import org.xhtmlrenderer.context.StyleReference;
+import org.xhtmlrenderer.css.constants.IdentValue;
+import org.xhtmlrenderer.css.extend.ContentFunction;
+import org.xhtmlrenderer.css.newmatch.PageInfo;
+import org.xhtmlrenderer.css.parser.FSFunction;
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.css.style.EmptyStyle;
+import org.xhtmlrenderer.extend.UserAgentCallback;
+import org.xhtmlrenderer.layout.CounterFunction;
+import org.xhtmlrenderer.layout.FunctionData;
+import org.xhtmlrenderer.layout.Layer;
+import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.pdf.ITextFontContext;
+import org.xhtmlrenderer.pdf.ITextOutputDevice;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.InlineLayoutBox;
+import org.xhtmlrenderer.render.InlineText;
+import org.xhtmlrenderer.render.PageBox;
+import org.xhtmlrenderer.render.RenderingContext;
+
+import java.awt.Shape;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Lays out the chunks of a large document in parallel and writes them as a single PDF.
+ *
+ * <p>Each chunk is laid out by its own renderer. Once all chunks are laid out, the number of
+ * pages of each chunk is known, so the pages are painted in order into a single PDF writer with
+ * the page offset of their chunk: page counters, <code>counter(pages)</code> and
+ * <code>target-counter</code> give the same values as when the document is rendered at once,
+ * and links between chunks go to the target page.
+ *
+ * <p>As all chunks are written by the same writer, fonts and images shared by the renderers
+ * are only embedded once, and the PDF is written directly to the output.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+final class ChunkedRender {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedRender.class);
+
+  private final List<DocumentSplitter.Chunk> chunks;
+
+  private final String baseUri;
+
+  private final Supplier<ITextRenderer> renderers;
+
+  private final Supplier<PsmlNamespaceHandler> handlers;
+
+  /**
+   * @param chunks the chunks of the document in order
+   * @param baseUri the URI of the original document
+   * @param renderers creates a new renderer for a chunk
+   * @param handlers creates a new namespace handler for a chunk
+   */
+  ChunkedRender(List<DocumentSplitter.Chunk> chunks, String baseUri, Supplier<ITextRenderer> renderers,
+                Supplier<PsmlNamespaceHandler> handlers) {
+    this.chunks = chunks;
+    this.baseUri = baseUri;
+    this.renderers = renderers;
+    this.handlers = handlers;
+  }
+
+  /**
+   * Lays out the chunks in parallel and writes the PDF.
+   *
+   * <p>The calling thread lays out the first chunk and any chunk that the executor has not
+   * started yet, so renders progress even when the executor is busy with other renders.
+   *
+   * @param executor lays out the other chunks
+   * @param info the metadata of the original document
+   * @param bookmarks the bookmarks of the original document
+   * @param out where the PDF is written, closed once the PDF is complete
+   *
+   * @throws IOException if a chunk could not be laid out or the PDF could not be written
+   * @throws DocumentException if the PDF could not be created
+   */
+  void render(ThreadPoolExecutor executor, Info info, Bookmarks bookmarks, OutputStream out)
+      throws IOException, DocumentException {
+    long start = System.nanoTime();
+    List<LaidOut> laidOut = layout(executor);
+    long layout = System.nanoTime();
+
+    // Page number of the first page of each chunk in the PDF, starting at 1
+    int[] offsets = new int[laidOut.size()];
+    int pages = 0;
+    for (int i = 0; i < laidOut.size(); i++) {
+      offsets[i] = pages + 1;
+      pages += laidOut.get(i).locator.getPageCount();
+    }
+    Function<String, PageLocator.@Nullable Location> locator = id -> locate(id, laidOut, offsets);
+
+    // Same as PdfWriter.getInstance, but resolving the links between chunks
+    com.lowagie.text.Document document = new com.lowagie.text.Document(toPageSize(laidOut.get(0).renderer, 0), 0, 0, 0, 0);
+    PdfDocument pdf = new PdfDocument();
+    pdf.setTextRenderingOptions(document.getTextRenderingOptions());
+    document.addDocListener(pdf);
+    ChunkWriter writer = new ChunkWriter(pdf, out, locator);
+    pdf.addWriter(writer);
+    document.open();
+    for (int i = 0; i < laidOut.size(); i++) {
+      write(laidOut.get(i).renderer, offsets[i], pages, locator, document, writer);
+    }
+    bookmarks.writeOutline(writer, bookmark -> locator.apply(bookmark.getIdref()));
+    info.writeValues(writer);
+    document.close();
+    LOGGER.debug("Laid out {} chunks ({} pages) in {}ms, written in {}ms", laidOut.size(), pages,
+        (layout - start) / 1_000_000, (System.nanoTime() - layout) / 1_000_000);
+  }
+
+  private List<LaidOut> layout(ThreadPoolExecutor executor) throws IOException {
+    List<FutureTask<LaidOut>> tasks = new ArrayList<>(this.chunks.size());
+    for (int i = 0; i < this.chunks.size(); i++) {
+      DocumentSplitter.Chunk chunk = this.chunks.get(i);
+      boolean first = i == 0;
+      tasks.add(new FutureTask<>(() -> layout(chunk, first)));
+    }
+    for (int i = 1; i < tasks.size(); i++) {
+      executor.execute(tasks.get(i));
+    }
+    try {
+      List<LaidOut> laidOut = new ArrayList<>(tasks.size());
+      for (int i = 0; i < tasks.size(); i++) {
+        FutureTask<LaidOut> task = tasks.get(i);
+        if (i == 0 || executor.remove(task)) task.run();
+        laidOut.add(task.get());
+      }
+      return laidOut;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while laying out chunks");
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      throw new IOException("Unable to lay out chunk", cause);
+    } finally {
+      for (FutureTask<LaidOut> task : tasks) {
+        if (!task.isDone() && executor.remove(task)) task.cancel(false);
+      }
+    }
+  }
+
+  private LaidOut layout(DocumentSplitter.Chunk chunk, boolean first) {
+    ITextRenderer renderer = this.renderers.get();
+    if (!first) {
+      SharedContext sharedContext = renderer.getSharedContext();
+      sharedContext.setCss(new ChunkStyleReference(sharedContext.getUserAgentCallback()));
+    }
+    renderer.setDocument(chunk.getDocument(), this.baseUri, this.handlers.get());
+    renderer.layout();
+    return new LaidOut(chunk, renderer, new PageLocator(renderer));
+  }
+
+  /**
+   * Paints the pages of a chunk, as <code>ITextRenderer.writeNextDocument</code> does, but
+   * with the page count of the whole document.
+   *
+   * @param renderer the renderer of the chunk
+   * @param offset the page number of the first page of the chunk starting at 1
+   * @param pageCount the number of pages of the document
+   */
+  private static void write(ITextRenderer renderer, int offset, int pageCount,
+                            Function<String, PageLocator.@Nullable Location> locator,
+                            com.lowagie.text.Document document, PdfWriter writer) throws InterruptedIOException {
+    BlockBox root = renderer.getRootBox();
+    List<PageBox> pages = root.getLayer().getPages();
+    ITextOutputDevice device = renderer.getOutputDevice();
+    RenderingContext c = newRenderingContext(renderer);
+    // Page counters add the initial page number to the page index and to the page count
+    c.setInitialPageNo(offset);
+    resolveTargetCounters(root, new CrossChunkCounter(locator));
+
+    device.setRoot(root);
+    device.start(renderer.getDocument());
+    device.setWriter(writer);
+    device.setStartPageNo(offset - 1);
+    StyleReference css = renderer.getSharedContext().getCss();
+    if (css instanceof ChunkStyleReference && offset % 2 == 0) {
+      ((ChunkStyleReference) css).restyle(c, pages, offset);
+    }
+    root.getLayer().assignPagePaintingPositions(c, Layer.PAGED_MODE_PRINT);
+    c.setPageCount(pageCount - offset + 1);
+    for (int i = 0; i < pages.size(); i++) {
+      if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Interrupted while writing chunks");
+      PageBox page = pages.get(i);
+      if (offset + i > 1) {
+        document.setPageSize(toPageSize(renderer, i));
+        document.newPage();
+      }
+      device.initializePage(writer.getDirectContent(), document.getPageSize().getHeight());
+      c.setPage(i, page);
+      paintPage(c, device, root, page);
+      device.finishPage();
+    }
+    device.finish(c, root);
+  }
+
+  /**
+   * Same as <code>ITextRenderer.newRenderingContext</code>.
+   */
+  private static RenderingContext newRenderingContext(ITextRenderer renderer) {
+    SharedContext sharedContext = renderer.getSharedContext();
+    RenderingContext c = sharedContext.newRenderingContextInstance();
+    c.setFontContext(new ITextFontContext());
+    c.setOutputDevice(renderer.getOutputDevice());
+    sharedContext.getTextRenderer().setup(c.getFontContext());
+    c.setRootLayer(renderer.getRootBox().getLayer());
+    return c;
+  }
+
+  /**
+   * Same as <code>ITextRenderer.paintPage</code>.
+   */
+  private static void paintPage(RenderingContext c, ITextOutputDevice device, BlockBox root, PageBox page) {
+    page.paintBackground(c, 0, Layer.PAGED_MODE_PRINT);
+    page.paintMarginAreas(c, 0, Layer.PAGED_MODE_PRINT);
+    page.paintBorder(c, 0, Layer.PAGED_MODE_PRINT);
+    Shape working = device.getClip();
+    device.clip(page.getPrintClippingBounds(c));
+    int top = -page.getPaintingTop() + page.getMarginBorderPadding(c, CalculatedStyle.TOP);
+    int left = page.getMarginBorderPadding(c, CalculatedStyle.LEFT);
+    device.translate(left, top);
+    root.getLayer().paint(c);
+    device.translate(-left, -top);
+    device.setClip(working);
+  }
+
+  private static Rectangle toPageSize(ITextRenderer renderer, int index) {
+    PageBox page = renderer.getRootBox().getLayer().getPages().get(index);
+    RenderingContext c = new RenderingContext(renderer.getSharedContext());
+    float dotsPerPoint = renderer.getDotsPerPoint();
+    return new Rectangle(0, 0, page.getWidth(c) / dotsPerPoint, page.getHeight(c) / dotsPerPoint);
+  }
+
+  /**
+   * Replaces the function computing <code>target-counter</code> for links to another chunk,
+   * which the renderer of the chunk cannot resolve.
+   */
+  private static void resolveTargetCounters(Box box, ContentFunction function) {
+    if (box instanceof InlineLayoutBox) {
+      for (Object child : ((InlineLayoutBox) box).getInlineChildren()) {
+        if (child instanceof InlineText) {
+          FunctionData data = ((InlineText) child).getFunctionData();
+          if (data != null && data.getFunction() != null && "target-counter".equals(data.getFunction().getName())
+              && CrossChunkCounter.getTarget((InlineText) child) != null) {
+            data.setContentFunction(function);
+          }
+        } else if (child instanceof Box) {
+          resolveTargetCounters((Box) child, function);
+        }
+      }
+    } else {
+      for (Box child : box.getChildren()) {
+        resolveTargetCounters(child, function);
+      }
+    }
+  }
+
+  /**
+   * Locates the element with the specified ID in the PDF.
+   *
+   * @return the page number in the PDF starting at 1 and the vertical position
+   */
+  private static PageLocator.@Nullable Location locate(String id, List<LaidOut> laidOut, int[] offsets) {
+    if (id.isEmpty()) return null;
+    for (int i = 0; i < laidOut.size(); i++) {
+      LaidOut chunk = laidOut.get(i);
+      if (chunk.chunk.contains(id)) {
+        PageLocator.Location location = chunk.locator.locate(id);
+        return location != null ? new PageLocator.Location(offsets[i] + location.getPageNo(), location.getY()) : null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * A chunk laid out by its renderer.
+   */
+  private static final class LaidOut {
+
+    private final DocumentSplitter.Chunk chunk;
+
+    private final ITextRenderer renderer;
+
+    private final PageLocator locator;
+
+    LaidOut(DocumentSplitter.Chunk chunk, ITextRenderer renderer, PageLocator locator) {
+      this.chunk = chunk;
+      this.renderer = renderer;
+      this.locator = locator;
+    }
+  }
+
+  /**
+   * Selects the page styles of a chunk other than the first one.
+   *
+   * <p>The first page of the chunk is not the first page of the document, so it never matches
+   * <code>@page :first</code>. Whether a page is a left or right page depends on the pages of
+   * the previous chunks, so the styles are selected again once the chunk offset is known.
+   */
+  private static final class ChunkStyleReference extends StyleReference {
+
+    /**
+     * The page name that each page style was selected for.
+     */
+    private final Map<PageInfo, @Nullable String> names = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    ChunkStyleReference(UserAgentCallback userAgent) {
+      super(userAgent);
+    }
+
+    @Override
+    public PageInfo getPageStyle(@Nullable String pageName, @Nullable String pseudoPage) {
+      PageInfo info = super.getPageStyle(pageName, "first".equals(pseudoPage) ? "right" : pseudoPage);
+      this.names.put(info, pageName);
+      return info;
+    }
+
+    /**
+     * Selects the left or right page style of each page from its page number in the document,
+     * when the chunk starts on a left page.
+     *
+     * @param c the rendering context of the chunk
+     * @param pages the pages of the chunk
+     * @param offset the page number of the first page of the chunk starting at 1
+     */
+    void restyle(RenderingContext c, List<PageBox> pages, int offset) {
+      for (int i = 0; i < pages.size(); i++) {
+        PageBox page = pages.get(i);
+        String pageName = this.names.get(page.getPageInfo());
+        PageInfo info = super.getPageStyle(pageName, (offset + i) % 2 == 1 ? "right" : "left");
+        int width = page.getContentWidth(c);
+        int height = page.getContentHeight(c);
+        page.setPageInfo(info);
+        page.setStyle(new EmptyStyle().deriveStyle(info.getPageStyle()));
+        page.setOuterPageWidth(page.getWidth(c));
+        if (width != page.getContentWidth(c) || height != page.getContentHeight(c)) {
+          LOGGER.warn("Left and right pages have different content sizes, page {} may not fit its content", offset + i);
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes <code>target-counter(attr(href), page)</code> for links to another chunk.
+   */
+  private static final class CrossChunkCounter implements ContentFunction {
+
+    private final Function<String, PageLocator.@Nullable Location> locator;
+
+    CrossChunkCounter(Function<String, PageLocator.@Nullable Location> locator) {
+      this.locator = locator;
+    }
+
+    @Override
+    public boolean isStatic() {
+      return false;
+    }
+
+    @Override
+    public @Nullable String calculate(LayoutContext c, FSFunction function) {
+      return null;
+    }
+
+    @Override
+    public String calculate(RenderingContext c, FSFunction function, InlineText text) {
+      String id = getTarget(text);
+      PageLocator.Location location = id != null ? this.locator.apply(id) : null;
+      return location != null ? CounterFunction.createCounterText(IdentValue.DECIMAL, location.getPageNo()) : "";
+    }
+
+    @Override
+    public String getLayoutReplacementText() {
+      return "999";
+    }
+
+    @Override
+    public boolean canHandle(LayoutContext c, FSFunction function) {
+      return false;
+    }
+
+    /**
+     * @return the ID of the element in another chunk the text refers to, if any
+     */
+    static @Nullable String getTarget(InlineText text) {
+      Element element = text.getParent().getElement();
+      String href = element != null ? element.getAttribute("href") : "";
+      return href.startsWith(DocumentSplitter.CROSS_CHUNK_SCHEME) ? href.substring(DocumentSplitter.CROSS_CHUNK_SCHEME.length()) : null;
+    }
+  }
+
+  /**
+   * Turns the URI actions of links to another chunk into actions going to the target page.
+   */
+  private static final class ChunkWriter extends PdfWriter {
+
+    private final Function<String, PageLocator.@Nullable Location> locator;
+
+    ChunkWriter(PdfDocument pdf, OutputStream out, Function<String, PageLocator.@Nullable Location> locator) {
+      super(pdf, out);
+      this.locator = locator;
+    }
+
+    @Override
+    public void addAnnotation(PdfAnnotation annotation) {
+      PdfDictionary action = annotation.getAsDict(PdfName.A);
+      PdfString uri = action != null ? action.getAsString(PdfName.URI) : null;
+      if (uri != null && uri.toUnicodeString().startsWith(DocumentSplitter.CROSS_CHUNK_SCHEME)) {
+        String id = uri.toUnicodeString().substring(DocumentSplitter.CROSS_CHUNK_SCHEME.length());
+        PageLocator.Location target = this.locator.apply(id);
+        if (target != null) {
+          PdfDestination destination = new PdfDestination(PdfDestination.XYZ, 0, target.getY(), 0);
+          annotation.put(PdfName.A, PdfAction.gotoLocalPage(target.getPageNo(), destination, this));
+        } else {
+          LOGGER.warn("Unable to resolve link to #{}", id);
+          annotation.remove(PdfName.A);
+        }
+      }
+      super.addAnnotation(annotation);
+    }
+  }
+}
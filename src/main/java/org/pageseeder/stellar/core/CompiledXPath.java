@@ -0,0 +1,130 @@
+package org.pageseeder.stellar.core;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compiled XPath expression that can be evaluated from several threads.
+ *
+ * <p>Compiled expressions are kept in a JVM-wide cache keyed by expression so that the
+ * XPath factory lookup and the compilation only happen once per expression.
+ *
+ * <p>JAXP expressions are not thread-safe, so each evaluating thread compiles and keeps its
+ * own copy of the expression instead of sharing a single instance under a lock.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+final class CompiledXPath {
+
+  /**
+   * The maximum number of expressions kept in the cache.
+   */
+  private static final int MAX_CACHED = 256;
+
+  private static final Map<String, CompiledXPath> CACHE = new ConcurrentHashMap<>();
+
+  /**
+   * Used to compile expressions; XPath objects are not thread-safe either.
+   */
+  private static final ThreadLocal<XPath> XPATH = ThreadLocal.withInitial(() -> XPathFactory.newInstance().newXPath());
+
+  private final String expression;
+
+  /**
+   * The expression compiled for the current thread.
+   */
+  private final ThreadLocal<XPathExpression> compiled;
+
+  private CompiledXPath(String expression, XPathExpression compiled) {
+    this.expression = expression;
+    this.compiled = new ThreadLocal<>();
+    this.compiled.set(compiled);
+  }
+
+  /**
+   * Returns the compiled form of the specified expression, compiling it only if it is not
+   * already cached.
+   *
+   * @param expression the XPath expression
+   * @return the compiled expression
+   *
+   * @throws XPathExpressionException if the expression cannot be compiled
+   */
+  static CompiledXPath of(String expression) throws XPathExpressionException {
+    CompiledXPath compiled = CACHE.get(expression);
+    if (compiled == null) {
+      // Compiling validates the expression before it is cached
+      compiled = new CompiledXPath(expression, XPATH.get().compile(expression));
+      if (CACHE.size() < MAX_CACHED) {
+        CACHE.putIfAbsent(expression, compiled);
+      }
+    }
+    return compiled;
+  }
+
+  /**
+   * @return the XPath expression
+   */
+  String getExpression() {
+    return this.expression;
+  }
+
+  /**
+   * Evaluates this expression as a string.
+   *
+   * @param context the context node
+   * @return the string value
+   *
+   * @throws XPathExpressionException if the expression cannot be evaluated
+   */
+  String evaluate(Node context) throws XPathExpressionException {
+    return compiled().evaluate(context);
+  }
+
+  /**
+   * Evaluates this expression as a node set.
+   *
+   * @param context the context node
+   * @return the matching nodes
+   *
+   * @throws XPathExpressionException if the expression cannot be evaluated
+   */
+  NodeList evaluateNodes(Node context) throws XPathExpressionException {
+    return (NodeList) compiled().evaluate(context, XPathConstants.NODESET);
+  }
+
+  /**
+   * @return the expression compiled for the current thread, compiling it on first use
+   */
+  private XPathExpression compiled() throws XPathExpressionException {
+    XPathExpression xpath = this.compiled.get();
+    if (xpath == null) {
+      xpath = XPATH.get().compile(this.expression);
+      this.compiled.set(xpath);
+    }
+    return xpath;
+  }
+
+  /**
+   * @return the number of expressions currently cached
+   */
+  static int cacheSize() {
+    return CACHE.size();
+  }
+
+  @Override
+  public String toString() {
+    return this.expression;
+  }
+}
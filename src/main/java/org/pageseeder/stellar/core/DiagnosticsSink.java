@@ -0,0 +1,202 @@
+package org.pageseeder.stellar.core;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Writes the augmented PSML documents used to generate PDFs to a directory for debugging.
+ *
+ * <p>Documents are serialized on a single background thread once the render is complete, so
+ * diagnostics never add latency to a render. Each dump is streamed to disk without indentation
+ * and truncated when it reaches the configured size. When the writer falls behind, new dumps
+ * are dropped rather than queued without bounds.
+ *
+ * <p>The background thread stops when idle, so the sink does not need to be closed and does
+ * not prevent the JVM from exiting once pending dumps are written.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+public final class DiagnosticsSink {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DiagnosticsSink.class);
+
+  /**
+   * The default maximum size of each dump (16MB).
+   */
+  public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+  /**
+   * The maximum number of dumps waiting to be written.
+   */
+  private static final int MAX_PENDING = 16;
+
+  private final File directory;
+
+  private final long maxBytes;
+
+  private final ThreadPoolExecutor executor;
+
+  private volatile @Nullable Future<?> last;
+
+  /**
+   * Creates a new diagnostics sink.
+   *
+   * @param directory the directory where documents are written
+   * @param maxBytes the maximum size of each dump in bytes
+   */
+  public DiagnosticsSink(File directory, long maxBytes) {
+    if (maxBytes <= 0) throw new IllegalArgumentException("The maximum dump size must be strictly positive");
+    this.directory = Objects.requireNonNull(directory);
+    this.maxBytes = maxBytes;
+    this.executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_PENDING), r -> {
+      Thread thread = new Thread(r, "stellar-diagnostics");
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    });
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * @return the directory where documents are written
+   */
+  public File getDirectory() {
+    return this.directory;
+  }
+
+  /**
+   * Schedules the specified document to be written.
+   *
+   * <p>The document must no longer be modified or read by the caller.
+   *
+   * @param doc the augmented PSML document
+   * @param name the name of the file to write in the diagnostics directory
+   *
+   * @return <code>true</code> if the document was scheduled; <code>false</code> if it was dropped
+   */
+  public boolean submit(Document doc, String name) {
+    File file = new File(this.directory, name);
+    try {
+      this.last = this.executor.submit(() -> write(doc, file));
+      return true;
+    } catch (RejectedExecutionException ex) {
+      LOGGER.warn("Diagnostics writer is busy, dropping {}", name);
+      return false;
+    }
+  }
+
+  /**
+   * Waits until all the documents scheduled so far have been written.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the unit of the timeout
+   *
+   * @return <code>true</code> if all documents were written within the timeout
+   *
+   * @throws InterruptedException if the current thread was interrupted while waiting
+   */
+  public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+    Future<?> pending = this.last;
+    if (pending == null) return true;
+    try {
+      pending.get(timeout, unit);
+    } catch (ExecutionException ex) {
+      // Already logged by the writer
+    } catch (TimeoutException ex) {
+      return false;
+    }
+    return true;
+  }
+
+  private void write(Document doc, File file) {
+    long start = System.nanoTime();
+    CappedOutputStream capped = null;
+    try {
+      Files.createDirectories(this.directory.toPath());
+      try (CappedOutputStream out = new CappedOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath())), this.maxBytes)) {
+        capped = out;
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        transformer.transform(new DOMSource(doc), new StreamResult(out));
+      }
+      LOGGER.debug("Wrote diagnostics {} in {}ms", file, (System.nanoTime() - start) / 1_000_000);
+    } catch (TransformerException | IOException ex) {
+      if (capped != null && capped.isFull()) {
+        LOGGER.warn("Diagnostics {} truncated at {} bytes", file, this.maxBytes);
+      } else {
+        LOGGER.warn("Unable to write diagnostics {}: {}", file, ex.getMessage());
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "DiagnosticsSink{" + this.directory + ", maxBytes=" + this.maxBytes + '}';
+  }
+
+  /**
+   * An output stream that fails once the maximum number of bytes has been written.
+   */
+  private static final class CappedOutputStream extends FilterOutputStream {
+
+    private final long maxBytes;
+
+    private long count = 0;
+
+    private boolean full = false;
+
+    CappedOutputStream(OutputStream out, long maxBytes) {
+      super(out);
+      this.maxBytes = maxBytes;
+    }
+
+    boolean isFull() {
+      return this.full;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      int allowed = (int) Math.min(len, this.maxBytes - this.count);
+      if (allowed > 0) {
+        this.out.write(b, off, allowed);
+        this.count += allowed;
+      }
+      if (allowed < len) {
+        this.full = true;
+        throw new IOException("Maximum size reached");
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package org.pageseeder.stellar.core;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.List;
+
+/**
+ * Runs a sequence of augmentation steps over a PSML document in a single traversal.
+ *
+ * <p>Elements are visited in document order and, for each element, every step is called in
+ * the order it was specified. This means a step sees the changes made to the current element
+ * by the steps before it. Elements inserted as children of the current element are visited
+ * as well.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+public final class DocumentAugmenter {
+
+  private final List<AugmentationStep> steps;
+
+  /**
+   * @param steps the steps to run in order
+   */
+  public DocumentAugmenter(List<? extends AugmentationStep> steps) {
+    this.steps = List.copyOf(steps);
+  }
+
+  /**
+   * Augments the specified document with every step.
+   *
+   * @param doc the document to augment
+   */
+  public void augment(Document doc) {
+    for (AugmentationStep step : this.steps) {
+      step.start(doc);
+    }
+    Element root = doc.getDocumentElement();
+    @Nullable Node node = root;
+    while (node != null) {
+      if (node.getNodeType() == Node.ELEMENT_NODE) {
+        Element element = (Element) node;
+        for (AugmentationStep step : this.steps) {
+          step.visit(element);
+        }
+      }
+      node = next(node, root);
+    }
+    for (AugmentationStep step : this.steps) {
+      step.end(doc);
+    }
+  }
+
+  /**
+   * Returns the node following the specified node in document order within the root.
+   */
+  private static @Nullable Node next(Node node, Node root) {
+    Node child = node.getFirstChild();
+    if (child != null) return child;
+    Node current = node;
+    while (current != root) {
+      Node sibling = current.getNextSibling();
+      if (sibling != null) return sibling;
+      current = current.getParentNode();
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,243 @@
+package org.pageseeder.stellar.core;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xhtmlrenderer.context.StyleReference;
+import org.xhtmlrenderer.css.constants.CSSName;
+import org.xhtmlrenderer.css.constants.IdentValue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Splits an augmented PSML document into chunks that can be laid out independently.
+ *
+ * <p>Documents are only split before top-level "section" elements which start on a new page
+ * anyway, so each chunk is a copy of the document element with a contiguous range of its
+ * children, the layout is the same as when the document is rendered as a whole, and chunks
+ * have roughly the same number of elements.
+ *
+ * <p>Links to elements in another chunk cannot be resolved by the renderer of the chunk:
+ * their <code>href</code> is replaced by a {@link #CROSS_CHUNK_SCHEME} URI, which the renderer
+ * writes as a URI action, so that they can be turned into internal links when the chunks
+ * are written to the PDF.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+final class DocumentSplitter {
+
+  /**
+   * The URI prefix of links to an element in another chunk, followed by the ID of the element.
+   */
+  static final String CROSS_CHUNK_SCHEME = "stellar-goto://";
+
+  private DocumentSplitter() {}
+
+  /**
+   * Splits the specified document.
+   *
+   * @param doc the augmented document
+   * @param maxChunks the maximum number of chunks
+   * @param minElements the minimum number of elements in each chunk
+   * @param startsPage creates the test of whether a top-level section starts on a new page,
+   *                   only called if the document is large enough to be split
+   *
+   * @return the chunks, or a single chunk with the original document if it is not worth splitting
+   */
+  static List<Chunk> split(Document doc, int maxChunks, int minElements, Supplier<Predicate<Element>> startsPage) {
+    Element root = doc.getDocumentElement();
+    List<Node> children = new ArrayList<>();
+    List<Integer> weights = new ArrayList<>();
+    int total = 0;
+    int sections = 0;
+    for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+      int weight = 0;
+      if (child.getNodeType() == Node.ELEMENT_NODE) {
+        weight = ((Element) child).getElementsByTagName("*").getLength() + 1;
+        if ("section".equals(child.getNodeName())) sections++;
+      }
+      children.add(child);
+      weights.add(weight);
+      total += weight;
+    }
+    int count = Math.min(maxChunks, Math.min(sections, total / Math.max(1, minElements)));
+    if (count < 2) {
+      return List.of(new Chunk(doc, 0, children.size(), Set.of()));
+    }
+
+    // Only sections starting on a new page can start a chunk
+    Predicate<Element> isPageStart = startsPage.get();
+    boolean[] boundaries = new boolean[children.size()];
+    int pageStarts = 0;
+    for (int i = 1; i < children.size(); i++) {
+      Node child = children.get(i);
+      if (child.getNodeType() == Node.ELEMENT_NODE && "section".equals(child.getNodeName())
+          && isPageStart.test((Element) child)) {
+        boundaries[i] = true;
+        pageStarts++;
+      }
+    }
+    count = Math.min(count, pageStarts + 1);
+    if (count < 2) {
+      return List.of(new Chunk(doc, 0, children.size(), Set.of()));
+    }
+
+    // Cut before the first section once each chunk has reached its share of the elements
+    List<Chunk> chunks = new ArrayList<>(count);
+    int start = 0;
+    int accumulated = 0;
+    for (int i = 0; i < children.size(); i++) {
+      boolean boundary = i > start && boundaries[i];
+      if (boundary && chunks.size() < count - 1 && accumulated >= (long) total * (chunks.size() + 1) / count) {
+        chunks.add(copy(doc, children, start, i));
+        start = i;
+      }
+      accumulated += weights.get(i);
+    }
+    chunks.add(copy(doc, children, start, children.size()));
+    if (chunks.size() < 2) {
+      return List.of(new Chunk(doc, 0, children.size(), Set.of()));
+    }
+    rewriteCrossChunkLinks(chunks);
+    return chunks;
+  }
+
+  /**
+   * Returns the test of whether an element starts on a new page with the specified styles.
+   *
+   * <p>An element starts on a new page if it has <code>page-break-before: always</code>, if
+   * the element before it has <code>page-break-after: always</code>, or if its first displayed
+   * child starts on a new page.
+   *
+   * @param css the styles of the document
+   * @return the test of whether an element starts on a new page
+   */
+  static Predicate<Element> startsPage(StyleReference css) {
+    return element -> {
+      Element previous = previousElement(element);
+      if (previous != null && css.getCascadedStyle(previous, false).getIdent(CSSName.PAGE_BREAK_AFTER) == IdentValue.ALWAYS) {
+        return true;
+      }
+      for (Element e = element; e != null; e = firstDisplayedChild(css, e)) {
+        if (css.getCascadedStyle(e, false).getIdent(CSSName.PAGE_BREAK_BEFORE) == IdentValue.ALWAYS) return true;
+      }
+      return false;
+    };
+  }
+
+  private static @Nullable Element previousElement(Element element) {
+    for (Node node = element.getPreviousSibling(); node != null; node = node.getPreviousSibling()) {
+      if (node.getNodeType() == Node.ELEMENT_NODE) return (Element) node;
+    }
+    return null;
+  }
+
+  private static @Nullable Element firstDisplayedChild(StyleReference css, Element element) {
+    for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (node.getNodeType() == Node.ELEMENT_NODE
+          && css.getCascadedStyle((Element) node, false).getIdent(CSSName.DISPLAY) != IdentValue.NONE) {
+        return (Element) node;
+      }
+      // Text before the first child is on the same page as the element
+      if (node.getNodeType() == Node.TEXT_NODE && !node.getTextContent().trim().isEmpty()) return null;
+    }
+    return null;
+  }
+
+  private static Chunk copy(Document doc, List<Node> children, int start, int end) {
+    Document chunk = doc.getImplementation().createDocument(null, null, null);
+    Element root = (Element) chunk.importNode(doc.getDocumentElement(), false);
+    chunk.appendChild(root);
+    for (int i = start; i < end; i++) {
+      root.appendChild(chunk.importNode(children.get(i), true));
+    }
+    return new Chunk(chunk, start, end, collectIds(chunk));
+  }
+
+  /**
+   * Collects the IDs and anchor names of the elements in the specified document.
+   */
+  private static Set<String> collectIds(Document doc) {
+    Set<String> ids = new HashSet<>();
+    NodeList elements = doc.getElementsByTagName("*");
+    for (int i = 0; i < elements.getLength(); i++) {
+      Element element = (Element) elements.item(i);
+      if (element.hasAttribute("id")) {
+        ids.add(element.getAttribute("id"));
+      }
+      if ("anchor".equals(element.getNodeName()) && element.hasAttribute("name")) {
+        ids.add(element.getAttribute("name"));
+      }
+    }
+    return ids;
+  }
+
+  private static void rewriteCrossChunkLinks(List<Chunk> chunks) {
+    for (Chunk chunk : chunks) {
+      NodeList links = chunk.document.getElementsByTagName("link");
+      for (int i = 0; i < links.getLength(); i++) {
+        Element link = (Element) links.item(i);
+        String href = link.getAttribute("href");
+        if (href.length() > 1 && href.charAt(0) == '#' && !chunk.ids.contains(href.substring(1))) {
+          link.setAttribute("href", CROSS_CHUNK_SCHEME + href.substring(1));
+        }
+      }
+    }
+  }
+
+  /**
+   * A document containing a range of the top-level children of the original document.
+   */
+  static final class Chunk {
+
+    private final Document document;
+
+    private final int start;
+
+    private final int end;
+
+    /**
+     * The IDs and anchor names of the elements in this chunk.
+     */
+    private final Set<String> ids;
+
+    Chunk(Document document, int start, int end, Set<String> ids) {
+      this.document = document;
+      this.start = start;
+      this.end = end;
+      this.ids = ids;
+    }
+
+    /**
+     * @return the chunk as a document
+     */
+    Document getDocument() {
+      return this.document;
+    }
+
+    /**
+     * IDs are only collected for documents which have been split.
+     *
+     * @param id an ID or anchor name
+     * @return <code>true</code> if an element of this chunk has this ID or anchor name
+     */
+    boolean contains(String id) {
+      return this.ids.contains(id);
+    }
+
+    @Override
+    public String toString() {
+      return "Chunk{" + this.start + "-" + this.end + ", " + this.ids.size() + " ids}";
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package org.pageseeder.stellar.core;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the font families referenced by stylesheets, so that only the fonts actually used
+ * need to be loaded.
+ *
+ * <p>The families are the names listed in <code>font-family</code> declarations and at the end
+ * of <code>font</code> shorthand declarations, including fallback families later in each list.
+ * Stylesheets imported with <code>@import</code> are scanned as well. Generic families such as
+ * <code>sans-serif</code> are included but do not match any font file.
+ *
+ * <p>Results are cached by URI; local files are scanned again when their modification time or
+ * size changes.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+final class FontFamilies {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FontFamilies.class);
+
+  private static final Pattern COMMENT = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+
+  private static final Pattern FONT_FAMILY = Pattern.compile("(?<![\\w-])font-family\\s*:\\s*([^;}!]+)", Pattern.CASE_INSENSITIVE);
+
+  /**
+   * The <code>font</code> shorthand: the families follow the size and optional line height.
+   */
+  private static final Pattern FONT = Pattern.compile("(?<![\\w-])font\\s*:[^;}!]*?[\\d.]+(?:pt|px|em|rem|%|mm|cm|in|pc|ex)(?:\\s*/\\s*\\S+)?\\s+([^;}!]+)", Pattern.CASE_INSENSITIVE);
+
+  private static final Pattern IMPORT = Pattern.compile("@import\\s+(?:url\\(\\s*)?['\"]?([^'\")\\s;]+)", Pattern.CASE_INSENSITIVE);
+
+  private static final Map<String, Entry> CACHE = new ConcurrentHashMap<>();
+
+  private FontFamilies() {}
+
+  /**
+   * Returns the font families referenced by the stylesheet at the specified URI and the
+   * stylesheets it imports.
+   *
+   * @param uri the URI of the stylesheet
+   * @return the family names without quotes (never null)
+   */
+  static Set<String> get(String uri) {
+    return get(uri, new LinkedHashSet<>());
+  }
+
+  private static Set<String> get(String uri, Set<String> visited) {
+    if (!visited.add(uri)) return Set.of();
+    @Nullable File file = toFile(uri);
+    long modified = file != null ? file.lastModified() : 0;
+    long length = file != null ? file.length() : 0;
+    Entry entry = CACHE.get(uri);
+    if (entry == null || entry.modified != modified || entry.length != length) {
+      entry = load(uri, modified, length);
+      CACHE.put(uri, entry);
+    }
+    if (entry.imports.isEmpty()) return entry.families;
+    Set<String> families = new LinkedHashSet<>(entry.families);
+    for (String imported : entry.imports) {
+      families.addAll(get(imported, visited));
+    }
+    return families;
+  }
+
+  /**
+   * Returns the font families declared in the specified CSS.
+   *
+   * @param css the content of a stylesheet
+   * @return the family names without quotes in the order they appear
+   */
+  static Set<String> scan(CharSequence css) {
+    String text = COMMENT.matcher(css).replaceAll(" ");
+    Set<String> families = new LinkedHashSet<>();
+    addFamilies(FONT_FAMILY.matcher(text), families);
+    addFamilies(FONT.matcher(text), families);
+    return families;
+  }
+
+  private static void addFamilies(Matcher matcher, Set<String> families) {
+    while (matcher.find()) {
+      for (String family : matcher.group(1).split(",")) {
+        String name = family.trim();
+        if (name.length() > 1 && (name.charAt(0) == '\'' || name.charAt(0) == '"')) {
+          name = name.substring(1, name.length() - 1).trim();
+        } else {
+          // Unquoted family names may contain several identifiers separated by spaces
+          name = name.replaceAll("\\s+", " ");
+        }
+        if (!name.isEmpty() && !"inherit".equalsIgnoreCase(name)) families.add(name);
+      }
+    }
+  }
+
+  private static Entry load(String uri, long modified, long length) {
+    try (InputStream in = new URL(uri).openStream()) {
+      String css = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+      Set<String> imports = new LinkedHashSet<>();
+      Matcher matcher = IMPORT.matcher(COMMENT.matcher(css).replaceAll(" "));
+      while (matcher.find()) {
+        imports.add(URI.create(uri).resolve(matcher.group(1)).toString());
+      }
+      return new Entry(modified, length, scan(css), imports);
+    } catch (IOException | IllegalArgumentException ex) {
+      LOGGER.warn("Unable to scan font families in {}: {}", uri, ex.getMessage());
+      return new Entry(modified, length, Set.of(), Set.of());
+    }
+  }
+
+  private static @Nullable File toFile(String uri) {
+    if (!uri.startsWith("file:")) return null;
+    try {
+      return new File(URI.create(uri));
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * The families and imports of a stylesheet.
+   */
+  private static final class Entry {
+
+    private final long modified;
+
+    private final long length;
+
+    private final Set<String> families;
+
+    private final Set<String> imports;
+
+    Entry(long modified, long length, Set<String> families, Set<String> imports) {
+      this.modified = modified;
+      this.length = length;
+      this.families = Collections.unmodifiableSet(families);
+      this.imports = Collections.unmodifiableSet(imports);
+    }
+  }
+}
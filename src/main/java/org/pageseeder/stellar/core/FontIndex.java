@@ -0,0 +1,291 @@
+package org.pageseeder.stellar.core;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent index of the metadata of the fonts in a directory.
+ *
+ * <p>The index lets a new JVM know the family names and styles of the fonts without parsing
+ * them. It is stored in a compact binary file in the user cache, <code>~/.cache/stellar</code>
+ * unless the <code>stellar.fonts.indexDir</code> system property specifies another directory.
+ * To keep the index with the fonts instead, create an empty file named {@value #FILENAME} in
+ * the fonts directory: it is used when it is writable.
+ *
+ * <p>Each entry is validated against the size and modification time of the font file; if only
+ * the modification time has changed, for example after a fresh checkout, the SHA-256 hash of
+ * the file is compared before the font is read again. Font files are keyed by their path
+ * relative to the fonts directory, and may be read concurrently.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+final class FontIndex {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FontIndex.class);
+
+  /**
+   * The name of the index file in the fonts directory, only used if it exists.
+   */
+  static final String FILENAME = ".stellar-fonts.idx";
+
+  /**
+   * The permissions of the index file where supported, readable by other users of the fonts.
+   */
+  private static final Set<PosixFilePermission> PERMISSIONS = PosixFilePermissions.fromString("rw-r--r--");
+
+  private static final int MAGIC = 0x53544649; // 'STFI'
+
+  private static final int VERSION = 2;
+
+  /**
+   * Loaded indexes by index file.
+   */
+  private static final Map<Path, FontIndex> INDEXES = new ConcurrentHashMap<>();
+
+  private final Path file;
+
+  private final Path dir;
+
+  /**
+   * Entries by path of the font file relative to the fonts directory.
+   */
+  private final Map<String, Entry> entries;
+
+  private volatile boolean modified = false;
+
+  private FontIndex(Path file, Path dir, Map<String, Entry> entries) {
+    this.file = file;
+    this.dir = dir;
+    this.entries = new ConcurrentHashMap<>(entries);
+  }
+
+  /**
+   * Returns the index of the fonts in the specified directory, loading it if necessary.
+   *
+   * @param dir the fonts directory
+   * @return the index for that directory
+   */
+  static FontIndex forDirectory(File dir) {
+    Path path = dir.toPath().toAbsolutePath().normalize();
+    Path file = toIndexFile(path);
+    return INDEXES.computeIfAbsent(file, f -> new FontIndex(f, path, load(f)));
+  }
+
+  /**
+   * Returns the metadata of the specified font from the index, reading it from the font file
+   * only if it is not indexed or has changed.
+   *
+   * @param font a font file in the directory of this index or one of its subdirectories
+   * @return the metadata of each font in the file or <code>null</code> if the file is not a readable font
+   */
+  @Nullable List<FontMetadata> get(File font) {
+    String name = toName(font);
+    long length = font.length();
+    long lastModified = font.lastModified();
+    Entry entry = this.entries.get(name);
+    try {
+      if (entry != null && entry.length == length) {
+        if (entry.lastModified == lastModified) return entry.fonts;
+        byte[] hash = hash(font);
+        if (Arrays.equals(hash, entry.hash)) {
+          this.entries.put(name, new Entry(length, lastModified, hash, entry.fonts));
+          this.modified = true;
+          return entry.fonts;
+        }
+      }
+      List<FontMetadata> fonts = FontMetadata.readAll(font);
+      this.entries.put(name, new Entry(length, lastModified, hash(font), fonts));
+      this.modified = true;
+      LOGGER.debug("Indexed font {}: {}", name, fonts);
+      return fonts;
+    } catch (IOException ex) {
+      LOGGER.warn("Unable to read font metadata of {}: {}", font, ex.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Writes the index if any entry was added or updated.
+   */
+  synchronized void save() {
+    if (!this.modified) return;
+    this.modified = false;
+    Map<String, Entry> snapshot = new HashMap<>(this.entries);
+    try {
+      Files.createDirectories(this.file.getParent());
+      Path temp = Files.createTempFile(this.file.getParent(), FILENAME, ".tmp");
+      try {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+          out.writeInt(MAGIC);
+          out.writeInt(VERSION);
+          out.writeInt(snapshot.size());
+          for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+            Entry entry = e.getValue();
+            out.writeUTF(e.getKey());
+            out.writeLong(entry.length);
+            out.writeLong(entry.lastModified);
+            out.write(entry.hash);
+            out.writeShort(entry.fonts.size());
+            for (FontMetadata font : entry.fonts) {
+              font.write(out);
+            }
+          }
+        }
+        setPermissions(temp);
+        try {
+          Files.move(temp, this.file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+          Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+      LOGGER.debug("Saved font index {} with {} fonts", this.file, snapshot.size());
+    } catch (IOException ex) {
+      this.modified = true;
+      LOGGER.warn("Unable to save font index {}: {}", this.file, ex.getMessage());
+    }
+  }
+
+  /**
+   * @return the number of fonts in this index
+   */
+  int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * Discards the indexes loaded in memory, so that they are loaded from disk again.
+   */
+  static void clear() {
+    INDEXES.clear();
+  }
+
+  private String toName(File font) {
+    Path path = font.toPath().toAbsolutePath().normalize();
+    return path.startsWith(this.dir) ? this.dir.relativize(path).toString().replace(File.separatorChar, '/') : path.toString();
+  }
+
+  private static Path toIndexFile(Path path) {
+    Path local = path.resolve(FILENAME);
+    if (Files.isRegularFile(local) && Files.isWritable(local)) return local;
+    String hash = Utils.toHex(Utils.newSha256().digest(path.toString().getBytes(StandardCharsets.UTF_8)));
+    String dir = System.getProperty("stellar.fonts.indexDir");
+    Path cache = dir != null ? Paths.get(dir) : Paths.get(System.getProperty("user.home"), ".cache", "stellar");
+    return cache.resolve("fonts-" + hash.substring(0, 16) + ".idx");
+  }
+
+  /**
+   * Temporary files are only readable by their owner.
+   */
+  private static void setPermissions(Path file) throws IOException {
+    try {
+      Files.setPosixFilePermissions(file, PERMISSIONS);
+    } catch (UnsupportedOperationException ex) {
+      // Not a POSIX file system, keep the default permissions
+    }
+  }
+
+  private static Map<String, Entry> load(Path file) {
+    Map<String, Entry> entries = new HashMap<>();
+    if (!Files.isRegularFile(file)) return entries;
+    try {
+      // Created empty to keep the index in the fonts directory
+      if (Files.size(file) == 0) return entries;
+    } catch (IOException ex) {
+      return entries;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        LOGGER.debug("Ignoring font index {} with a different format", file);
+        return entries;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String name = in.readUTF();
+        long length = in.readLong();
+        long lastModified = in.readLong();
+        byte[] hash = new byte[32];
+        in.readFully(hash);
+        int fonts = in.readUnsignedShort();
+        List<FontMetadata> metadata = new ArrayList<>(fonts);
+        for (int j = 0; j < fonts; j++) {
+          metadata.add(FontMetadata.read(in));
+        }
+        entries.put(name, new Entry(length, lastModified, hash, List.copyOf(metadata)));
+      }
+    } catch (IOException ex) {
+      LOGGER.warn("Ignoring unreadable font index {}: {}", file, ex.getMessage());
+      entries.clear();
+    }
+    return entries;
+  }
+
+  private static byte[] hash(File file) throws IOException {
+    MessageDigest sha256 = Utils.newSha256();
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      byte[] buffer = new byte[8192];
+      for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+        sha256.update(buffer, 0, n);
+      }
+    }
+    return sha256.digest();
+  }
+
+  @Override
+  public String toString() {
+    return "FontIndex{file=" + this.file + ", fonts=" + size() + '}';
+  }
+
+  /**
+   * The indexed metadata of a font file and the state of the file when it was read.
+   */
+  private static final class Entry {
+
+    private final long length;
+
+    private final long lastModified;
+
+    private final byte[] hash;
+
+    /**
+     * The metadata of each font in the file, more than one for a TrueType collection.
+     */
+    private final List<FontMetadata> fonts;
+
+    Entry(long length, long lastModified, byte[] hash, List<FontMetadata> fonts) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.hash = hash;
+      this.fonts = fonts;
+    }
+  }
+}
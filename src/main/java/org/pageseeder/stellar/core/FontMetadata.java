@@ -0,0 +1,259 @@
+package org.pageseeder.stellar.core;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The names and style of a TrueType font, read from its <code>name</code>, <code>OS/2</code>
+ * and <code>head</code> tables without loading any glyph data.
+ *
+ * <p>The family names are all the distinct values of the font family name (name ID 1), which
+ * are the names the font resolver registers the font under.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+final class FontMetadata {
+
+  private static final int NAME_FAMILY = 1;
+
+  private static final int NAME_SUBFAMILY = 2;
+
+  private static final int NAME_FULL = 4;
+
+  private static final int PLATFORM_UNICODE = 0;
+
+  private static final int PLATFORM_MACINTOSH = 1;
+
+  private static final int PLATFORM_WINDOWS = 3;
+
+  private static final int LANGUAGE_EN_US = 0x409;
+
+  private final List<String> families;
+
+  private final String subfamily;
+
+  private final String fullName;
+
+  private final int weight;
+
+  private final boolean italic;
+
+  FontMetadata(List<String> families, String subfamily, String fullName, int weight, boolean italic) {
+    this.families = List.copyOf(families);
+    this.subfamily = subfamily;
+    this.fullName = fullName;
+    this.weight = weight;
+    this.italic = italic;
+  }
+
+  /**
+   * @return the family names of the font, the preferred English name first (never empty)
+   */
+  List<String> getFamilies() {
+    return this.families;
+  }
+
+  /**
+   * @return the preferred family name of the font
+   */
+  String getFamily() {
+    return this.families.get(0);
+  }
+
+  String getSubfamily() {
+    return this.subfamily;
+  }
+
+  String getFullName() {
+    return this.fullName;
+  }
+
+  /**
+   * @return the weight class from 100 to 900
+   */
+  int getWeight() {
+    return this.weight;
+  }
+
+  boolean isItalic() {
+    return this.italic;
+  }
+
+  /**
+   * Reads the metadata of the specified TrueType or OpenType font file.
+   *
+   * @param file the font file
+   * @return the metadata of the font
+   *
+   * @throws IOException if the file could not be read or is not a valid font
+   */
+  static FontMetadata read(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      return read(channel, 0);
+    }
+  }
+
+  /**
+   * Reads the metadata of every font in the specified file, which may be a TrueType
+   * collection (<code>.ttc</code>).
+   *
+   * @param file the font file
+   * @return the metadata of each font in the order of the collection
+   *
+   * @throws IOException if the file could not be read or is not a valid font
+   */
+  static List<FontMetadata> readAll(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer header = read(channel, 0, 12);
+      if (header.getInt(0) != 0x74746366 /* 'ttcf' */) {
+        return List.of(read(channel, 0));
+      }
+      int count = header.getInt(8);
+      if (count < 1 || count > 1024) throw new IOException("Invalid number of fonts in collection: " + count);
+      ByteBuffer offsets = read(channel, 12, count * 4);
+      List<FontMetadata> fonts = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        fonts.add(read(channel, offsets.getInt(i * 4) & 0xFFFFFFFFL));
+      }
+      return fonts;
+    }
+  }
+
+  /**
+   * Reads the metadata of a font from its offset table at the specified position.
+   */
+  static FontMetadata read(FileChannel channel, long position) throws IOException {
+    ByteBuffer header = read(channel, position, 12);
+    int version = header.getInt();
+    if (version != 0x00010000 && version != 0x74727565 /* 'true' */ && version != 0x4F54544F /* 'OTTO' */) {
+      throw new IOException("Not a TrueType or OpenType font");
+    }
+    int numTables = header.getShort(4) & 0xFFFF;
+    ByteBuffer records = read(channel, position + 12, numTables * 16);
+    @Nullable ByteBuffer name = null;
+    @Nullable ByteBuffer os2 = null;
+    @Nullable ByteBuffer head = null;
+    for (int i = 0; i < numTables; i++) {
+      int tag = records.getInt(i * 16);
+      long offset = records.getInt(i * 16 + 8) & 0xFFFFFFFFL;
+      int length = records.getInt(i * 16 + 12);
+      if (tag == 0x6E616D65 /* 'name' */) name = read(channel, offset, length);
+      else if (tag == 0x4F532F32 /* 'OS/2' */) os2 = read(channel, offset, Math.min(length, 64));
+      else if (tag == 0x68656164 /* 'head' */) head = read(channel, offset, Math.min(length, 54));
+    }
+    if (name == null) throw new IOException("Missing name table");
+
+    List<String> families = readNames(name, NAME_FAMILY);
+    if (families.isEmpty()) throw new IOException("Missing font family name");
+    List<String> subfamilies = readNames(name, NAME_SUBFAMILY);
+    List<String> fullNames = readNames(name, NAME_FULL);
+    String subfamily = subfamilies.isEmpty() ? "Regular" : subfamilies.get(0);
+    String fullName = fullNames.isEmpty() ? families.get(0) : fullNames.get(0);
+
+    int weight = 400;
+    boolean italic = false;
+    if (os2 != null && os2.limit() >= 64) {
+      weight = os2.getShort(4) & 0xFFFF;
+      italic = (os2.getShort(62) & 0x0001) != 0;
+    } else if (head != null && head.limit() >= 46) {
+      int macStyle = head.getShort(44) & 0xFFFF;
+      weight = (macStyle & 0x0001) != 0 ? 700 : 400;
+      italic = (macStyle & 0x0002) != 0;
+    }
+    return new FontMetadata(families, subfamily, fullName, weight, italic);
+  }
+
+  /**
+   * Returns the distinct values of the specified name, the Windows English name first.
+   */
+  private static List<String> readNames(ByteBuffer table, int nameId) throws IOException {
+    int count = table.getShort(2) & 0xFFFF;
+    int storage = table.getShort(4) & 0xFFFF;
+    List<String> names = new ArrayList<>(2);
+    for (int i = 0; i < count; i++) {
+      int record = 6 + i * 12;
+      if (record + 12 > table.limit()) throw new IOException("Truncated name table");
+      if ((table.getShort(record + 6) & 0xFFFF) != nameId) continue;
+      int platform = table.getShort(record) & 0xFFFF;
+      int encoding = table.getShort(record + 2) & 0xFFFF;
+      int language = table.getShort(record + 4) & 0xFFFF;
+      int length = table.getShort(record + 8) & 0xFFFF;
+      int offset = storage + (table.getShort(record + 10) & 0xFFFF);
+      Charset charset = toCharset(platform, encoding);
+      if (charset == null || offset + length > table.limit()) continue;
+      byte[] bytes = new byte[length];
+      table.duplicate().position(offset).get(bytes);
+      String value = new String(bytes, charset).trim();
+      if (value.isEmpty() || names.contains(value)) continue;
+      if (platform == PLATFORM_WINDOWS && language == LANGUAGE_EN_US) {
+        names.add(0, value);
+      } else {
+        names.add(value);
+      }
+    }
+    return names;
+  }
+
+  private static @Nullable Charset toCharset(int platform, int encoding) {
+    if (platform == PLATFORM_UNICODE || (platform == PLATFORM_WINDOWS && (encoding == 0 || encoding == 1 || encoding == 10))) {
+      return StandardCharsets.UTF_16BE;
+    }
+    if (platform == PLATFORM_MACINTOSH && encoding == 0) {
+      // Mac Roman, identical to ISO-8859-1 for the ASCII names in practice
+      return StandardCharsets.ISO_8859_1;
+    }
+    return null;
+  }
+
+  static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+    if (length < 0 || position + length > channel.size()) throw new IOException("Truncated font file");
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) throw new EOFException();
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  void write(DataOutput out) throws IOException {
+    out.writeShort(this.families.size());
+    for (String family : this.families) out.writeUTF(family);
+    out.writeUTF(this.subfamily);
+    out.writeUTF(this.fullName);
+    out.writeShort(this.weight);
+    out.writeBoolean(this.italic);
+  }
+
+  static FontMetadata read(DataInput in) throws IOException {
+    int count = in.readUnsignedShort();
+    List<String> families = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) families.add(in.readUTF());
+    if (families.isEmpty()) throw new IOException("Missing font family name");
+    String subfamily = in.readUTF();
+    String fullName = in.readUTF();
+    int weight = in.readUnsignedShort();
+    boolean italic = in.readBoolean();
+    return new FontMetadata(families, subfamily, fullName, weight, italic);
+  }
+
+  @Override
+  public String toString() {
+    return "FontMetadata{families=" + this.families + ", subfamily=" + this.subfamily + ", weight=" + this.weight
+        + ", italic=" + this.italic + '}';
+  }
+}
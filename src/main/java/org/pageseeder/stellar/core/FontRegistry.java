@@ -0,0 +1,543 @@
+package org.pageseeder.stellar.core;
+
+import com.lowagie.text.DocumentException;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhtmlrenderer.pdf.FontDescription;
+import org.xhtmlrenderer.pdf.FontFamily;
+import org.xhtmlrenderer.pdf.ITextFontResolver;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * A JVM-wide registry of parsed fonts shared across renders.
+ *
+ * <p>Parsing a TrueType font is expensive, so this registry parses each font file once and
+ * installs the resulting font descriptions into the font resolver of each renderer. The parsed
+ * <code>FontDescription</code> and <code>BaseFont</code> instances are not modified once
+ * created and can be shared by several PDF writers; each renderer gets its own
+ * <code>FontFamily</code> instances, so that faces added by <code>@font-face</code> rules
+ * to a registered family only affect that renderer.
+ *
+ * <p>Parsed files are keyed by their canonical path and revalidated against their
+ * modification time and size before use: a file is parsed again only if it has changed.
+ *
+ * <p>The files of a set are grouped by family using the {@link FontIndex} of their directory,
+ * which a new JVM reads instead of parsing the fonts. Each family is only parsed the first
+ * time it is installed, so {@link #install(ITextRenderer, List, Collection)} only pays for
+ * the families it needs.
+ *
+ * <p>Font families are created reflectively since their constructor is not public in Flying
+ * Saucer; if that fails, the font files are added to the font resolver of each renderer
+ * instead, which parses them again for every renderer.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+public final class FontRegistry {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FontRegistry.class);
+
+  /**
+   * Font sets grouped by family by canonical path of their files.
+   */
+  private static final Map<List<String>, FontSet> SETS = new ConcurrentHashMap<>();
+
+  /**
+   * Parsed fonts by path, followed by the index of the font for a TrueType collection.
+   */
+  private static final Map<String, ParsedFont> FONTS = new ConcurrentHashMap<>();
+
+  /**
+   * The constructor of font families, which is not public in Flying Saucer, or
+   * <code>null</code> if it is not accessible.
+   */
+  private static final @Nullable Constructor<FontFamily> NEW_FAMILY = newFamilyConstructor();
+
+  private FontRegistry() {}
+
+  /**
+   * Installs the specified font files into the font resolver of the given renderer,
+   * parsing them only if they are not already registered or have changed.
+   *
+   * @param renderer the renderer to install the fonts into
+   * @param fonts the font files to install
+   */
+  public static void install(ITextRenderer renderer, List<File> fonts) {
+    if (fonts.isEmpty()) return;
+    FontSet set = get(fonts);
+    install(renderer, set.groups.values());
+  }
+
+  /**
+   * Installs the specified families from the given font files into the font resolver of the
+   * renderer, parsing only the files of these families if they are not already registered.
+   *
+   * @param renderer the renderer to install the fonts into
+   * @param fonts the font files to choose from
+   * @param families the names of the font families to install, case-insensitive
+   */
+  public static void install(ITextRenderer renderer, List<File> fonts, Collection<String> families) {
+    if (fonts.isEmpty() || families.isEmpty()) return;
+    FontSet set = get(fonts);
+    Set<FamilyGroup> groups = new LinkedHashSet<>();
+    for (String family : families) {
+      FamilyGroup group = set.byName.get(family.toLowerCase(Locale.ROOT));
+      if (group != null) groups.add(group);
+    }
+    install(renderer, groups);
+  }
+
+  /**
+   * Parses all the specified font files if they are not already registered, and reports the
+   * time taken to parse each file and any failure.
+   *
+   * <p>Families are parsed in parallel on the common fork-join pool; the report lists the
+   * files in the order of the families, then of the files within each family.
+   *
+   * @param fonts the font files to parse
+   * @return the result of parsing each font file, a TrueType collection may appear once for each font
+   */
+  public static List<FontLoad> preload(List<File> fonts) {
+    if (fonts.isEmpty()) return List.of();
+    FontSet set = get(fonts);
+    parse(set.groups.values());
+    List<FontLoad> loads = new ArrayList<>(fonts.size());
+    for (FamilyGroup group : set.groups.values()) {
+      loads.addAll(group.getLoads());
+    }
+    return loads;
+  }
+
+  /**
+   * Returns the names of the font families in the specified files without parsing them.
+   *
+   * @param fonts the font files
+   * @return the family names, including alternate names
+   */
+  public static Set<String> getFamilies(List<File> fonts) {
+    if (fonts.isEmpty()) return Set.of();
+    return get(fonts).names;
+  }
+
+  /**
+   * Discards all the registered fonts.
+   */
+  public static void clear() {
+    SETS.clear();
+    FONTS.clear();
+  }
+
+  /**
+   * @return the number of font sets currently registered
+   */
+  public static int size() {
+    return SETS.size();
+  }
+
+  private static FontSet get(List<File> fonts) {
+    List<Stamp> stamps = new ArrayList<>(fonts.size());
+    List<String> key = new ArrayList<>(fonts.size());
+    for (File font : fonts) {
+      Stamp stamp = Stamp.of(font);
+      stamps.add(stamp);
+      key.add(stamp.path);
+    }
+    FontSet set = SETS.get(key);
+    if (set != null && set.stamps.equals(stamps)) return set;
+    return SETS.compute(key, (k, current) -> current != null && current.stamps.equals(stamps) ? current : load(stamps));
+  }
+
+  /**
+   * Installs the specified families, parsing those which are not parsed yet in parallel first.
+   */
+  private static void install(ITextRenderer renderer, Collection<FamilyGroup> groups) {
+    install(renderer, groups, NEW_FAMILY);
+  }
+
+  /**
+   * Installs the specified font files creating font families with the specified constructor,
+   * or adding the files to the font resolver of the renderer if it is <code>null</code>.
+   */
+  static void installWith(ITextRenderer renderer, List<File> fonts, @Nullable Constructor<FontFamily> newFamily) {
+    if (fonts.isEmpty()) return;
+    install(renderer, get(fonts).groups.values(), newFamily);
+  }
+
+  private static void install(ITextRenderer renderer, Collection<FamilyGroup> groups, @Nullable Constructor<FontFamily> newFamily) {
+    if (newFamily == null) {
+      for (FamilyGroup group : groups) {
+        group.addFilesTo(renderer.getFontResolver());
+      }
+      return;
+    }
+    parse(groups);
+    for (FamilyGroup group : groups) {
+      group.installInto(renderer, newFamily);
+    }
+  }
+
+  private static void parse(Collection<FamilyGroup> groups) {
+    long pending = groups.stream().filter(group -> !group.isParsed()).count();
+    if (pending > 1) {
+      long start = System.nanoTime();
+      groups.parallelStream().forEach(FamilyGroup::resolve);
+      LOGGER.info("Parsed {} font families in parallel in {}ms", pending, (System.nanoTime() - start) / 1_000_000);
+    }
+  }
+
+  private static FontSet load(List<Stamp> stamps) {
+    long start = System.nanoTime();
+    // One index for all the fonts, in the directory containing all of them
+    FontIndex index = FontIndex.forDirectory(commonDirectory(stamps));
+    List<@Nullable List<FontMetadata>> metadata = stamps.parallelStream()
+        .map(stamp -> index.get(new File(stamp.path)))
+        .collect(Collectors.toList());
+    index.save();
+
+    // Group the fonts by family in the order of the files
+    Map<String, FamilyGroup> groups = new LinkedHashMap<>();
+    Map<String, FamilyGroup> byName = new LinkedHashMap<>();
+    Set<String> names = new LinkedHashSet<>();
+    for (int i = 0; i < stamps.size(); i++) {
+      String path = stamps.get(i).path;
+      List<FontMetadata> fonts = metadata.get(i);
+      if (fonts == null) {
+        // Unreadable files get their own group so that the font resolver reports the error
+        groups.computeIfAbsent(path, FamilyGroup::new).add(path, stamps.get(i));
+        continue;
+      }
+      boolean collection = fonts.size() > 1 || path.toLowerCase(Locale.ROOT).endsWith(".ttc");
+      for (int j = 0; j < fonts.size(); j++) {
+        FontMetadata font = fonts.get(j);
+        FamilyGroup group = groups.computeIfAbsent(font.getFamily(), FamilyGroup::new);
+        // Fonts in a TrueType collection are loaded by index
+        group.add(collection ? path + ',' + j : path, stamps.get(i));
+        for (String family : font.getFamilies()) {
+          byName.putIfAbsent(family.toLowerCase(Locale.ROOT), group);
+          names.add(family);
+        }
+      }
+    }
+    LOGGER.debug("Indexed {} fonts in {} families in {}ms", stamps.size(), groups.size(), (System.nanoTime() - start) / 1_000_000);
+    return new FontSet(stamps, groups, byName, names);
+  }
+
+  private static File commonDirectory(List<Stamp> stamps) {
+    Path common = Paths.get(stamps.get(0).path).getParent();
+    for (Stamp stamp : stamps) {
+      while (common != null && !Paths.get(stamp.path).startsWith(common)) {
+        common = common.getParent();
+      }
+    }
+    return common != null ? common.toFile() : new File(stamps.get(0).path).getParentFile();
+  }
+
+  /**
+   * A set of fonts grouped by family.
+   */
+  private static final class FontSet {
+
+    private final List<Stamp> stamps;
+
+    /**
+     * Groups by preferred family name.
+     */
+    private final Map<String, FamilyGroup> groups;
+
+    /**
+     * Groups by any of the family names of their fonts in lower case.
+     */
+    private final Map<String, FamilyGroup> byName;
+
+    private final Set<String> names;
+
+    FontSet(List<Stamp> stamps, Map<String, FamilyGroup> groups, Map<String, FamilyGroup> byName, Set<String> names) {
+      this.stamps = stamps;
+      this.groups = groups;
+      this.byName = byName;
+      this.names = Collections.unmodifiableSet(names);
+    }
+  }
+
+  /**
+   * The font files of a family, parsed together the first time the family is installed.
+   */
+  private static final class FamilyGroup {
+
+    private final String family;
+
+    private final List<String> paths = new ArrayList<>();
+
+    private final List<Stamp> stamps = new ArrayList<>();
+
+    /**
+     * The fonts of this family once parsed, never modified once set.
+     */
+    private volatile @Nullable List<ParsedFont> fonts;
+
+    FamilyGroup(String family) {
+      this.family = family;
+    }
+
+    void add(String path, Stamp stamp) {
+      this.paths.add(path);
+      this.stamps.add(stamp);
+    }
+
+    /**
+     * Adds the font descriptions of this family to new font families of the renderer, or to
+     * the families the renderer already has.
+     *
+     * <p>If a font family cannot be created, the font files are added to the font resolver of
+     * the renderer instead.
+     */
+    void installInto(ITextRenderer renderer, Constructor<FontFamily> newFamily) {
+      List<ParsedFont> fonts = resolve();
+      Map<String, FontFamily> installed = renderer.getFontResolver().getFonts();
+      // Create the missing families first so that no description is added twice
+      for (ParsedFont font : fonts) {
+        for (String name : font.families.keySet()) {
+          if (installed.containsKey(name)) continue;
+          FontFamily family = newFamily(newFamily, name);
+          if (family == null) {
+            addFilesTo(renderer.getFontResolver());
+            return;
+          }
+          installed.put(name, family);
+        }
+      }
+      for (ParsedFont font : fonts) {
+        for (Map.Entry<String, List<FontDescription>> family : font.families.entrySet()) {
+          FontFamily target = installed.get(family.getKey());
+          for (FontDescription description : family.getValue()) {
+            target.addFontDescription(description);
+          }
+        }
+      }
+    }
+
+    /**
+     * Adds the font files of this family to the font resolver, which parses them.
+     */
+    void addFilesTo(ITextFontResolver resolver) {
+      for (String path : this.paths) {
+        try {
+          resolver.addFont(path, true);
+        } catch (DocumentException | IOException ex) {
+          LOGGER.error("Unable to load font {}", path, ex);
+        }
+      }
+    }
+
+    boolean isParsed() {
+      return this.fonts != null;
+    }
+
+    List<FontLoad> getLoads() {
+      return resolve().stream().map(font -> font.load).collect(Collectors.toList());
+    }
+
+    List<ParsedFont> resolve() {
+      List<ParsedFont> parsed = this.fonts;
+      if (parsed != null) return parsed;
+      synchronized (this) {
+        parsed = this.fonts;
+        if (parsed == null) {
+          long start = System.nanoTime();
+          List<ParsedFont> fonts = new ArrayList<>(this.paths.size());
+          for (int i = 0; i < this.paths.size(); i++) {
+            fonts.add(parse(this.paths.get(i), this.stamps.get(i)));
+          }
+          parsed = List.copyOf(fonts);
+          this.fonts = parsed;
+          LOGGER.debug("Resolved {} fonts of family {} in {}ms", this.paths.size(), this.family, (System.nanoTime() - start) / 1_000_000);
+        }
+        return parsed;
+      }
+    }
+  }
+
+  /**
+   * Returns the parsed font at the specified path, parsing it unless it was already parsed and
+   * the file has not changed since.
+   */
+  private static ParsedFont parse(String path, Stamp stamp) {
+    ParsedFont font = FONTS.get(path);
+    if (font != null && font.stamp.equals(stamp)) return font;
+    return FONTS.compute(path, (p, current) -> current != null && current.stamp.equals(stamp) ? current : ParsedFont.parse(p, stamp));
+  }
+
+  private static @Nullable FontFamily newFamily(Constructor<FontFamily> constructor, String name) {
+    try {
+      return constructor.newInstance(name);
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      LOGGER.warn("Unable to create font family {}, fonts are parsed by each renderer: {}", name, ex.toString());
+      return null;
+    }
+  }
+
+  private static @Nullable Constructor<FontFamily> newFamilyConstructor() {
+    try {
+      Constructor<FontFamily> constructor = FontFamily.class.getDeclaredConstructor(String.class);
+      constructor.setAccessible(true);
+      return constructor;
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      LOGGER.warn("Unable to access the font family constructor, fonts are parsed by each renderer: {}", ex.toString());
+      return null;
+    }
+  }
+
+  /**
+   * The font descriptions parsed from a font file by family name.
+   */
+  private static final class ParsedFont {
+
+    private final Stamp stamp;
+
+    private final Map<String, List<FontDescription>> families;
+
+    private final FontLoad load;
+
+    private ParsedFont(Stamp stamp, Map<String, List<FontDescription>> families, FontLoad load) {
+      this.stamp = stamp;
+      this.families = families;
+      this.load = load;
+    }
+
+    /**
+     * Parses a font file with a new font resolver and keeps the descriptions it added.
+     */
+    static ParsedFont parse(String path, Stamp stamp) {
+      long start = System.nanoTime();
+      ITextFontResolver resolver = new ITextFontResolver();
+      Map<String, Integer> builtIn = new HashMap<>();
+      resolver.getFonts().forEach((name, family) -> builtIn.put(name, family.getFontDescriptions().size()));
+      @Nullable String error = null;
+      try {
+        resolver.addFont(path, true);
+      } catch (DocumentException | IOException ex) {
+        error = ex.getMessage() != null ? ex.getMessage() : ex.toString();
+        LOGGER.error("Unable to load font {}", path, ex);
+      }
+      Map<String, List<FontDescription>> families = new LinkedHashMap<>();
+      for (Map.Entry<String, FontFamily> family : resolver.getFonts().entrySet()) {
+        List<FontDescription> descriptions = family.getValue().getFontDescriptions();
+        int from = builtIn.getOrDefault(family.getKey(), 0);
+        if (descriptions.size() > from) {
+          families.put(family.getKey(), List.copyOf(descriptions.subList(from, descriptions.size())));
+        }
+      }
+      FontLoad load = new FontLoad(path, (System.nanoTime() - start) / 1_000_000, error);
+      LOGGER.debug("{}", load);
+      return new ParsedFont(stamp, Collections.unmodifiableMap(families), load);
+    }
+  }
+
+  /**
+   * The result of parsing a font file.
+   */
+  public static final class FontLoad {
+
+    private final String path;
+
+    private final long time;
+
+    private final @Nullable String error;
+
+    FontLoad(String path, long time, @Nullable String error) {
+      this.path = path;
+      this.time = time;
+      this.error = error;
+    }
+
+    /**
+     * @return the path of the font file, followed by the index of the font for a TrueType collection
+     */
+    public String getPath() {
+      return this.path;
+    }
+
+    /**
+     * @return the time taken to parse the font in milliseconds
+     */
+    public long getTime() {
+      return this.time;
+    }
+
+    /**
+     * @return the error message if the font could not be parsed, <code>null</code> otherwise
+     */
+    public @Nullable String getError() {
+      return this.error;
+    }
+
+    @Override
+    public String toString() {
+      return this.error == null
+          ? "Parsed font " + this.path + " in " + this.time + "ms"
+          : "Unable to parse font " + this.path + ": " + this.error;
+    }
+  }
+
+  /**
+   * Identifies the state of a font file using its canonical path, modification time and size.
+   */
+  private static final class Stamp {
+
+    private final String path;
+
+    private final long modified;
+
+    private final long length;
+
+    private Stamp(String path, long modified, long length) {
+      this.path = path;
+      this.modified = modified;
+      this.length = length;
+    }
+
+    static Stamp of(File file) {
+      String path;
+      try {
+        path = file.getCanonicalPath();
+      } catch (IOException ex) {
+        path = file.getAbsolutePath();
+      }
+      return new Stamp(path, file.lastModified(), file.length());
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Stamp)) return false;
+      Stamp stamp = (Stamp) o;
+      return this.modified == stamp.modified && this.length == stamp.length && this.path.equals(stamp.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return this.path.hashCode() * 31 + Long.hashCode(this.modified);
+    }
+  }
+}
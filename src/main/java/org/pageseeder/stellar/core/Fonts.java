@@ -1,21 +1,27 @@
 package org.pageseeder.stellar.core;
 
-import com.lowagie.text.DocumentException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xhtmlrenderer.pdf.ITextFontResolver;
 import org.xhtmlrenderer.pdf.ITextRenderer;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
- * Utility class for loading TrueType font files into an {@link ITextRenderer}.
+ * Utility class for loading TrueType and OpenType font files into an {@link ITextRenderer}.
  *
  * @author Christophe lauret
  *
  * @since 0.5.0
- * @version 0.5.2
+ * @version 0.7.0
  */
 public final class Fonts {
 
@@ -24,26 +30,75 @@ public final class Fonts {
   private Fonts() {}
 
   /**
-   * Loads TrueType font files from the specified directory into the given ITextRenderer.
-   * This method scans the provided directory for `.ttf` font files and adds them to the
-   * renderer's font resolver. If no font files are found, no action is taken.
+   * Loads font files from the specified directory into the given ITextRenderer.
+   * This method scans the provided directory and its subdirectories for font files and adds
+   * them to the renderer's font resolver. If no font files are found, no action is taken.
+   *
+   * <p>Fonts are parsed once and shared through the {@link FontRegistry}.
    *
    * @param renderer the {@link ITextRenderer} instance where the fonts should be loaded
-   * @param fontsDir the directory containing the TrueType font files to be loaded
+   * @param fontsDir the directory containing the font files to be loaded
    */
   public static void loadFonts(ITextRenderer renderer, File fontsDir) {
-    try {
-      ITextFontResolver fontResolver = renderer.getFontResolver();
-      File[] fontFiles = fontsDir.listFiles((dir, name) -> name.endsWith(".ttf"));
-      if (fontFiles != null) {
-        for (File font : fontFiles) {
-          fontResolver.addFont(font.getAbsolutePath(), true);
-          LOGGER.debug("Added font {}", font.getName());
-        }
-      }
-    } catch (DocumentException | IOException ex) {
-      LOGGER.error("Unable to load fonts", ex);
+    loadFonts(renderer, listFonts(fontsDir));
+  }
+
+  /**
+   * Loads the specified TrueType font files into the given ITextRenderer.
+   *
+   * <p>Fonts are parsed once and shared through the {@link FontRegistry}.
+   *
+   * @param renderer the {@link ITextRenderer} instance where the fonts should be loaded
+   * @param fonts the TrueType font files to load
+   */
+  public static void loadFonts(ITextRenderer renderer, List<File> fonts) {
+    FontRegistry.install(renderer, fonts);
+  }
+
+  /**
+   * Lists the font files in the specified directory and its subdirectories.
+   *
+   * <p>TrueType (<code>.ttf</code>), OpenType (<code>.otf</code>) and TrueType collection
+   * (<code>.ttc</code>) files are included; hidden files and directories are ignored.
+   *
+   * @param fontsDir the directory containing the font files
+   * @return the list of font files sorted by path (never null)
+   */
+  public static List<File> listFonts(File fontsDir) {
+    if (!fontsDir.isDirectory()) return List.of();
+    Path root = fontsDir.toPath();
+    try (Stream<Path> files = Files.walk(root, FileVisitOption.FOLLOW_LINKS)) {
+      return files.filter(path -> isFont(path) && !isHidden(root.relativize(path)))
+          .sorted()
+          .map(Path::toFile)
+          .collect(Collectors.toUnmodifiableList());
+    } catch (IOException | UncheckedIOException ex) {
+      LOGGER.error("Unable to list fonts in {}", fontsDir, ex);
+      return List.of();
+    }
+  }
+
+  /**
+   * Indicates whether the specified file name has the extension of a font file included by
+   * {@link #listFonts(File)}.
+   *
+   * @param name the name of the file
+   * @return <code>true</code> for a TrueType, OpenType or TrueType collection file name
+   */
+  public static boolean isFontName(String name) {
+    String lower = name.toLowerCase(Locale.ROOT);
+    return lower.endsWith(".ttf") || lower.endsWith(".otf") || lower.endsWith(".ttc");
+  }
+
+  private static boolean isFont(Path path) {
+    return isFontName(path.getFileName().toString()) && Files.isRegularFile(path);
+  }
+
+  private static boolean isHidden(Path relative) {
+    for (Path name : relative) {
+      if (name.toString().startsWith(".")) return true;
     }
+    return false;
   }
 
 }
@@ -0,0 +1,340 @@
+package org.pageseeder.stellar.core;
+
+import com.lowagie.text.Image;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of decoded images shared across renders.
+ *
+ * <p>Images are keyed by their resolved path, size and modification time so that a modified
+ * file is always decoded again. The cache holds at most the configured number of bytes and
+ * evicts the least recently used images first; the weight of an image is the larger of its
+ * file size and its raw data. Resampled variants of an image are cached separately.
+ *
+ * <p>Cached images must not be modified: callers should use a copy obtained with
+ * {@link Image#getInstance(Image)} before scaling or positioning the image. Copies keep the
+ * serial ID of the cached image, so a PDF writer only embeds each cached image once. Each
+ * entry also records the digest of the data it was decoded from so that renders can share a
+ * single image across files with identical content.
+ *
+ * <p>This class is thread-safe: concurrent requests for an image that is not cached wait for
+ * a single thread to decode it.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+public final class ImageCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ImageCache.class);
+
+  /**
+   * The default budget of the image cache (64MB).
+   */
+  public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+  private final long maxBytes;
+
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long bytes = 0;
+
+  /**
+   * The images being loaded by key.
+   */
+  private final Map<Key, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Creates a new image cache.
+   *
+   * @param maxBytes the maximum number of bytes held by this cache, 0 to disable caching
+   */
+  public ImageCache(long maxBytes) {
+    if (maxBytes < 0) throw new IllegalArgumentException("The cache size must be positive");
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the decoded image for the specified file, decoding it only if it is not already
+   * cached or if the file has changed.
+   *
+   * @param file the image file
+   * @return the decoded image, which must not be modified
+   *
+   * @throws IOException if the file could not be read
+   */
+  public Image get(File file) throws IOException {
+    return load(file).image;
+  }
+
+  /**
+   * Returns the cache entry for the specified file, decoding the image only if it is not
+   * already cached or if the file has changed.
+   *
+   * @param file the image file
+   * @return the decoded image and the digest of its content
+   *
+   * @throws IOException if the file could not be read
+   */
+  Entry load(File file) throws IOException {
+    return getOrLoad(Key.of(file, 0, 0), () -> newEntry(Files.readAllBytes(file.toPath())));
+  }
+
+  /**
+   * Returns the cache entry for the specified file resampled to the specified dimensions,
+   * resampling the image only if it is not already cached or if the file has changed.
+   *
+   * <p>If the image cannot be resampled, the entry of the original decoded image is returned.
+   *
+   * @param file the image file
+   * @param width the target width in pixels
+   * @param height the target height in pixels
+   * @param optimizer the optimizer used to resample the image
+   * @return the resampled image and the digest of its content
+   *
+   * @throws IOException if the file could not be read
+   */
+  Entry loadResampled(File file, int width, int height, ImageOptimizer optimizer) throws IOException {
+    return getOrLoad(Key.of(file, width, height), () -> {
+      byte[] data = optimizer.resample(file, width, height);
+      if (data != null) return newEntry(data);
+      // Remember that the image cannot be resampled
+      Entry original = load(file);
+      return new Entry(original.image, original.digest, weight(original.image, 0));
+    });
+  }
+
+  private static Entry newEntry(byte[] data) throws IOException {
+    Image image = Image.getInstance(data);
+    return new Entry(image, Utils.sha256(data), weight(image, data.length));
+  }
+
+  /**
+   * Returns the cached entry for the specified key, or loads it.
+   *
+   * <p>Concurrent requests for the same key while it is being loaded wait for that load
+   * instead of decoding the image again.
+   */
+  private Entry getOrLoad(Key key, RenderScheduler.Task<Entry> loader) throws IOException {
+    Entry entry = lookup(key);
+    if (entry != null) {
+      this.hits.incrementAndGet();
+      return entry;
+    }
+    CompletableFuture<Entry> loading = new CompletableFuture<>();
+    CompletableFuture<Entry> pending = this.loading.putIfAbsent(key, loading);
+    if (pending != null) {
+      this.hits.incrementAndGet();
+      return await(pending);
+    }
+    try {
+      // Another thread may have completed the load since the lookup
+      entry = lookup(key);
+      if (entry != null) {
+        this.hits.incrementAndGet();
+      } else {
+        this.misses.incrementAndGet();
+        entry = loader.call();
+        put(key, entry);
+      }
+      loading.complete(entry);
+      return entry;
+    } catch (IOException | RuntimeException ex) {
+      loading.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      this.loading.remove(key, loading);
+    }
+  }
+
+  private static Entry await(CompletableFuture<Entry> pending) throws IOException {
+    try {
+      return pending.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for image");
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      throw new IOException("Unable to load image", cause);
+    }
+  }
+
+  private synchronized @Nullable Entry lookup(Key key) {
+    return this.entries.get(key);
+  }
+
+  /**
+   * @return the number of images returned from the cache
+   */
+  public long getHits() {
+    return this.hits.get();
+  }
+
+  /**
+   * @return the number of images that had to be decoded
+   */
+  public long getMisses() {
+    return this.misses.get();
+  }
+
+  /**
+   * @return the number of images evicted to stay within the budget
+   */
+  public long getEvictions() {
+    return this.evictions.get();
+  }
+
+  /**
+   * @return the number of bytes currently held by this cache
+   */
+  public synchronized long getBytes() {
+    return this.bytes;
+  }
+
+  /**
+   * @return the number of images currently held by this cache
+   */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  /**
+   * Discards all the cached images.
+   */
+  public synchronized void clear() {
+    this.entries.clear();
+    this.bytes = 0;
+  }
+
+  private synchronized void put(Key key, Entry entry) {
+    if (entry.weight > this.maxBytes) return;
+    Entry previous = this.entries.put(key, entry);
+    if (previous != null) {
+      this.bytes -= previous.weight;
+    }
+    this.bytes += entry.weight;
+    Iterator<Entry> lru = this.entries.values().iterator();
+    while (this.bytes > this.maxBytes && lru.hasNext()) {
+      Entry eldest = lru.next();
+      lru.remove();
+      this.bytes -= eldest.weight;
+      this.evictions.incrementAndGet();
+    }
+  }
+
+  private static long weight(Image image, long fileSize) {
+    byte[] raw = image.getRawData();
+    return Math.max(fileSize, raw != null ? raw.length : 0);
+  }
+
+  @Override
+  public String toString() {
+    return "ImageCache{hits=" + this.hits + ", misses=" + this.misses + ", evictions=" + this.evictions
+        + ", bytes=" + getBytes() + "/" + this.maxBytes + '}';
+  }
+
+  /**
+   * Identifies an image file by its resolved path, size and modification time, and
+   * the dimensions it was resampled to if any.
+   */
+  private static final class Key {
+
+    private final String path;
+
+    private final long length;
+
+    private final long modified;
+
+    private final int width;
+
+    private final int height;
+
+    private Key(String path, long length, long modified, int width, int height) {
+      this.path = path;
+      this.length = length;
+      this.modified = modified;
+      this.width = width;
+      this.height = height;
+    }
+
+    static Key of(File file, int width, int height) {
+      String path;
+      try {
+        path = file.getCanonicalPath();
+      } catch (IOException ex) {
+        LOGGER.debug("Unable to resolve canonical path of {}", file);
+        path = file.getAbsolutePath();
+      }
+      return new Key(path, file.length(), file.lastModified(), width, height);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      Key key = (Key) o;
+      return this.length == key.length && this.modified == key.modified
+          && this.width == key.width && this.height == key.height && this.path.equals(key.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return (this.path.hashCode() * 31 + Long.hashCode(this.modified)) * 31 + this.width;
+    }
+  }
+
+  /**
+   * A decoded image, the digest of the data it was decoded from and its weight in bytes.
+   */
+  static final class Entry {
+
+    private final Image image;
+
+    private final String digest;
+
+    private final long weight;
+
+    Entry(Image image, String digest, long weight) {
+      this.image = image;
+      this.digest = digest;
+      this.weight = weight;
+    }
+
+    /**
+     * @return the decoded image, which must not be modified
+     */
+    Image image() {
+      return this.image;
+    }
+
+    /**
+     * @return the SHA-256 digest of the encoded image data
+     */
+    String digest() {
+      return this.digest;
+    }
+  }
+}
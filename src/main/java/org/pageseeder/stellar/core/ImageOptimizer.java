@@ -0,0 +1,173 @@
+package org.pageseeder.stellar.core;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Resamples raster images to the size at which they are laid out in the PDF.
+ *
+ * <p>Images are only ever downsampled: the optimizer computes the number of pixels
+ * required to display an image at the configured maximum effective resolution and
+ * resamples and recompresses the image when it is larger. Opaque images are encoded
+ * as JPEG and images with transparency as PNG.
+ *
+ * <p>Source files are never modified. This class is immutable and thread-safe.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+final class ImageOptimizer {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ImageOptimizer.class);
+
+  /**
+   * Images are only resampled when they exceed the target size by more than this factor.
+   */
+  private static final float TOLERANCE = 1.1f;
+
+  private static final float JPEG_QUALITY = 0.85f;
+
+  private final int maxDpi;
+
+  /**
+   * @param maxDpi the maximum effective resolution of images in dots per inch
+   */
+  ImageOptimizer(int maxDpi) {
+    if (maxDpi <= 0) throw new IllegalArgumentException("The maximum DPI must be strictly positive");
+    this.maxDpi = maxDpi;
+  }
+
+  /**
+   * @return the maximum effective resolution of images in dots per inch
+   */
+  int getMaxDpi() {
+    return this.maxDpi;
+  }
+
+  /**
+   * Computes the maximum number of pixels required to display an image across the specified
+   * length at the maximum effective resolution.
+   *
+   * @param lengthInInches the laid out length in inches
+   * @return the corresponding number of pixels
+   */
+  int toPixels(float lengthInInches) {
+    return Math.max(1, (int) Math.ceil(lengthInInches * this.maxDpi));
+  }
+
+  /**
+   * Indicates whether an image is large enough to justify resampling to the target width.
+   *
+   * @param imageWidth the width of the image in pixels
+   * @param targetWidth the target width in pixels
+   * @return <code>true</code> if the image should be resampled
+   */
+  boolean shouldResample(float imageWidth, int targetWidth) {
+    return imageWidth > targetWidth * TOLERANCE;
+  }
+
+  /**
+   * Resamples the specified image file to the target dimensions.
+   *
+   * @param file the source image
+   * @param width the target width in pixels
+   * @param height the target height in pixels
+   * @return the encoded resampled image or <code>null</code> if it could not be decoded or
+   *         is a CMYK image, so that the original is used
+   *
+   * @throws IOException if the file could not be read or the image encoded
+   */
+  byte @Nullable[] resample(File file, int width, int height) throws IOException {
+    long start = System.nanoTime();
+    BufferedImage source;
+    try {
+      source = ImageIO.read(file);
+    } catch (IIOException ex) {
+      // Typically CMYK or YCCK JPEGs which the JDK decoder does not support
+      LOGGER.debug("Unable to decode {} for resampling: {}", file.getName(), ex.getMessage());
+      return null;
+    }
+    if (source == null) {
+      LOGGER.debug("Unable to decode {} for resampling", file.getName());
+      return null;
+    }
+    // Converting CMYK to RGB without the color profile would change the colors
+    if (source.getColorModel().getColorSpace().getType() == ColorSpace.TYPE_CMYK) {
+      LOGGER.debug("Not resampling CMYK image {}", file.getName());
+      return null;
+    }
+    boolean alpha = source.getColorModel().hasAlpha();
+    BufferedImage target = scale(source, width, height, alpha);
+    byte[] data = alpha ? encodePng(target) : encodeJpeg(target);
+    LOGGER.debug("Resampled {} from {}x{} to {}x{} ({} bytes) in {}ms", file.getName(), source.getWidth(), source.getHeight(),
+        width, height, data.length, (System.nanoTime() - start) / 1_000_000);
+    return data;
+  }
+
+  /**
+   * Scales the image down in successive halving steps to preserve quality.
+   */
+  private static BufferedImage scale(BufferedImage source, int width, int height, boolean alpha) {
+    int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    BufferedImage current = source;
+    int w = source.getWidth();
+    int h = source.getHeight();
+    do {
+      w = Math.max(width, w / 2);
+      h = Math.max(height, h / 2);
+      BufferedImage next = new BufferedImage(w, h, type);
+      Graphics2D g = next.createGraphics();
+      try {
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(current, 0, 0, w, h, null);
+      } finally {
+        g.dispose();
+      }
+      current = next;
+    } while (w != width || h != height);
+    return current;
+  }
+
+  private static byte[] encodePng(BufferedImage image) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", out);
+    return out.toByteArray();
+  }
+
+  private static byte[] encodeJpeg(BufferedImage image) throws IOException {
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+    if (!writers.hasNext()) throw new IOException("No JPEG encoder available");
+    ImageWriter writer = writers.next();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(JPEG_QUALITY);
+      writer.setOutput(ios);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+    return out.toByteArray();
+  }
+
+}
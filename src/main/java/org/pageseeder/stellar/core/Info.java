@@ -2,6 +2,8 @@ package org.pageseeder.stellar.core;
 
 import com.lowagie.text.pdf.PdfName;
 import com.lowagie.text.pdf.PdfString;
+import com.lowagie.text.pdf.PdfWriter;
+import org.eclipse.jdt.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -12,6 +14,7 @@ import org.xhtmlrenderer.pdf.DOMUtil;
 import org.xhtmlrenderer.pdf.ITextRenderer;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -21,7 +24,7 @@ import java.util.stream.Collectors;
  * @author Christophe lauret
  *
  * @since 0.5.0
- * @version 0.5.2
+ * @version 0.7.0
  */
 public final class Info {
 
@@ -39,11 +42,19 @@ public final class Info {
    * @return a Metadata object populated with the extracted metadata from the Document
    */
   public static Info load(Document doc) {
-    Info meta = new Info();
-    meta.parseDocument(doc);
-    meta.parseDocumentInfo(doc);
-    meta.parseMetadata(doc);
-    return meta;
+    Collector collector = collector();
+    new DocumentAugmenter(List.of(collector)).augment(doc);
+    return collector.getInfo();
+  }
+
+  /**
+   * Returns an augmentation step collecting the metadata information of the document without
+   * modifying it, so that it can be loaded in the same traversal as other steps.
+   *
+   * @return a new collector
+   */
+  public static Collector collector() {
+    return new Collector();
   }
 
   /**
@@ -52,13 +63,21 @@ public final class Info {
    * @param renderer the PDF renderer to add the info values to
    */
   public void writeValues(ITextRenderer renderer) {
+    writeValues(renderer.getOutputDevice().getWriter());
+  }
+
+  /**
+   * Add PDF info values to the PDF written by the specified writer.
+   *
+   * @param writer the PDF writer to add the info values to
+   */
+  void writeValues(PdfWriter writer) {
     for (Map.Entry<PdfName, PdfString> values : this.pdfInfoValues.entrySet()) {
-      renderer.getOutputDevice().getWriter().getInfo().put(values.getKey(), values.getValue());
+      writer.getInfo().put(values.getKey(), values.getValue());
     }
   }
 
-  private void parseDocument(Document doc) {
-    Element documentElement = (Element)doc.getDocumentElement().getElementsByTagName("document").item(0);
+  private void parseDocument(@Nullable Element documentElement) {
     if (documentElement != null) {
       String date = documentElement.getAttribute("date");
       String version = documentElement.getAttribute("version");
@@ -72,28 +91,22 @@ public final class Info {
     }
   }
 
-  private void parseDocumentInfo(Document doc ) {
-    Element documentInfo = (Element)doc.getDocumentElement().getElementsByTagName("documentinfo").item(0);
-    if (documentInfo != null) {
-      Element titleElement = (Element)doc.getDocumentElement().getElementsByTagName("displaytitle").item(0);
-      if (titleElement != null) {
-        LOGGER.debug(titleElement.getTextContent());
-        String titleContent = Utils.normalizeSpace(titleElement.getTextContent());
-        PdfString pdfString = new PdfString(titleContent);
-        this.pdfInfoValues.put(PdfName.TITLE, pdfString);
-      }
-      Element descriptionElement = (Element)doc.getDocumentElement().getElementsByTagName("description").item(0);
-      if (descriptionElement != null) {
-        LOGGER.debug(descriptionElement.getTextContent());
-        String titleContent = Utils.normalizeSpace(descriptionElement.getTextContent());
-        PdfString pdfString = new PdfString(titleContent);
-        this.pdfInfoValues.put(PdfName.SUBJECT, pdfString);
-      }
+  private void parseDocumentInfo(@Nullable Element titleElement, @Nullable Element descriptionElement) {
+    if (titleElement != null) {
+      LOGGER.debug(titleElement.getTextContent());
+      String titleContent = Utils.normalizeSpace(titleElement.getTextContent());
+      PdfString pdfString = new PdfString(titleContent);
+      this.pdfInfoValues.put(PdfName.TITLE, pdfString);
+    }
+    if (descriptionElement != null) {
+      LOGGER.debug(descriptionElement.getTextContent());
+      String titleContent = Utils.normalizeSpace(descriptionElement.getTextContent());
+      PdfString pdfString = new PdfString(titleContent);
+      this.pdfInfoValues.put(PdfName.SUBJECT, pdfString);
     }
   }
 
-  private void parseMetadata(Document doc) {
-    Element metadata = (Element)doc.getDocumentElement().getElementsByTagName("metadata").item(0);
+  private void parseMetadata(@Nullable Element metadata) {
     if (metadata != null) {
       NodeList properties = metadata.getElementsByTagName("property");
       for (int i = 0; i < properties.getLength(); i++) {
@@ -136,4 +149,73 @@ public final class Info {
     return new PdfString(Utils.normalizeSpace(property.getAttribute("value")));
   }
 
+  /**
+   * Collects the elements holding the metadata information of a PSML document.
+   *
+   * <p>Only the first occurrence of each element below the document element is used; the
+   * title and description are only used when the document includes a "documentinfo" element.
+   */
+  public static final class Collector implements AugmentationStep {
+
+    private @Nullable Element document;
+
+    private @Nullable Element documentInfo;
+
+    private @Nullable Element displayTitle;
+
+    private @Nullable Element description;
+
+    private @Nullable Element metadata;
+
+    private @Nullable Info info;
+
+    private Collector() {}
+
+    @Override
+    public void visit(Element element) {
+      if (!(element.getParentNode() instanceof Element)) return;
+      switch (element.getNodeName()) {
+        case "document":
+          if (this.document == null) this.document = element;
+          break;
+        case "documentinfo":
+          if (this.documentInfo == null) this.documentInfo = element;
+          break;
+        case "displaytitle":
+          if (this.displayTitle == null) this.displayTitle = element;
+          break;
+        case "description":
+          if (this.description == null) this.description = element;
+          break;
+        case "metadata":
+          if (this.metadata == null) this.metadata = element;
+          break;
+        default:
+          // Not used for metadata
+      }
+    }
+
+    @Override
+    public void end(Document doc) {
+      Info meta = new Info();
+      meta.parseDocument(this.document);
+      if (this.documentInfo != null) {
+        meta.parseDocumentInfo(this.displayTitle, this.description);
+      }
+      meta.parseMetadata(this.metadata);
+      this.info = meta;
+    }
+
+    /**
+     * @return the metadata information collected from the document
+     *
+     * @throws IllegalStateException if the document has not been traversed yet
+     */
+    public Info getInfo() {
+      Info meta = this.info;
+      if (meta == null) throw new IllegalStateException("Document not traversed yet");
+      return meta;
+    }
+  }
+
 }
@@ -0,0 +1,112 @@
+package org.pageseeder.stellar.core;
+
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.css.style.CssContext;
+import org.xhtmlrenderer.render.PageBox;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An index of the pages of a laid out document sorted by their top position.
+ *
+ * <p>The index is built once after layout so that the page containing a given vertical
+ * position is found with a binary search. The top margin, border and padding and the height
+ * of each page are computed once, when first requested.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+final class PageIndex {
+
+  private final List<PageBox> pages;
+
+  private final int[] tops;
+
+  private final int[] offsets;
+
+  private final int[] heights;
+
+  /**
+   * @param pages the pages of the document in order
+   */
+  PageIndex(List<PageBox> pages) {
+    if (pages.isEmpty()) throw new IllegalArgumentException("The document has no pages");
+    this.pages = pages;
+    this.tops = new int[pages.size()];
+    for (int i = 0; i < this.tops.length; i++) {
+      this.tops[i] = pages.get(i).getTop();
+    }
+    this.offsets = new int[pages.size()];
+    Arrays.fill(this.offsets, -1);
+    this.heights = new int[pages.size()];
+    Arrays.fill(this.heights, -1);
+  }
+
+  /**
+   * @return the number of pages in the index
+   */
+  int size() {
+    return this.tops.length;
+  }
+
+  /**
+   * Returns the index of the page containing the specified vertical position.
+   *
+   * <p>Positions above the first page map to the first page and positions below the
+   * last page map to the last page.
+   *
+   * @param y the absolute vertical position in dots
+   * @return the index of the page in the document
+   */
+  int indexOf(int y) {
+    int i = Arrays.binarySearch(this.tops, y);
+    if (i < 0) {
+      // Insertion point minus one is the last page starting before y
+      i = -i - 2;
+    } else {
+      // Skip empty pages sharing the same top
+      while (i + 1 < this.tops.length && this.tops[i + 1] == y) i++;
+    }
+    return Math.max(0, Math.min(i, this.tops.length - 1));
+  }
+
+  /**
+   * @param index the index of the page
+   * @return the page at the specified index
+   */
+  PageBox getPage(int index) {
+    return this.pages.get(index);
+  }
+
+  /**
+   * @param c the CSS context
+   * @param index the index of the page
+   * @return the top margin, border and padding of the page in dots
+   */
+  int getTopOffset(CssContext c, int index) {
+    int offset = this.offsets[index];
+    if (offset < 0) {
+      offset = this.pages.get(index).getMarginBorderPadding(c, CalculatedStyle.TOP);
+      this.offsets[index] = offset;
+    }
+    return offset;
+  }
+
+  /**
+   * @param c the CSS context
+   * @param index the index of the page
+   * @return the height of the page in dots
+   */
+  int getHeight(CssContext c, int index) {
+    int height = this.heights[index];
+    if (height < 0) {
+      height = this.pages.get(index).getHeight(c);
+      this.heights[index] = height;
+    }
+    return height;
+  }
+
+}
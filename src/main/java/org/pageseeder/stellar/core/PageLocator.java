@@ -0,0 +1,116 @@
+package org.pageseeder.stellar.core;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.InlineLayoutBox;
+import org.xhtmlrenderer.render.PageBox;
+import org.xhtmlrenderer.render.RenderingContext;
+
+/**
+ * Locates boxes of a laid out document on its pages.
+ *
+ * <p>The page index and the values that only depend on the renderer are computed once, so
+ * that many boxes can be located efficiently after layout.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+final class PageLocator {
+
+  private final ITextRenderer renderer;
+
+  private final RenderingContext context;
+
+  private final PageIndex pages;
+
+  private final float dotsPerPoint;
+
+  /**
+   * @param renderer a renderer whose document has been laid out
+   */
+  PageLocator(ITextRenderer renderer) {
+    this.renderer = renderer;
+    this.context = new RenderingContext(renderer.getSharedContext());
+    this.pages = new PageIndex(renderer.getRootBox().getLayer().getPages());
+    this.dotsPerPoint = renderer.getOutputDevice().getDotsPerPoint();
+  }
+
+  /**
+   * @return the number of pages of the document
+   */
+  int getPageCount() {
+    return this.pages.size();
+  }
+
+  /**
+   * Locates the element with the specified ID or anchor name.
+   *
+   * @param id the ID of the element
+   * @return its location or <code>null</code> if the document has no box with this ID
+   */
+  @Nullable Location locate(String id) {
+    Box box = this.renderer.getSharedContext().getBoxById(id);
+    return box != null ? locate(box) : null;
+  }
+
+  /**
+   * Locates the specified box.
+   *
+   * @param box a box of the document
+   * @return the page of the box and its vertical position on the page
+   */
+  Location locate(Box box) {
+    int index = this.pages.indexOf(getPageRefY(box));
+    PageBox page = this.pages.getPage(index);
+    int distanceFromTop = this.pages.getTopOffset(this.context, index);
+    distanceFromTop += box.getAbsY() - page.getTop();
+    float y = (this.pages.getHeight(this.context, index) - distanceFromTop) / this.dotsPerPoint;
+    return new Location(page.getPageNo(), y);
+  }
+
+  private static int getPageRefY(Box box) {
+    if (box instanceof InlineLayoutBox) {
+      InlineLayoutBox iB = (InlineLayoutBox) box;
+      return iB.getAbsY() + iB.getBaseline();
+    } else {
+      return box.getAbsY();
+    }
+  }
+
+  /**
+   * The location of a box in a laid out document.
+   */
+  static final class Location {
+
+    private final int pageNo;
+
+    private final float y;
+
+    Location(int pageNo, float y) {
+      this.pageNo = pageNo;
+      this.y = y;
+    }
+
+    /**
+     * @return the number of the page in the document starting at 0
+     */
+    int getPageNo() {
+      return this.pageNo;
+    }
+
+    /**
+     * @return the vertical position from the bottom of the page
+     */
+    float getY() {
+      return this.y;
+    }
+
+    @Override
+    public String toString() {
+      return this.pageNo + "@" + this.y;
+    }
+  }
+}
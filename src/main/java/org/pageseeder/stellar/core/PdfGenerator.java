@@ -2,123 +2,184 @@ package org.pageseeder.stellar.core;
 
 import com.lowagie.text.DocumentException;
 import org.eclipse.jdt.annotation.Nullable;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.xhtmlrenderer.layout.SharedContext;
-import org.xhtmlrenderer.pdf.ITextOutputDevice;
-import org.xhtmlrenderer.pdf.ITextRenderer;
-import org.xhtmlrenderer.pdf.ITextUserAgent;
-import org.xhtmlrenderer.resource.XMLResource;
 import org.xml.sax.InputSource;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.Files;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * The PdfGenerator class provides functionality to generate PDF documents from input files.
  * It allows customization of table of contents (TOC) levels, bookmark levels, and author stylesheets.
  * Additionally, it supports font loading from a specified directory.
  *
+ * <p>This class is a mutable front-end to {@link PdfRenderEngine} and is not thread-safe.
+ * To render documents concurrently, build a {@link PdfRenderConfig} and share a single
+ * engine instead.
+ *
  * @author Christophe lauret
  *
  * @since 0.5.0
- * @version 0.5.2
+ * @version 0.7.0
  */
 public class PdfGenerator {
 
-  private static final Logger LOGGER = LoggerFactory.getLogger(PdfGenerator.class);
-
-  private int maxTocLevel = 6;
+  private int maxTocLevel = TOC.DEFAULT_MAX_LEVEL;
 
-  private int maxBookmarkLevel = 6;
+  private int maxBookmarkLevel = Bookmarks.DEFAULT_MAX_LEVEL;
 
   private @Nullable File fontsDir;
 
-  private @Nullable String authorStylesheetUrl;
+  private @Nullable File authorStylesheet;
 
   private @Nullable TitlePageConfig titlePageConfig;
 
+  private int maxImageDpi = 0;
+
+  private @Nullable File diagnosticsDir;
+
+  private int parallelism = 1;
+
+  private @Nullable File cacheDir;
+
+  private boolean lazyFonts = true;
+
+  /**
+   * The engine built from the current settings, reset whenever a setting changes.
+   */
+  private @Nullable PdfRenderEngine engine;
+
   public void setTitlePageConfig(TitlePageConfig config) {
     this.titlePageConfig = config;
+    this.engine = null;
   }
 
   public void setMaxBookmarkLevel(int maxBookmarkLevel) {
     this.maxBookmarkLevel = maxBookmarkLevel;
+    this.engine = null;
   }
 
   public void setMaxTocLevel(int maxTocLevel) {
     this.maxTocLevel = maxTocLevel;
+    this.engine = null;
   }
 
   public void setAuthorStylesheet(File stylesheet) {
-    this.authorStylesheetUrl = stylesheet.toURI().toString();
+    this.authorStylesheet = stylesheet;
+    this.engine = null;
   }
 
   public void setFontsDir(File fontsDir) {
     this.fontsDir = fontsDir;
+    this.engine = null;
+  }
+
+  public void setMaxImageDpi(int maxImageDpi) {
+    this.maxImageDpi = maxImageDpi;
+    this.engine = null;
+  }
+
+  /**
+   * @param diagnosticsDir the directory where augmented PSML documents are written for debugging
+   */
+  public void setDiagnosticsDir(@Nullable File diagnosticsDir) {
+    this.diagnosticsDir = diagnosticsDir;
+    this.engine = null;
+  }
+
+  /**
+   * @param parallelism the maximum number of parts of a large document rendered concurrently
+   */
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+    this.engine = null;
+  }
+
+  /**
+   * @param cacheDir the directory where rendered PDF files are cached to skip unchanged documents
+   */
+  public void setCacheDir(@Nullable File cacheDir) {
+    this.cacheDir = cacheDir;
+    this.engine = null;
+  }
+
+  /**
+   * @param lazyFonts whether only the fonts referenced by the stylesheets are loaded
+   */
+  public void setLazyFonts(boolean lazyFonts) {
+    this.lazyFonts = lazyFonts;
+    this.engine = null;
+  }
+
+  /**
+   * @return an immutable configuration from the current settings of this generator
+   */
+  public PdfRenderConfig toConfig() {
+    return PdfRenderConfig.builder()
+        .maxTocLevel(this.maxTocLevel)
+        .maxBookmarkLevel(this.maxBookmarkLevel)
+        .fontsDir(this.fontsDir)
+        .authorStylesheet(this.authorStylesheet)
+        .titlePage(this.titlePageConfig)
+        .maxImageDpi(this.maxImageDpi)
+        .diagnosticsDir(this.diagnosticsDir)
+        .parallelism(this.parallelism)
+        .cacheDir(this.cacheDir)
+        .lazyFonts(this.lazyFonts)
+        .build();
   }
 
   public void generatePDF(File input, File output) throws IOException, DocumentException {
-    try (OutputStream out = Files.newOutputStream(output.toPath())) {
-      ITextRenderer renderer = new ITextRenderer();
-
-      SharedContext sharedContext = renderer.getSharedContext();
-      ResourceLoaderUserAgent callback = new ResourceLoaderUserAgent(renderer.getOutputDevice(), sharedContext.getDotsPerPixel());
-      sharedContext.setUserAgentCallback(callback);
-
-      PsmlReplacedElementFactory factory = new PsmlReplacedElementFactory(sharedContext.getReplacedElementFactory(), input.getParentFile());
-      sharedContext.setReplacedElementFactory(factory);
-
-      // Include embedded fonts
-      if (this.fontsDir != null) {
-        Fonts.loadFonts(renderer, this.fontsDir);
-      }
-
-      // Add PSML handler and set the author stylesheet
-      PsmlNamespaceHandler namespaceHandler = new PsmlNamespaceHandler();
-      if (this.authorStylesheetUrl != null) {
-        namespaceHandler.addAuthorStylesheet(this.authorStylesheetUrl);
-      }
-
-      // Process document
-      Document doc = XMLResource.load(new InputSource(input.toURI().toString())).getDocument();
-
-      // Augment the document
-      TOC.injectLinks(doc, this.maxTocLevel);
-      TitlePage.injectTitleFragment(doc, this.titlePageConfig);
-      PsmlDecorator.addClasses(doc);
-      PsmlDecorator.addIds(doc);
-
-      try {
-        // To help debug
-        File pdfPsml = new File(input.getParentFile(), input.getName().replace(".psml", ".pdf.psml"));
-        Utils.writeDocumentToXML(doc, pdfPsml);
-      } catch (Exception ex) {
-        LOGGER.warn("Unable to write PDF PSML file", ex);
-      }
-
-      renderer.setDocument(doc, input.toURI().toString(), namespaceHandler);
-      renderer.setListener(new PsmlToPdfCreationListener(doc, this.maxBookmarkLevel));
-      renderer.layout();
-      renderer.createPDF(out);
-    }
+    engine().render(input, output);
   }
 
-  private static class ResourceLoaderUserAgent extends ITextUserAgent {
-    private ResourceLoaderUserAgent(ITextOutputDevice outputDevice, int dotsPerPixel) {
-      super(outputDevice, dotsPerPixel);
-    }
+  /**
+   * Generates a PDF from a PSML stream without using the filesystem.
+   *
+   * @param input the PSML document
+   * @param baseUri the URI used to resolve the images of the document
+   * @param output the stream to write the PDF to, flushed but not closed
+   *
+   * @throws IOException if an error occurs while reading the document or writing the PDF
+   * @throws DocumentException if an error occurs while generating the PDF
+   */
+  public void generatePDF(InputStream input, String baseUri, OutputStream output) throws IOException, DocumentException {
+    engine().render(input, baseUri, output);
+  }
+
+  /**
+   * Generates a PDF from a PSML source without using the filesystem.
+   *
+   * @param source the PSML document with its system ID used to resolve images
+   * @param output the channel to write the PDF to, left open
+   *
+   * @throws IOException if an error occurs while reading the document or writing the PDF
+   * @throws DocumentException if an error occurs while generating the PDF
+   */
+  public void generatePDF(InputSource source, WritableByteChannel output) throws IOException, DocumentException {
+    engine().render(source, output);
+  }
 
-    @Override
-    protected InputStream resolveAndOpenStream(String uri) {
-      InputStream is = super.resolveAndOpenStream(uri);
-      LOGGER.debug("IN resolveAndOpenStream({})", uri);
-      return is;
+  /**
+   * @return the engine for the current settings, created if needed
+   */
+  private PdfRenderEngine engine() {
+    PdfRenderEngine current = this.engine;
+    if (current == null) {
+      current = new PdfRenderEngine(toConfig());
+      this.engine = current;
     }
+    return current;
+  }
 
+  /**
+   * @return the render cache of the current engine or <code>null</code> if the cache is disabled
+   */
+  public @Nullable RenderCache getRenderCache() {
+    PdfRenderEngine current = this.engine;
+    return current != null ? current.getRenderCache() : null;
   }
+
 }
@@ -0,0 +1,347 @@
+package org.pageseeder.stellar.core;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import java.io.File;
+
+/**
+ * Immutable configuration of a {@link PdfRenderEngine}.
+ *
+ * <p>Instances are created using a {@link Builder} and can be safely shared across threads.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+public final class PdfRenderConfig {
+
+  private final int maxTocLevel;
+
+  private final int maxBookmarkLevel;
+
+  private final @Nullable File fontsDir;
+
+  private final @Nullable File authorStylesheet;
+
+  private final @Nullable TitlePageConfig titlePageConfig;
+
+  private final long imageCacheSize;
+
+  private final int maxImageDpi;
+
+  private final @Nullable File diagnosticsDir;
+
+  private final long diagnosticsMaxBytes;
+
+  private final int parallelism;
+
+  private final @Nullable File cacheDir;
+
+  private final boolean lazyFonts;
+
+  private PdfRenderConfig(Builder builder) {
+    this.maxTocLevel = builder.maxTocLevel;
+    this.maxBookmarkLevel = builder.maxBookmarkLevel;
+    this.fontsDir = builder.fontsDir;
+    this.authorStylesheet = builder.authorStylesheet;
+    this.titlePageConfig = builder.titlePageConfig != null ? builder.titlePageConfig.copy() : null;
+    this.imageCacheSize = builder.imageCacheSize;
+    this.maxImageDpi = builder.maxImageDpi;
+    this.diagnosticsDir = builder.diagnosticsDir;
+    this.diagnosticsMaxBytes = builder.diagnosticsMaxBytes;
+    this.parallelism = builder.parallelism;
+    this.cacheDir = builder.cacheDir;
+    this.lazyFonts = builder.lazyFonts;
+  }
+
+  /**
+   * @return the maximum level of TOC parts to include
+   */
+  public int getMaxTocLevel() {
+    return this.maxTocLevel;
+  }
+
+  /**
+   * @return the maximum level of bookmarks to include in the PDF outline
+   */
+  public int getMaxBookmarkLevel() {
+    return this.maxBookmarkLevel;
+  }
+
+  /**
+   * @return the directory containing the fonts to embed (may be null)
+   */
+  public @Nullable File getFontsDir() {
+    return this.fontsDir;
+  }
+
+  /**
+   * @return the author stylesheet (may be null)
+   */
+  public @Nullable File getAuthorStylesheet() {
+    return this.authorStylesheet;
+  }
+
+  /**
+   * Returns the title page configuration.
+   *
+   * <p>The returned configuration is a private copy of the one supplied to the builder and
+   * must not be modified.
+   *
+   * @return the title page configuration (may be null)
+   */
+  public @Nullable TitlePageConfig getTitlePageConfig() {
+    return this.titlePageConfig;
+  }
+
+  /**
+   * @return the maximum number of bytes of decoded images shared across renders
+   */
+  public long getImageCacheSize() {
+    return this.imageCacheSize;
+  }
+
+  /**
+   * @return the maximum effective resolution of embedded images in DPI, 0 if images are embedded as is
+   */
+  public int getMaxImageDpi() {
+    return this.maxImageDpi;
+  }
+
+  /**
+   * @return the directory where augmented PSML documents are written for debugging (may be null)
+   */
+  public @Nullable File getDiagnosticsDir() {
+    return this.diagnosticsDir;
+  }
+
+  /**
+   * @return the maximum size in bytes of each augmented PSML document written for debugging
+   */
+  public long getDiagnosticsMaxBytes() {
+    return this.diagnosticsMaxBytes;
+  }
+
+  /**
+   * @return the maximum number of parts of a large document rendered concurrently
+   */
+  public int getParallelism() {
+    return this.parallelism;
+  }
+
+  /**
+   * @return the directory where rendered PDF files are cached (may be null)
+   */
+  public @Nullable File getCacheDir() {
+    return this.cacheDir;
+  }
+
+  /**
+   * @return <code>true</code> to only load the fonts of the families referenced by the stylesheets
+   */
+  public boolean isLazyFonts() {
+    return this.lazyFonts;
+  }
+
+  /**
+   * @return a new builder for a PDF render configuration
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  @Override
+  public String toString() {
+    return "PdfRenderConfig{" +
+        "maxTocLevel=" + maxTocLevel +
+        ", maxBookmarkLevel=" + maxBookmarkLevel +
+        ", fontsDir=" + fontsDir +
+        ", authorStylesheet=" + authorStylesheet +
+        ", titlePage=" + (titlePageConfig != null ? titlePageConfig.getItems().size() + " items" : "none") +
+        ", imageCacheSize=" + imageCacheSize +
+        ", maxImageDpi=" + maxImageDpi +
+        ", diagnosticsDir=" + diagnosticsDir +
+        ", parallelism=" + parallelism +
+        ", cacheDir=" + cacheDir +
+        ", lazyFonts=" + lazyFonts +
+        '}';
+  }
+
+  /**
+   * Builder for PDF render configurations.
+   */
+  public static final class Builder {
+
+    private int maxTocLevel = TOC.DEFAULT_MAX_LEVEL;
+
+    private int maxBookmarkLevel = Bookmarks.DEFAULT_MAX_LEVEL;
+
+    private @Nullable File fontsDir;
+
+    private @Nullable File authorStylesheet;
+
+    private @Nullable TitlePageConfig titlePageConfig;
+
+    private long imageCacheSize = ImageCache.DEFAULT_MAX_BYTES;
+
+    private int maxImageDpi = 0;
+
+    private @Nullable File diagnosticsDir;
+
+    private long diagnosticsMaxBytes = DiagnosticsSink.DEFAULT_MAX_BYTES;
+
+    private int parallelism = 1;
+
+    private @Nullable File cacheDir;
+
+    private boolean lazyFonts = true;
+
+    private Builder() {}
+
+    public Builder maxTocLevel(int maxTocLevel) {
+      this.maxTocLevel = maxTocLevel;
+      return this;
+    }
+
+    public Builder maxBookmarkLevel(int maxBookmarkLevel) {
+      this.maxBookmarkLevel = maxBookmarkLevel;
+      return this;
+    }
+
+    public Builder fontsDir(@Nullable File fontsDir) {
+      this.fontsDir = fontsDir;
+      return this;
+    }
+
+    public Builder authorStylesheet(@Nullable File stylesheet) {
+      this.authorStylesheet = stylesheet;
+      return this;
+    }
+
+    /**
+     * Sets the title page configuration.
+     *
+     * <p>The configuration is copied when the render configuration is built, so later changes
+     * to the specified instance have no effect.
+     *
+     * @param config the title page configuration (may be null)
+     * @return this builder
+     */
+    public Builder titlePage(@Nullable TitlePageConfig config) {
+      this.titlePageConfig = config;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of bytes of decoded images the engine may keep between renders.
+     *
+     * @param bytes the size of the image cache in bytes, 0 to disable the cache
+     * @return this builder
+     */
+    public Builder imageCacheSize(long bytes) {
+      if (bytes < 0) throw new IllegalArgumentException("The image cache size must be positive");
+      this.imageCacheSize = bytes;
+      return this;
+    }
+
+    /**
+     * Sets the maximum effective resolution of embedded images.
+     *
+     * <p>Raster images with more pixels than required to display them at this resolution are
+     * resampled to their laid out size before being embedded. Source images are not modified.
+     *
+     * @param dpi the maximum resolution in dots per inch, 0 to embed images as is
+     * @return this builder
+     */
+    public Builder maxImageDpi(int dpi) {
+      if (dpi < 0) throw new IllegalArgumentException("The maximum image DPI must be positive");
+      this.maxImageDpi = dpi;
+      return this;
+    }
+
+    /**
+     * Enables diagnostics by writing the augmented PSML document of each render to a directory.
+     *
+     * <p>Documents are written in the background after the render completes. Diagnostics are
+     * disabled by default.
+     *
+     * @param dir the directory where documents are written, <code>null</code> to disable diagnostics
+     * @return this builder
+     */
+    public Builder diagnosticsDir(@Nullable File dir) {
+      this.diagnosticsDir = dir;
+      return this;
+    }
+
+    /**
+     * Sets the maximum size of each augmented PSML document written for debugging.
+     *
+     * @param bytes the maximum size in bytes; larger documents are truncated
+     * @return this builder
+     */
+    public Builder diagnosticsMaxBytes(long bytes) {
+      if (bytes <= 0) throw new IllegalArgumentException("The maximum diagnostics size must be strictly positive");
+      this.diagnosticsMaxBytes = bytes;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of parts of a large document rendered concurrently.
+     *
+     * <p>When greater than 1, large documents are split before top-level sections which start
+     * on a new page, for example with <code>page-break-before: always</code>, and each part is
+     * laid out on its own thread before the parts are written to a single PDF. Page numbers,
+     * page counts, cross-references and bookmarks are the same as when the document is rendered
+     * as a whole, and documents without such sections are always rendered as a whole. Parallel
+     * rendering is disabled by default.
+     *
+     * @param threads the maximum number of parts rendered concurrently, 1 to render documents as a whole
+     * @return this builder
+     */
+    public Builder parallelism(int threads) {
+      if (threads < 1) throw new IllegalArgumentException("The parallelism must be at least 1");
+      this.parallelism = threads;
+      return this;
+    }
+
+    /**
+     * Enables the render cache.
+     *
+     * <p>When enabled, a document is only rendered if its content, the images it references,
+     * the stylesheets and the files they load, the fonts or the settings have changed since it
+     * was last rendered with the same cache; otherwise the previous PDF is copied to the output.
+     * The cache is disabled by default.
+     *
+     * @param dir the directory where rendered PDF files are cached, <code>null</code> to disable the cache
+     * @return this builder
+     */
+    public Builder cacheDir(@Nullable File dir) {
+      this.cacheDir = dir;
+      return this;
+    }
+
+    /**
+     * Sets whether only the fonts referenced by the stylesheets are loaded.
+     *
+     * <p>When enabled, the <code>font-family</code> declarations of the built-in and author
+     * stylesheets are scanned and only the fonts of the families they list, including fallback
+     * families, are parsed and registered. This is enabled by default; disable it if fonts are
+     * referenced in ways the scan cannot see, such as stylesheets loaded from other locations.
+     *
+     * @param lazy <code>true</code> to load only the fonts used, <code>false</code> to load all the fonts
+     * @return this builder
+     */
+    public Builder lazyFonts(boolean lazy) {
+      this.lazyFonts = lazy;
+      return this;
+    }
+
+    /**
+     * @return a new immutable configuration
+     */
+    public PdfRenderConfig build() {
+      return new PdfRenderConfig(this);
+    }
+  }
+}
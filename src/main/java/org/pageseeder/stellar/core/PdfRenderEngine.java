@@ -0,0 +1,649 @@
+package org.pageseeder.stellar.core;
+
+import com.lowagie.text.DocumentException;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.pdf.ITextOutputDevice;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.pdf.ITextUserAgent;
+import org.xhtmlrenderer.resource.XMLResource;
+import org.xml.sax.InputSource;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A reusable engine to render PSML documents as PDF.
+ *
+ * <p>The engine is built from an immutable {@link PdfRenderConfig} and resolves every resource
+ * that does not depend on the document being rendered (font files, stylesheets, title page
+ * configuration) once, when it is created. Decoded images are kept in a bounded
+ * {@link ImageCache} shared by all the renders of the engine.
+ *
+ * <p>This class is thread-safe: a single instance can be used to render many documents
+ * concurrently. Each render uses its own renderer and DOM, and documents can be rendered from
+ * and to files, streams, channels or pooled buffers.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+public final class PdfRenderEngine {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PdfRenderEngine.class);
+
+  /**
+   * The minimum number of elements in each part of a document rendered in parallel.
+   */
+  private static final int MIN_CHUNK_ELEMENTS = 500;
+
+  /**
+   * Distinguishes the diagnostics of documents without a file URI.
+   */
+  private static final AtomicLong DIAGNOSTICS_SEQUENCE = new AtomicLong();
+
+  private final PdfRenderConfig config;
+
+  private final List<File> fonts;
+
+  private final @Nullable String authorStylesheetUri;
+
+  private final ImageCache images;
+
+  private final @Nullable ImageOptimizer optimizer;
+
+  private final @Nullable DiagnosticsSink diagnostics;
+
+  private final @Nullable RenderCache cache;
+
+  /**
+   * Buffers for the PDF files rendered on other threads than the one writing them.
+   */
+  private final BufferPool buffers = new BufferPool(Runtime.getRuntime().availableProcessors());
+
+  /**
+   * The settings of this engine that affect the output, as part of the key of each render.
+   */
+  private final String settings;
+
+  /**
+   * Lays out the parts of documents rendered in parallel, shared by all the renders of this
+   * engine so that concurrent renders do not add threads (null unless parallelism &gt; 1).
+   */
+  private final @Nullable ThreadPoolExecutor chunks;
+
+  /**
+   * Creates a new engine for the specified configuration.
+   *
+   * @param config the configuration to use for every render
+   */
+  public PdfRenderEngine(PdfRenderConfig config) {
+    this.config = Objects.requireNonNull(config);
+    File fontsDir = config.getFontsDir();
+    this.fonts = fontsDir != null ? Fonts.listFonts(fontsDir) : List.of();
+    File stylesheet = config.getAuthorStylesheet();
+    this.authorStylesheetUri = stylesheet != null ? stylesheet.toURI().toString() : null;
+    this.images = new ImageCache(config.getImageCacheSize());
+    this.optimizer = config.getMaxImageDpi() > 0 ? new ImageOptimizer(config.getMaxImageDpi()) : null;
+    File diagnosticsDir = config.getDiagnosticsDir();
+    this.diagnostics = diagnosticsDir != null ? new DiagnosticsSink(diagnosticsDir, config.getDiagnosticsMaxBytes()) : null;
+    File cacheDir = config.getCacheDir();
+    this.cache = cacheDir != null ? new RenderCache(cacheDir) : null;
+    this.settings = cacheDir != null ? toSettings(config) : "";
+    this.chunks = config.getParallelism() > 1 ? newChunkExecutor(config.getParallelism() - 1) : null;
+  }
+
+  /**
+   * @return the configuration used by this engine
+   */
+  public PdfRenderConfig getConfig() {
+    return this.config;
+  }
+
+  /**
+   * Returns the cache of decoded images shared by the renders of this engine.
+   *
+   * <p>The cache can be used to monitor the number of hits, misses and evictions.
+   *
+   * @return the image cache of this engine
+   */
+  public ImageCache getImageCache() {
+    return this.images;
+  }
+
+  /**
+   * Returns the sink used to write augmented PSML documents for debugging.
+   *
+   * @return the diagnostics sink or <code>null</code> if diagnostics are disabled
+   */
+  public @Nullable DiagnosticsSink getDiagnostics() {
+    return this.diagnostics;
+  }
+
+  /**
+   * Returns the cache of rendered PDF files.
+   *
+   * <p>The cache can be used to monitor the number of hits and misses.
+   *
+   * @return the render cache or <code>null</code> if the cache is disabled
+   */
+  public @Nullable RenderCache getRenderCache() {
+    return this.cache;
+  }
+
+  /**
+   * Returns the local files the render of the specified PSML file depends on: the file itself,
+   * the local images it references, the author stylesheet and the files the stylesheet loads.
+   *
+   * <p>The font files are not included, they are found in the fonts directory of the
+   * configuration.
+   *
+   * @param input the PSML file to render
+   * @return the files the PDF depends on, starting with the input file
+   *
+   * @throws IOException if the PSML file could not be read
+   */
+  public Set<File> getDependencies(File input) throws IOException {
+    Set<File> files = new LinkedHashSet<>();
+    files.add(input);
+    Document doc = XMLResource.load(new InputSource(input.toURI().toString())).getDocument();
+    files.addAll(getLocalImages(doc, input.getAbsoluteFile().getParentFile()).values());
+    File stylesheet = this.config.getAuthorStylesheet();
+    if (stylesheet != null) {
+      files.add(stylesheet);
+      files.addAll(StylesheetResources.find(stylesheet).values());
+    }
+    return files;
+  }
+
+  /**
+   * Renders the specified PSML file as a PDF.
+   *
+   * <p>Images referenced by the PSML document are resolved relative to the input file. When
+   * diagnostics are enabled, the augmented PSML document is written in the background once
+   * the PDF is complete.
+   *
+   * <p>If the configured parallelism is greater than 1, large documents are split into parts
+   * rendered concurrently and merged into a single PDF.
+   *
+   * <p>If the render cache is enabled and none of the inputs of the render have changed, the
+   * previous PDF is restored from the cache and the document is not augmented.
+   *
+   * @param input the PSML file to render
+   * @param output the PDF file to write
+   *
+   * @throws IOException if an error occurs while reading or writing the files
+   * @throws DocumentException if an error occurs while generating the PDF
+   */
+  public void render(File input, File output) throws IOException, DocumentException {
+    render(input, output, null);
+  }
+
+  /**
+   * Renders the specified PSML file as a PDF from a task of the specified scheduler.
+   *
+   * <p>The document is read and the PDF is written on the thread of the caller, while the
+   * document is augmented and laid out through {@link RenderScheduler#compute}. When the
+   * scheduler runs computations on other threads, the PDF is rendered into a buffer before
+   * being written.
+   *
+   * @param input the PSML file to render
+   * @param output the PDF file to write
+   * @param scheduler the scheduler of the task calling this method
+   *
+   * @throws IOException if an error occurs while reading or writing the files
+   * @throws DocumentException if an error occurs while generating the PDF
+   *
+   * @see #render(File, File)
+   */
+  public void render(File input, File output, @Nullable RenderScheduler scheduler) throws IOException, DocumentException {
+    File root = input.getAbsoluteFile().getParentFile();
+    String baseUri = input.toURI().toString();
+    Document doc = XMLResource.load(new InputSource(baseUri)).getDocument();
+
+    String key = null;
+    RenderCache cache = this.cache;
+    if (cache != null) {
+      key = toKey(cache, input, root, doc);
+      if (cache.restore(key, output)) {
+        LOGGER.debug("Restored {} from {}", output, cache);
+        return;
+      }
+    }
+
+    if (scheduler != null && scheduler.isOffloading()) {
+      try (BufferPool.Buffer pdf = scheduler.compute(() -> render(doc, baseUri, root, input.getName(), this.buffers));
+           FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+               StandardOpenOption.TRUNCATE_EXISTING)) {
+        pdf.writeTo(channel);
+      }
+    } else {
+      try (OutputStream out = Files.newOutputStream(output.toPath())) {
+        render(doc, baseUri, root, input.getName(), out);
+      }
+    }
+    if (cache != null && key != null) {
+      cache.store(key, output);
+    }
+    LOGGER.debug("{}", this.images);
+  }
+
+  /**
+   * Renders the PSML document from the specified source as a PDF.
+   *
+   * <p>The system ID of the source is used as the base URI of the document: local images
+   * are resolved relative to it when it is a <code>file:</code> URI and are left out of
+   * the PDF otherwise. The output stream is flushed but not closed. The render cache is not
+   * used for streams.
+   *
+   * @param source the PSML document to render with its system ID
+   * @param out the stream to write the PDF to
+   *
+   * @throws IOException if an error occurs while reading the document or writing the PDF
+   * @throws DocumentException if an error occurs while generating the PDF
+   */
+  public void render(InputSource source, OutputStream out) throws IOException, DocumentException {
+    String baseUri = source.getSystemId();
+    if (baseUri == null) throw new IllegalArgumentException("The source must have a system ID to resolve resources");
+    Document doc = XMLResource.load(source).getDocument();
+    try (OutputStream unclosable = new UnclosableOutputStream(out)) {
+      render(doc, baseUri, toRoot(baseUri), toName(baseUri), unclosable);
+    }
+    LOGGER.debug("{}", this.images);
+  }
+
+  /**
+   * Renders the PSML document from the specified stream as a PDF.
+   *
+   * @param in the PSML document to render
+   * @param baseUri the URI used to resolve the resources of the document
+   * @param out the stream to write the PDF to, flushed but not closed
+   *
+   * @throws IOException if an error occurs while reading the document or writing the PDF
+   * @throws DocumentException if an error occurs while generating the PDF
+   *
+   * @see #render(InputSource, OutputStream)
+   */
+  public void render(InputStream in, String baseUri, OutputStream out) throws IOException, DocumentException {
+    InputSource source = new InputSource(in);
+    source.setSystemId(baseUri);
+    render(source, out);
+  }
+
+  /**
+   * Renders the PSML document from the specified source as a PDF written to a channel.
+   *
+   * @param source the PSML document to render with its system ID
+   * @param channel the channel to write the PDF to, left open
+   *
+   * @throws IOException if an error occurs while reading the document or writing the PDF
+   * @throws DocumentException if an error occurs while generating the PDF
+   *
+   * @see #render(InputSource, OutputStream)
+   */
+  public void render(InputSource source, WritableByteChannel channel) throws IOException, DocumentException {
+    render(source, Channels.newOutputStream(channel));
+  }
+
+  /**
+   * Renders the PSML document from the specified source as a PDF in a buffer from the
+   * specified pool.
+   *
+   * <p>The caller must close the returned buffer once the PDF has been sent to return the
+   * buffer to the pool.
+   *
+   * @param source the PSML document to render with its system ID
+   * @param pool the pool to take the buffer from
+   * @return the buffer containing the PDF
+   *
+   * @throws IOException if an error occurs while reading the document
+   * @throws DocumentException if an error occurs while generating the PDF
+   *
+   * @see #render(InputSource, OutputStream)
+   */
+  public BufferPool.Buffer render(InputSource source, BufferPool pool) throws IOException, DocumentException {
+    BufferPool.Buffer buffer = pool.acquire();
+    try {
+      render(source, buffer.getOutputStream());
+      return buffer;
+    } catch (IOException | RuntimeException ex) {
+      buffer.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Renders the PSML document from the specified source as a PDF in a buffer from the
+   * specified pool, from a task of the specified scheduler.
+   *
+   * <p>The document is read on the thread of the caller, while the document is augmented
+   * and laid out through {@link RenderScheduler#compute}.
+   *
+   * @param source the PSML document to render with its system ID
+   * @param pool the pool to take the buffer from
+   * @param scheduler the scheduler of the task calling this method
+   * @return the buffer containing the PDF
+   *
+   * @throws IOException if an error occurs while reading the document
+   * @throws DocumentException if an error occurs while generating the PDF
+   *
+   * @see #render(InputSource, BufferPool)
+   */
+  public BufferPool.Buffer render(InputSource source, BufferPool pool, RenderScheduler scheduler)
+      throws IOException, DocumentException {
+    String baseUri = source.getSystemId();
+    if (baseUri == null) throw new IllegalArgumentException("The source must have a system ID to resolve resources");
+    Document doc = XMLResource.load(source).getDocument();
+    BufferPool.Buffer pdf = scheduler.compute(() -> render(doc, baseUri, toRoot(baseUri), toName(baseUri), pool));
+    LOGGER.debug("{}", this.images);
+    return pdf;
+  }
+
+  /**
+   * Augments and renders the specified document into a buffer from the specified pool.
+   */
+  private BufferPool.Buffer render(Document doc, String baseUri, @Nullable File root, String name, BufferPool pool)
+      throws IOException {
+    BufferPool.Buffer buffer = pool.acquire();
+    try {
+      render(doc, baseUri, root, name, buffer.getOutputStream());
+      return buffer;
+    } catch (IOException | RuntimeException ex) {
+      buffer.close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Augments and renders the specified document.
+   *
+   * @param doc the PSML document to render
+   * @param baseUri the URI used to resolve the resources of the document
+   * @param root the directory used to resolve local images (may be null)
+   * @param name the file name of the document, used to name diagnostics
+   * @param out the stream to write the PDF to, closed by the renderer
+   */
+  private void render(Document doc, String baseUri, @Nullable File root, String name, OutputStream out)
+      throws IOException, DocumentException {
+    try {
+      PsmlToPdfCreationListener listener = augment(doc);
+
+      List<DocumentSplitter.Chunk> chunks = this.chunks != null
+          ? DocumentSplitter.split(doc, this.config.getParallelism(), MIN_CHUNK_ELEMENTS, () -> {
+              ITextRenderer styles = newRenderer(root);
+              styles.setDocument(doc, baseUri, newNamespaceHandler());
+              return DocumentSplitter.startsPage(styles.getSharedContext().getCss());
+            })
+          : List.of();
+      if (this.chunks != null && chunks.size() > 1) {
+        ChunkedRender chunked = new ChunkedRender(chunks, baseUri, () -> newRenderer(root), this::newNamespaceHandler);
+        chunked.render(this.chunks, listener.getInfo(), listener.getBookmarks(), out);
+      } else {
+        ITextRenderer renderer = newRenderer(root);
+        renderer.setDocument(doc, baseUri, newNamespaceHandler());
+        renderer.setListener(listener);
+        renderer.layout();
+        renderer.createPDF(out);
+      }
+    } finally {
+      // To help debug, especially failed renders, once the renderer no longer uses the document
+      if (this.diagnostics != null) {
+        this.diagnostics.submit(doc, toDiagnosticsName(baseUri, name));
+      }
+    }
+  }
+
+  /**
+   * Returns the name of the diagnostics file of a document, which includes a hash of its URI so
+   * that documents with the same name in different directories do not overwrite each other.
+   *
+   * <p>Documents without a file URI, such as request bodies, also get a sequence number.
+   */
+  private static String toDiagnosticsName(String baseUri, String name) {
+    String hash = Utils.toHex(Utils.newSha256().digest(baseUri.getBytes(StandardCharsets.UTF_8))).substring(0, 8);
+    String base = name.endsWith(".psml") ? name.substring(0, name.length() - 5) : name;
+    String unique = baseUri.startsWith("file:") ? hash : hash + '-' + DIAGNOSTICS_SEQUENCE.incrementAndGet();
+    return base + '-' + unique + ".pdf.psml";
+  }
+
+  /**
+   * @return the directory of a <code>file:</code> base URI, <code>null</code> for other URIs
+   */
+  private static @Nullable File toRoot(String baseUri) {
+    if (!baseUri.startsWith("file:")) return null;
+    try {
+      return new File(URI.create(baseUri)).getAbsoluteFile().getParentFile();
+    } catch (IllegalArgumentException ex) {
+      LOGGER.debug("Unable to resolve directory of {}", baseUri);
+      return null;
+    }
+  }
+
+  /**
+   * @return the last segment of the path of the base URI or "document.psml"
+   */
+  private static String toName(String baseUri) {
+    String path = baseUri.replaceFirst("[?#].*$", "");
+    String name = path.substring(path.lastIndexOf('/') + 1);
+    return name.isEmpty() ? "document.psml" : name;
+  }
+
+  /**
+   * Computes the key of a render from the content of the document, of the local images it
+   * references, of the stylesheets and the files they load, of the fonts, and from the settings
+   * of this engine.
+   */
+  private String toKey(RenderCache cache, File input, File root, Document doc) throws IOException {
+    RenderCache.KeyBuilder key = cache.newKey()
+        .add("settings", this.settings)
+        .addFile("input", input);
+    File stylesheet = this.config.getAuthorStylesheet();
+    if (stylesheet != null) {
+      key.addFile("stylesheet", stylesheet);
+      for (Map.Entry<String, File> resource : StylesheetResources.find(stylesheet).entrySet()) {
+        key.addFile("stylesheet:" + resource.getKey(), resource.getValue());
+      }
+    }
+    for (File font : this.fonts) {
+      key.addFile("font:" + font.getName(), font);
+    }
+    for (Map.Entry<String, File> image : getLocalImages(doc, root).entrySet()) {
+      key.addFile("image:" + image.getKey(), image.getValue());
+    }
+    return key.build();
+  }
+
+  /**
+   * @return the files of the local images referenced by the document keyed by source
+   */
+  private static Map<String, File> getLocalImages(Document doc, File root) {
+    Map<String, File> files = new LinkedHashMap<>();
+    NodeList images = doc.getElementsByTagName("image");
+    for (int i = 0; i < images.getLength(); i++) {
+      String src = ((Element) images.item(i)).getAttribute("src");
+      if (PsmlReplacedElementFactory.isLocalImage(src)) {
+        files.putIfAbsent(src, new File(root, src));
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Returns the settings of the specified configuration and the built-in resources that
+   * affect the output of a render.
+   */
+  private static String toSettings(PdfRenderConfig config) {
+    StringBuilder settings = new StringBuilder();
+    settings.append("version=").append(PdfRenderEngine.class.getPackage().getImplementationVersion());
+    settings.append(";maxTocLevel=").append(config.getMaxTocLevel());
+    settings.append(";maxBookmarkLevel=").append(config.getMaxBookmarkLevel());
+    settings.append(";maxImageDpi=").append(config.getMaxImageDpi());
+    settings.append(";parallelism=").append(config.getParallelism());
+    settings.append(";lazyFonts=").append(config.isLazyFonts());
+    TitlePageConfig titlePage = config.getTitlePageConfig();
+    if (titlePage != null) {
+      for (TitlePageItem item : titlePage.getItems()) {
+        settings.append(";titlePage.").append(item.getName()).append('=').append(item.getXpath())
+            .append('|').append(item.getFormat());
+      }
+    }
+    try (InputStream css = PsmlNamespaceHandler.PSML_CSS.openStream()) {
+      settings.append(";psml.css=").append(Utils.sha256(css.readAllBytes()));
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Unable to read built-in stylesheet", ex);
+    }
+    return settings.toString();
+  }
+
+  /**
+   * Creates the executor laying out the parts of documents, in addition to the thread of each
+   * render; its threads stop when idle so the engine does not need to be closed.
+   */
+  private static ThreadPoolExecutor newChunkExecutor(int threads) {
+    AtomicInteger count = new AtomicInteger();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+      Thread thread = new Thread(r, "stellar-chunk-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Creates a new renderer resolving local images from the specified directory.
+   *
+   * @param root the directory used to resolve local images (may be null)
+   * @return a new renderer with the fonts of this engine
+   */
+  ITextRenderer newRenderer(@Nullable File root) {
+    ITextRenderer renderer = new ITextRenderer();
+
+    SharedContext sharedContext = renderer.getSharedContext();
+    ResourceLoaderUserAgent callback = new ResourceLoaderUserAgent(renderer.getOutputDevice(), sharedContext.getDotsPerPixel());
+    sharedContext.setUserAgentCallback(callback);
+
+    PsmlReplacedElementFactory factory = new PsmlReplacedElementFactory(sharedContext.getReplacedElementFactory(), root, this.images, this.optimizer);
+    sharedContext.setReplacedElementFactory(factory);
+
+    // Include embedded fonts
+    if (!this.fonts.isEmpty()) {
+      if (this.config.isLazyFonts()) {
+        FontRegistry.install(renderer, this.fonts, getUsedFamilies());
+      } else {
+        Fonts.loadFonts(renderer, this.fonts);
+      }
+    }
+    return renderer;
+  }
+
+  /**
+   * @return the font families referenced by the built-in and author stylesheets
+   */
+  Set<String> getUsedFamilies() {
+    Set<String> families = new LinkedHashSet<>(FontFamilies.get(PsmlNamespaceHandler.PSML_CSS.toString()));
+    if (this.authorStylesheetUri != null) {
+      families.addAll(FontFamilies.get(this.authorStylesheetUri));
+    }
+    return families;
+  }
+
+  /**
+   * Augments the PSML document with the elements and attributes required for the PDF, and
+   * collects its metadata and bookmarks in the same traversal.
+   *
+   * @param doc the PSML document to augment
+   * @return the listener writing the metadata and bookmarks to the PDF
+   */
+  PsmlToPdfCreationListener augment(Document doc) {
+    Info.Collector info = Info.collector();
+    Bookmarks.Collector bookmarks = Bookmarks.collector(this.config.getMaxBookmarkLevel());
+    DocumentAugmenter augmenter = new DocumentAugmenter(List.of(
+        TOC.linksStep(this.config.getMaxTocLevel()),
+        TitlePage.step(this.config.getTitlePageConfig()),
+        PsmlDecorator.classesStep(),
+        PsmlDecorator.idsStep(),
+        info,
+        bookmarks));
+    augmenter.augment(doc);
+    return new PsmlToPdfCreationListener(info.getInfo(), bookmarks.getBookmarks());
+  }
+
+  /**
+   * @return a new namespace handler using the author stylesheet of this engine
+   */
+  PsmlNamespaceHandler newNamespaceHandler() {
+    PsmlNamespaceHandler namespaceHandler = new PsmlNamespaceHandler();
+    if (this.authorStylesheetUri != null) {
+      namespaceHandler.addAuthorStylesheet(this.authorStylesheetUri);
+    }
+    return namespaceHandler;
+  }
+
+  @Override
+  public String toString() {
+    return "PdfRenderEngine{" + this.config + '}';
+  }
+
+  /**
+   * Flushes instead of closing the stream of the caller, as renderers close their output.
+   */
+  private static final class UnclosableOutputStream extends FilterOutputStream {
+
+    UnclosableOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      this.out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.out.flush();
+    }
+  }
+
+  private static class ResourceLoaderUserAgent extends ITextUserAgent {
+    private ResourceLoaderUserAgent(ITextOutputDevice outputDevice, int dotsPerPixel) {
+      super(outputDevice, dotsPerPixel);
+    }
+
+    @Override
+    protected InputStream resolveAndOpenStream(String uri) {
+      InputStream is = super.resolveAndOpenStream(uri);
+      LOGGER.debug("IN resolveAndOpenStream({})", uri);
+      return is;
+    }
+
+  }
+}
@@ -4,6 +4,14 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+/**
+ * Utility class providing methods to add the classes and IDs required for the PDF to a PSML document.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.5.0
+ * @version 0.7.0
+ */
 public class PsmlDecorator {
 
   private PsmlDecorator() {}
@@ -11,9 +19,7 @@ public class PsmlDecorator {
   public static void addClasses(Document doc) {
     NodeList nodes = doc.getElementsByTagName("heading");
     for (int i = 0; i < nodes.getLength(); i++) {
-      Element e = (Element) nodes.item(i);
-      String level = e.getAttribute("level");
-      e.setAttribute("class", "h"+level);
+      addClass((Element) nodes.item(i));
     }
   }
 
@@ -21,17 +27,59 @@ public class PsmlDecorator {
     // For the bookmarks we need all headings and section titles to have an ID
     NodeList headings = doc.getElementsByTagName("heading");
     for (int i = 0; i < headings.getLength(); i++) {
-      Element h = (Element) headings.item(i);
-      if (!h.hasAttribute("id")) {
-        h.setAttribute("id", "toc-h-"+i);
-      }
+      addHeadingId((Element) headings.item(i), i);
     }
     NodeList titles = doc.getElementsByTagName("title");
     for (int i = 0; i < titles.getLength(); i++) {
-      Element t = (Element) titles.item(i);
-      if (t.getParentNode().getNodeName().equals("section") && !t.hasAttribute("id")) {
-        t.setAttribute("id", "toc-t-"+i);
+      addTitleId((Element) titles.item(i), i);
+    }
+  }
+
+  /**
+   * @return an augmentation step equivalent to {@link #addClasses(Document)}
+   */
+  public static AugmentationStep classesStep() {
+    return element -> {
+      if ("heading".equals(element.getNodeName())) {
+        addClass(element);
+      }
+    };
+  }
+
+  /**
+   * @return an augmentation step equivalent to {@link #addIds(Document)}
+   */
+  public static AugmentationStep idsStep() {
+    return new AugmentationStep() {
+      private int headings = 0;
+      private int titles = 0;
+
+      @Override
+      public void visit(Element element) {
+        String name = element.getNodeName();
+        if ("heading".equals(name)) {
+          addHeadingId(element, this.headings++);
+        } else if ("title".equals(name)) {
+          addTitleId(element, this.titles++);
+        }
       }
+    };
+  }
+
+  private static void addClass(Element heading) {
+    String level = heading.getAttribute("level");
+    heading.setAttribute("class", "h"+level);
+  }
+
+  private static void addHeadingId(Element heading, int index) {
+    if (!heading.hasAttribute("id")) {
+      heading.setAttribute("id", "toc-h-"+index);
+    }
+  }
+
+  private static void addTitleId(Element title, int index) {
+    if (title.getParentNode().getNodeName().equals("section") && !title.hasAttribute("id")) {
+      title.setAttribute("id", "toc-t-"+index);
     }
   }
 
@@ -14,6 +14,7 @@ import javax.annotation.Nullable;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * PsmlNamespaceHandler is a class that handles a custom, proprietary namespace
@@ -24,15 +25,23 @@ import java.util.List;
  * <p>This class manages associated stylesheets, extracts metadata, and provides
  * specialized behavior for processing elements in a given PSML namespace.
  *
+ * <p>Stylesheets are supplied already parsed from the {@link StylesheetCache} so that they
+ * are only parsed once across renders.
+ *
  * @author Christophe Lauret
  *
  * @since 0.5.0
- * @version 0.5.2
+ * @version 0.7.0
  */
 public class PsmlNamespaceHandler extends NoNamespaceHandler implements NamespaceHandler {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(PsmlNamespaceHandler.class);
 
+  /**
+   * The location of the built-in PSML stylesheet, resolved once.
+   */
+  static final URL PSML_CSS = Objects.requireNonNull(PsmlNamespaceHandler.class.getClassLoader().getResource("psml.css"));
+
   List<StylesheetInfo> stylesheets = new ArrayList<>();
 
   PsmlNamespaceHandler() {
@@ -48,13 +57,13 @@ public class PsmlNamespaceHandler extends NoNamespaceHandler implements Namespac
   @Nullable
   @Override
   public StylesheetInfo getDefaultStylesheet(StylesheetFactory factory) {
-    URL url = PsmlNamespaceHandler.class.getClassLoader().getResource("psml.css");
     StylesheetInfo info = new StylesheetInfo();
     info.setOrigin(StylesheetInfo.AUTHOR);
     info.setMedia("all");
     info.setType("text/css");
     info.setTitle("PSML");
-    info.setUri(url.toString());
+    info.setUri(PSML_CSS.toString());
+    info.setStylesheet(StylesheetCache.get(PSML_CSS.toString(), StylesheetInfo.AUTHOR));
     return info;
   }
 
@@ -64,6 +73,7 @@ public class PsmlNamespaceHandler extends NoNamespaceHandler implements Namespac
     info.setUri(uri);
     info.setMedia("all");
     info.setType("text/css");
+    info.setStylesheet(StylesheetCache.get(uri, StylesheetInfo.AUTHOR));
     this.stylesheets.add(info);
   }
 
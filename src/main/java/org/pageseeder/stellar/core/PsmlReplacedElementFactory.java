@@ -1,6 +1,7 @@
 package org.pageseeder.stellar.core;
 
 import com.lowagie.text.Image;
+import org.eclipse.jdt.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Element;
@@ -21,26 +22,62 @@ import org.xhtmlrenderer.simple.extend.FormSubmissionListener;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 /**
  * Defines the replacement of an element factory by an image
  *
+ * <p>Local images are taken from an {@link ImageCache} and, when an {@link ImageOptimizer}
+ * is specified, downsampled to the size at which they are laid out.
+ *
+ * <p>Within a document, images are resolved once per file and target size and deduplicated
+ * by content digest: every occurrence of the same image is a copy of a single master image,
+ * so the PDF writer embeds it as a single XObject.
+ *
  * @author Christophe Lauret
  *
  * @since 0.5.0
- * @version 0.5.2
+ * @version 0.7.0
  */
 class PsmlReplacedElementFactory implements ReplacedElementFactory {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(PsmlReplacedElementFactory.class);
 
+  private static final Pattern LOCAL_IMAGE = Pattern.compile("^(?:[a-z0-9A-Z_-]{1,255})?(?:/[a-z0-9A-Z_-]{1,255}){1,16}\\.(?:png|jpg|gif)$");
+
   private final ReplacedElementFactory superFactory;
-  private final File root;
+  private final @Nullable File root;
+  private final ImageCache images;
+  private final @Nullable ImageOptimizer optimizer;
+
+  /**
+   * Images resolved for the current document keyed by file and target size.
+   */
+  private final Map<String, ImageCache.Entry> resolved = new HashMap<>();
 
-  public PsmlReplacedElementFactory(ReplacedElementFactory superFactory, File root) {
+  /**
+   * Master images embedded in the current document keyed by content digest.
+   */
+  private final Map<String, Image> embedded = new HashMap<>();
+
+  /**
+   * Cumulative horizontal margins and paddings of ancestor elements for the current layout.
+   */
+  private final Map<Element, Float> adjustments = new IdentityHashMap<>();
+
+  private @Nullable RenderingContext renderingContext;
+
+  public PsmlReplacedElementFactory(ReplacedElementFactory superFactory, @Nullable File root, ImageCache images,
+                                    @Nullable ImageOptimizer optimizer) {
     this.superFactory = superFactory;
     this.root = root;
+    this.images = images;
+    this.optimizer = optimizer;
   }
 
   @Override
@@ -61,16 +98,20 @@ class PsmlReplacedElementFactory implements ReplacedElementFactory {
       // Local image
       String src = element.getAttribute("src");
       LOGGER.debug("Replace {}: {}", nodeName, src);
-      if (src.matches("^(?:[a-z0-9A-Z_-]{1,255})?(?:/[a-z0-9A-Z_-]{1,255}){1,16}\\.(?:png|jpg|gif)$")) {
-        File f = new File(this.root, src);
+      File root = this.root;
+      if (!isLocalImage(src)) {
+        LOGGER.warn("Unable to replace local image in PDF: invalid path {}", src);
+      } else if (root == null) {
+        LOGGER.warn("Unable to replace local image in PDF: no base directory for {}", src);
+      } else {
+        File f = new File(root, src);
         try {
-          byte[] bytes = Files.readAllBytes(f.toPath());
-          Image image = Image.getInstance(bytes);
-          ITextFSImage fsImage = new ITextFSImage(image);
+          ImageCache.Entry original = resolve(f, 0, 0);
+          Image originalImage = original.image();
 
           // Image dimensions (in pixels)
-          float imgWidthPx = image.getWidth();
-          float imgHeightPx = image.getHeight();
+          float imgWidthPx = originalImage.getWidth();
+          float imgHeightPx = originalImage.getHeight();
 
           // Check available space on the page
           Box masterBox = layoutContext.getLayer().getMaster();
@@ -78,32 +119,53 @@ class PsmlReplacedElementFactory implements ReplacedElementFactory {
           float maxWidth = masterBox.getContentWidth() - adjust;
           float maxHeight = (imgHeightPx * maxWidth) / imgWidthPx;
 
+          int width = -1;
+          int height = -1;
           if (cssWidth != -1 || cssHeight != -1) {
             // Scale image if necessary
             if (cssWidth > maxWidth || cssHeight > maxHeight) {
               float scale = maxWidth / cssWidth;
-              int targetWidth = Math.round(cssWidth * scale);
-              int targetHeight = Math.round(cssHeight * scale);
-              LOGGER.debug("Scale {}x{} to {}x{}", cssWidth, cssHeight, targetWidth, targetHeight);
-              fsImage.scale(targetWidth, targetHeight);
+              width = Math.round(cssWidth * scale);
+              height = Math.round(cssHeight * scale);
+              LOGGER.debug("Scale {}x{} to {}x{}", cssWidth, cssHeight, width, height);
             } else {
-              fsImage.scale(cssWidth, cssHeight);
+              width = cssWidth;
+              height = cssHeight;
             }
           }
+
+          Image image = embed(optimize(layoutContext, f, original, width, height));
+          ITextFSImage fsImage = new ITextFSImage(image);
+          if (width != -1 || height != -1) {
+            fsImage.scale(width, height);
+          } else if (image.getWidth() != imgWidthPx) {
+            // Resampled image must keep the size of the original
+            fsImage.scale(Math.round(imgWidthPx), Math.round(imgHeightPx));
+          }
           return new ITextImageElement(fsImage);
 
         } catch (IOException ex) {
           LOGGER.warn("Unable to replace local image in PDF {}", ex.getMessage(), ex);
         }
-      } else {
-        LOGGER.warn("Unable to replace local image in PDF: invalid path {}", src);
       }
     }
     return this.superFactory.createReplacedElement(layoutContext, blockBox, userAgentCallback, cssWidth, cssHeight);
   }
 
+  /**
+   * @param src the source of an image element
+   * @return <code>true</code> if the image is a local file resolved relative to the document
+   */
+  static boolean isLocalImage(String src) {
+    return LOCAL_IMAGE.matcher(src).matches();
+  }
+
   @Override
   public void reset() {
+    this.resolved.clear();
+    this.embedded.clear();
+    this.adjustments.clear();
+    this.renderingContext = null;
     this.superFactory.reset();
   }
 
@@ -117,6 +179,69 @@ class PsmlReplacedElementFactory implements ReplacedElementFactory {
     this.superFactory.setFormSubmissionListener(listener);
   }
 
+  /**
+   * Returns the image to embed for the specified laid out dimensions.
+   *
+   * <p>If an optimizer is configured and the original image has more pixels than required to
+   * display it at the maximum effective resolution, the image is resampled to its laid out size.
+   *
+   * @param layoutContext the current layout context
+   * @param file the image file
+   * @param original the original decoded image
+   * @param width the laid out width in dots or -1 to use the natural size
+   * @param height the laid out height in dots or -1 to use the natural size
+   *
+   * @return the image to embed and its digest
+   */
+  private ImageCache.Entry optimize(LayoutContext layoutContext, File file, ImageCache.Entry original, int width, int height)
+      throws IOException {
+    if (this.optimizer == null) return original;
+    float imgWidthPx = original.image().getWidth();
+    float imgHeightPx = original.image().getHeight();
+    float widthDots = width > 0 ? width : height > 0 ? height * imgWidthPx / imgHeightPx : imgWidthPx;
+    int targetWidth = this.optimizer.toPixels(widthDots / layoutContext.getSharedContext().getDPI());
+    if (!this.optimizer.shouldResample(imgWidthPx, targetWidth)) return original;
+    int targetHeight = Math.max(1, Math.round(targetWidth * imgHeightPx / imgWidthPx));
+    return resolve(file, targetWidth, targetHeight);
+  }
+
+  /**
+   * Resolves the image for the specified file and target size once per document.
+   *
+   * @param file the image file
+   * @param width the target width in pixels or 0 for the original image
+   * @param height the target height in pixels or 0 for the original image
+   *
+   * @return the decoded image and its digest
+   */
+  private ImageCache.Entry resolve(File file, int width, int height) throws IOException {
+    String key = file.getPath() + '@' + width + 'x' + height;
+    ImageCache.Entry entry = this.resolved.get(key);
+    if (entry == null) {
+      ImageOptimizer optimizer = this.optimizer;
+      entry = width > 0 && optimizer != null
+          ? this.images.loadResampled(file, width, height, optimizer)
+          : this.images.load(file);
+      this.resolved.put(key, entry);
+    }
+    return entry;
+  }
+
+  /**
+   * Returns a copy of the master image for the content of the specified entry.
+   *
+   * <p>The first image with a given digest becomes the master for the document; copies
+   * share its serial ID so the PDF writer only embeds it once. A copy is always returned
+   * as cached images must not be modified.
+   *
+   * @param entry the decoded image and its digest
+   * @return a copy of the master image
+   */
+  private Image embed(ImageCache.Entry entry) {
+    Image master = this.embedded.computeIfAbsent(entry.digest(), digest -> entry.image());
+    return Image.getInstance(master);
+  }
+
   /**
    * Computes the adjustment value for the layout by accumulating the combined margins
    * and paddings (left and right) of the specified element's ancestors.
@@ -126,6 +251,9 @@ class PsmlReplacedElementFactory implements ReplacedElementFactory {
    * and padding-right) for each ancestor element, and summing them to determine the
    * total adjustment value.
    *
+   * <p>The cumulative adjustment of each ancestor is memoized until the factory is reset,
+   * so sibling and nested images only compute the styles of ancestors not seen before.
+   *
    * @param layoutContext the current layout context, used to retrieve rendering and CSS information
    * @param element the target element for which the layout adjustment is computed
    *
@@ -133,29 +261,49 @@ class PsmlReplacedElementFactory implements ReplacedElementFactory {
    *         margins and paddings across ancestor elements (in dots)
    */
   private float computeAdjustLayout(LayoutContext layoutContext, Element element) {
-    RenderingContext context = layoutContext.getSharedContext().newRenderingContextInstance();
+    // Collect the ancestors up to the first one already computed
+    Deque<Element> pending = new ArrayDeque<>();
     float adjust = 0;
-
-    Element parent = (Element)element.getParentNode();
+    Element parent = element.getParentNode() instanceof Element ? (Element) element.getParentNode() : null;
     while (parent != null) {
-      CascadedStyle style = layoutContext.getCss().getCascadedStyle(parent, false);
+      Float known = this.adjustments.get(parent);
+      if (known != null) {
+        adjust = known;
+        break;
+      }
+      pending.push(parent);
+      parent = parent.getParentNode() instanceof Element ? (Element) parent.getParentNode() : null;
+    }
+
+    // Compute the missing ancestors from the top down
+    while (!pending.isEmpty()) {
+      Element ancestor = pending.pop();
+      CascadedStyle style = layoutContext.getCss().getCascadedStyle(ancestor, false);
       if (style != null) {
+        RenderingContext context = renderingContext(layoutContext);
         CalculatedStyle cs = new EmptyStyle().deriveStyle(style);
         float marginLeft = cs.getFloatPropertyProportionalTo(CSSName.MARGIN_LEFT, 0, context);
         float paddingLeft = cs.getFloatPropertyProportionalTo(CSSName.PADDING_LEFT, 0, context);
         float marginRight = cs.getFloatPropertyProportionalTo(CSSName.MARGIN_RIGHT, 0, context);
         float paddingRight = cs.getFloatPropertyProportionalTo(CSSName.PADDING_RIGHT, 0, context);
         adjust += (marginLeft+marginRight+paddingLeft+paddingRight);
-        LOGGER.debug("Parent: {} -> {}", parent.getNodeName(), adjust);
-      }
-
-      if (parent.getParentNode() instanceof Element) {
-        parent = (Element) parent.getParentNode();
-      } else {
-        parent = null;
+        LOGGER.debug("Parent: {} -> {}", ancestor.getNodeName(), adjust);
       }
+      this.adjustments.put(ancestor, adjust);
     }
     return adjust;
   }
 
-}
\ No newline at end of file
+  /**
+   * @return the rendering context used to compute lengths, created once per layout
+   */
+  private RenderingContext renderingContext(LayoutContext layoutContext) {
+    RenderingContext context = this.renderingContext;
+    if (context == null) {
+      context = layoutContext.getSharedContext().newRenderingContextInstance();
+      this.renderingContext = context;
+    }
+    return context;
+  }
+
+}
@@ -10,7 +10,7 @@ import org.xhtmlrenderer.pdf.ITextRenderer;
  * @author Christophe Lauret
  *
  * @since 0.5.0
- * @version 0.5.2
+ * @version 0.7.0
  */
 public class PsmlToPdfCreationListener extends DefaultPDFCreationListener {
 
@@ -23,6 +23,32 @@ public class PsmlToPdfCreationListener extends DefaultPDFCreationListener {
     this.bookmarks = Bookmarks.load(doc, maxBookmarkLevel);
   }
 
+  /**
+   * Creates a listener from metadata and bookmarks already loaded, typically collected while
+   * augmenting the document.
+   *
+   * @param info the metadata information to write
+   * @param bookmarks the bookmarks to write as the PDF outline
+   */
+  public PsmlToPdfCreationListener(Info info, Bookmarks bookmarks) {
+    this.info = info;
+    this.bookmarks = bookmarks;
+  }
+
+  /**
+   * @return the metadata information written by this listener
+   */
+  Info getInfo() {
+    return this.info;
+  }
+
+  /**
+   * @return the bookmarks written by this listener
+   */
+  Bookmarks getBookmarks() {
+    return this.bookmarks;
+  }
+
   @Override
   public void onClose(ITextRenderer renderer) {
     this.bookmarks.writeOutline(renderer);
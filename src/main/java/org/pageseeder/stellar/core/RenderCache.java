@@ -0,0 +1,250 @@
+package org.pageseeder.stellar.core;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A content-addressed cache of rendered PDF files.
+ *
+ * <p>Each PDF is stored under a key computed from the content of every input of the render:
+ * the PSML document, the images it references, the stylesheets, the fonts and the settings
+ * of the engine. When all the inputs are unchanged, the cached PDF is copied to the output
+ * instead of rendering the document again.
+ *
+ * <p>The digests of input files are remembered by path, size and modification time so that
+ * files shared by many documents, such as fonts, are only read once.
+ *
+ * <p>Cached files are written atomically, so a cache directory can be shared by several
+ * processes. This class is thread-safe.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+public final class RenderCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RenderCache.class);
+
+  /**
+   * The maximum number of file digests remembered.
+   */
+  private static final int MAX_DIGESTS = 4096;
+
+  private final File directory;
+
+  private final Map<String, FileDigest> digests = new ConcurrentHashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Creates a new render cache.
+   *
+   * @param directory the directory where rendered PDF files are stored
+   */
+  public RenderCache(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * @return the directory where rendered PDF files are stored
+   */
+  public File getDirectory() {
+    return this.directory;
+  }
+
+  /**
+   * @return a new builder for the key of a render
+   */
+  KeyBuilder newKey() {
+    return new KeyBuilder();
+  }
+
+  /**
+   * Copies the PDF cached for the specified key to the output file if there is one.
+   *
+   * <p>The output is always a copy, so that modifying it cannot change the cached file.
+   *
+   * @param key the key of the render
+   * @param output the PDF file to write
+   * @return <code>true</code> if the output was restored from the cache
+   *
+   * @throws IOException if the cached file could not be copied
+   */
+  boolean restore(String key, File output) throws IOException {
+    Path cached = toPath(key);
+    if (!Files.isRegularFile(cached)) {
+      this.misses.incrementAndGet();
+      return false;
+    }
+    Files.copy(cached, output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    this.hits.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Stores the specified PDF file under the specified key.
+   *
+   * @param key the key of the render
+   * @param output the rendered PDF file
+   *
+   * @throws IOException if the file could not be copied to the cache
+   */
+  void store(String key, File output) throws IOException {
+    Path cached = toPath(key);
+    Files.createDirectories(cached.getParent());
+    Path temp = Files.createTempFile(cached.getParent(), key, ".tmp");
+    try {
+      Files.copy(output.toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+      try {
+        Files.move(temp, cached, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException ex) {
+        Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING);
+      } catch (FileAlreadyExistsException ex) {
+        // Stored concurrently by another render of the same inputs
+        LOGGER.debug("Render {} already cached", key);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * @return the number of renders restored from the cache
+   */
+  public long getHits() {
+    return this.hits.get();
+  }
+
+  /**
+   * @return the number of renders that were not cached
+   */
+  public long getMisses() {
+    return this.misses.get();
+  }
+
+  private Path toPath(String key) {
+    return new File(new File(this.directory, key.substring(0, 2)), key + ".pdf").toPath();
+  }
+
+  /**
+   * Returns the digest of the content of the specified file, reading it only if it has
+   * changed since its digest was last computed.
+   *
+   * @param file the file to digest
+   * @return the digest or "missing" if the file does not exist
+   *
+   * @throws IOException if the file could not be read
+   */
+  private String digest(File file) throws IOException {
+    if (!file.isFile()) return "missing";
+    String path = file.getAbsolutePath();
+    long length = file.length();
+    long modified = file.lastModified();
+    FileDigest digest = this.digests.get(path);
+    if (digest == null || digest.length != length || digest.modified != modified) {
+      MessageDigest sha256 = Utils.newSha256();
+      try (InputStream in = Files.newInputStream(file.toPath())) {
+        byte[] buffer = new byte[8192];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+          sha256.update(buffer, 0, n);
+        }
+      }
+      digest = new FileDigest(length, modified, Utils.toHex(sha256.digest()));
+      if (this.digests.size() >= MAX_DIGESTS) this.digests.clear();
+      this.digests.put(path, digest);
+    }
+    return digest.value;
+  }
+
+  @Override
+  public String toString() {
+    return "RenderCache{hits=" + this.hits + ", misses=" + this.misses + ", directory=" + this.directory + '}';
+  }
+
+  /**
+   * Builds the key of a render from named values and files.
+   *
+   * <p>Each name and value is length-prefixed so that different sequences of values cannot
+   * produce the same key.
+   */
+  final class KeyBuilder {
+
+    private final MessageDigest sha256 = Utils.newSha256();
+
+    private KeyBuilder() {}
+
+    /**
+     * @param name the name of the value
+     * @param value the value, <code>null</code> values are distinct from empty ones
+     * @return this builder
+     */
+    KeyBuilder add(String name, @Nullable String value) {
+      update(name);
+      update(value != null ? value : "\u0000");
+      return this;
+    }
+
+    /**
+     * @param name the name of the file, such as its path relative to the document
+     * @param file the file whose content is part of the key
+     * @return this builder
+     *
+     * @throws IOException if the file could not be read
+     */
+    KeyBuilder addFile(String name, File file) throws IOException {
+      return add(name, digest(file));
+    }
+
+    /**
+     * @return the key as a lowercase hexadecimal string
+     */
+    String build() {
+      return Utils.toHex(this.sha256.digest());
+    }
+
+    private void update(String value) {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      this.sha256.update((byte) (bytes.length >>> 24));
+      this.sha256.update((byte) (bytes.length >>> 16));
+      this.sha256.update((byte) (bytes.length >>> 8));
+      this.sha256.update((byte) bytes.length);
+      this.sha256.update(bytes);
+    }
+  }
+
+  /**
+   * The digest of a file and the size and modification time of the file when computed.
+   */
+  private static final class FileDigest {
+
+    private final long length;
+
+    private final long modified;
+
+    private final String value;
+
+    FileDigest(long length, long modified, String value) {
+      this.length = length;
+      this.modified = modified;
+      this.value = value;
+    }
+  }
+}
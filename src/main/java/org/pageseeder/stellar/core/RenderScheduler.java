@@ -0,0 +1,134 @@
+package org.pageseeder.stellar.core;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Schedules the work of batch exports and of the render server.
+ *
+ * <p>Each document is handled by a task {@linkplain #submit(Callable) submitted} to the
+ * scheduler, which reads the inputs and writes the output. The CPU-bound part of the render,
+ * augmentation and layout, is run through {@link #compute(Task)}.
+ *
+ * <p>On Java 11, tasks run on a fixed pool of platform threads and computations run on the
+ * thread of the task. On Java 21 and later, the multi-release JAR replaces this class: tasks
+ * run on virtual threads so that any number of documents can wait on I/O, and computations
+ * are handed to a bounded pool of platform threads.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+public final class RenderScheduler implements AutoCloseable {
+
+  private final ExecutorService executor;
+
+  private final int threads;
+
+  private RenderScheduler(ExecutorService executor, int threads) {
+    this.executor = executor;
+    this.threads = threads;
+  }
+
+  /**
+   * Creates a new scheduler.
+   *
+   * @param threads the maximum number of documents laid out concurrently
+   * @return a new scheduler
+   */
+  public static RenderScheduler create(int threads) {
+    if (threads < 1) throw new IllegalArgumentException("At least one thread is required");
+    return new RenderScheduler(Executors.newFixedThreadPool(threads, new NamedThreadFactory("stellar-render-")), threads);
+  }
+
+  /**
+   * Submits a task handling a document.
+   *
+   * @param task the task
+   * @param <T> the type of result
+   * @return the future result of the task
+   */
+  public <T> Future<T> submit(Callable<T> task) {
+    return this.executor.submit(task);
+  }
+
+  /**
+   * Runs a CPU-bound computation from a submitted task and waits for its result.
+   *
+   * @param task the computation
+   * @param <T> the type of result
+   * @return the result of the computation
+   *
+   * @throws IOException if the computation failed with an I/O error
+   */
+  public <T> T compute(Task<T> task) throws IOException {
+    return task.call();
+  }
+
+  /**
+   * @return <code>true</code> if computations run on other threads than submitted tasks
+   */
+  public boolean isOffloading() {
+    return false;
+  }
+
+  /**
+   * @return the maximum number of documents laid out concurrently
+   */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * Stops the threads of this scheduler, interrupting running tasks.
+   */
+  @Override
+  public void close() {
+    this.executor.shutdownNow();
+  }
+
+  @Override
+  public String toString() {
+    return "RenderScheduler{threads=" + this.threads + ", virtual=false}";
+  }
+
+  /**
+   * A computation that may fail with an I/O error.
+   *
+   * @param <T> the type of result
+   */
+  @FunctionalInterface
+  public interface Task<T> {
+
+    /**
+     * @return the result of the computation
+     * @throws IOException if an I/O error occurs
+     */
+    T call() throws IOException;
+  }
+
+  /**
+   * Names the platform threads of a scheduler.
+   */
+  private static final class NamedThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    NamedThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      return new Thread(runnable, this.prefix + this.count.incrementAndGet());
+    }
+  }
+}
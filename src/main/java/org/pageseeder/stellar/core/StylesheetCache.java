@@ -0,0 +1,144 @@
+package org.pageseeder.stellar.core;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhtmlrenderer.css.parser.CSSParser;
+import org.xhtmlrenderer.css.sheet.Stylesheet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A JVM-wide cache of parsed CSS stylesheets shared across renders.
+ *
+ * <p>Stylesheets are keyed by URI and origin, and each entry records the hash of the content
+ * it was parsed from. Local files are revalidated against their modification time and size
+ * before use: when either changes, the file is read again and only parsed if its content hash
+ * differs. Other resources, such as the built-in <code>psml.css</code> on the classpath, are
+ * assumed not to change.
+ *
+ * <p>Parsed stylesheets are only read during style matching, so a single instance can be
+ * used by several renderers concurrently.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+public final class StylesheetCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StylesheetCache.class);
+
+  private static final Map<String, Entry> CACHE = new ConcurrentHashMap<>();
+
+  private StylesheetCache() {}
+
+  /**
+   * Returns the parsed stylesheet at the specified URI.
+   *
+   * @param uri the URI of the stylesheet
+   * @param origin the origin of the stylesheet as defined by <code>StylesheetInfo</code>
+   *
+   * @return the parsed stylesheet or <code>null</code> if it could not be loaded
+   */
+  public static @Nullable Stylesheet get(String uri, int origin) {
+    String key = origin + ":" + uri;
+    @Nullable File file = toFile(uri);
+    long modified = file != null ? file.lastModified() : 0;
+    long length = file != null ? file.length() : 0;
+    Entry entry = CACHE.get(key);
+    if (entry != null && entry.modified == modified && entry.length == length) {
+      return entry.stylesheet;
+    }
+    try {
+      byte[] content = read(uri, file);
+      String hash = Utils.sha256(content);
+      Stylesheet stylesheet;
+      if (entry != null && entry.hash.equals(hash)) {
+        stylesheet = entry.stylesheet;
+      } else {
+        stylesheet = parse(uri, origin, content);
+      }
+      CACHE.put(key, new Entry(modified, length, hash, stylesheet));
+      return stylesheet;
+    } catch (IOException ex) {
+      LOGGER.warn("Unable to load stylesheet {}: {}", uri, ex.getMessage());
+      CACHE.remove(key);
+      return null;
+    }
+  }
+
+  /**
+   * Discards all the cached stylesheets.
+   */
+  public static void clear() {
+    CACHE.clear();
+  }
+
+  /**
+   * @return the number of stylesheets currently cached
+   */
+  public static int size() {
+    return CACHE.size();
+  }
+
+  private static Stylesheet parse(String uri, int origin, byte[] content) throws IOException {
+    long start = System.nanoTime();
+    CSSParser parser = new CSSParser((u, message) -> LOGGER.warn("({}) {}", u, message));
+    try (Reader reader = new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8)) {
+      Stylesheet stylesheet = parser.parseStylesheet(uri, origin, reader);
+      LOGGER.debug("Parsed stylesheet {} in {}ms", uri, (System.nanoTime() - start) / 1_000_000);
+      return stylesheet;
+    }
+  }
+
+  private static byte[] read(String uri, @Nullable File file) throws IOException {
+    if (file != null) {
+      return Files.readAllBytes(file.toPath());
+    }
+    try (InputStream in = new URL(uri).openStream()) {
+      return in.readAllBytes();
+    }
+  }
+
+  private static @Nullable File toFile(String uri) {
+    if (!uri.startsWith("file:")) return null;
+    try {
+      return new File(URI.create(uri));
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * A parsed stylesheet along with the state of the resource it was parsed from.
+   */
+  private static final class Entry {
+
+    private final long modified;
+
+    private final long length;
+
+    private final String hash;
+
+    private final Stylesheet stylesheet;
+
+    Entry(long modified, long length, String hash, Stylesheet stylesheet) {
+      this.modified = modified;
+      this.length = length;
+      this.hash = hash;
+      this.stylesheet = stylesheet;
+    }
+  }
+}
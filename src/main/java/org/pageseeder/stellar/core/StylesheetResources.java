@@ -0,0 +1,91 @@
+package org.pageseeder.stellar.core;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the local files loaded by a stylesheet: the stylesheets it imports with
+ * <code>@import</code> and the resources it references with <code>url()</code>, such as
+ * background images and web fonts.
+ *
+ * <p>Imported stylesheets are scanned recursively. References to other schemes, such as
+ * <code>data:</code> or <code>http:</code> URIs, are ignored.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+final class StylesheetResources {
+
+  private static final Pattern COMMENT = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+
+  /**
+   * Matches <code>@import "file.css"</code>, <code>@import url(file.css)</code> and
+   * <code>url(file.png)</code>, the reference is in group 2 or 4.
+   */
+  private static final Pattern REFERENCE = Pattern.compile(
+      "(@import\\s+)?(?:url\\(\\s*(['\"]?)(.*?)\\2\\s*\\)|(['\"])(.*?)\\4)", Pattern.CASE_INSENSITIVE);
+
+  private StylesheetResources() {}
+
+  /**
+   * Returns the local files loaded by the specified stylesheet.
+   *
+   * <p>Files that do not exist are included, so that creating them can be detected.
+   *
+   * @param stylesheet the stylesheet file
+   * @return the files keyed by their path relative to the directory of the stylesheet
+   *
+   * @throws IOException if the stylesheet or an imported stylesheet could not be read
+   */
+  static Map<String, File> find(File stylesheet) throws IOException {
+    File file = stylesheet.getAbsoluteFile();
+    Map<String, File> files = new LinkedHashMap<>();
+    Set<File> scanned = new HashSet<>();
+    scanned.add(file);
+    scan(file, file.getParentFile().toPath(), files, scanned);
+    // Imported back by another stylesheet
+    files.values().remove(file);
+    return files;
+  }
+
+  private static void scan(File stylesheet, Path base, Map<String, File> files, Set<File> scanned) throws IOException {
+    if (!stylesheet.isFile()) return;
+    String css = new String(Files.readAllBytes(stylesheet.toPath()), StandardCharsets.UTF_8);
+    Matcher matcher = REFERENCE.matcher(COMMENT.matcher(css).replaceAll(""));
+    while (matcher.find()) {
+      boolean isImport = matcher.group(1) != null;
+      String reference = matcher.group(3) != null ? matcher.group(3) : matcher.group(5);
+      // Quoted strings are only references after @import
+      if (reference == null || (matcher.group(3) == null && !isImport)) continue;
+      File file = toFile(stylesheet.toURI(), reference);
+      if (file == null) continue;
+      files.putIfAbsent(base.relativize(file.toPath()).toString().replace(File.separatorChar, '/'), file);
+      if (isImport && scanned.add(file)) {
+        scan(file, base, files, scanned);
+      }
+    }
+  }
+
+  private static @Nullable File toFile(URI stylesheet, String reference) {
+    try {
+      URI uri = stylesheet.resolve(reference.trim());
+      return "file".equals(uri.getScheme()) && uri.getPath() != null ? new File(uri.getPath()) : null;
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+  }
+}
@@ -12,7 +12,7 @@ import org.w3c.dom.NodeList;
  * @author Christophe lauret
  *
  * @since 0.5.0
- * @version 0.5.2
+ * @version 0.7.0
  */
 public final class TOC {
 
@@ -48,21 +48,41 @@ public final class TOC {
   public static void injectLinks(Document doc, int maxLevel) {
     NodeList parts = doc.getDocumentElement().getElementsByTagName("toc-part");
     for (int i = 0; i < parts.getLength(); i++) {
-      Element part = (Element) parts.item(i);
-      int level = Utils.getIntAttribute(part, "level", -1);
-      if (level <= maxLevel) {
-        Element link = doc.createElement("link");
-        link.setAttribute("href", "#" + part.getAttribute("idref"));
-        link.setAttribute("prefix", part.getAttribute("prefix"));
-        link.setTextContent(Utils.normalizeSpace(part.getAttribute("title")));
-        if (part.hasChildNodes()) {
-          part.insertBefore(link, part.getFirstChild());
-        } else {
-          part.appendChild(link);
-        }
+      injectLink(doc, (Element) parts.item(i), maxLevel);
+    }
+  }
+
+  /**
+   * Returns an augmentation step injecting a "link" element into each "toc-part" element
+   * up to the specified level.
+   *
+   * @param maxLevel the maximum level of TOC parts to inject
+   * @return a new augmentation step
+   *
+   * @see #injectLinks(Document, int)
+   */
+  public static AugmentationStep linksStep(int maxLevel) {
+    return element -> {
+      if ("toc-part".equals(element.getNodeName()) && element.getParentNode() instanceof Element) {
+        injectLink(element.getOwnerDocument(), element, maxLevel);
+      }
+    };
+  }
+
+  private static void injectLink(Document doc, Element part, int maxLevel) {
+    int level = Utils.getIntAttribute(part, "level", -1);
+    if (level <= maxLevel) {
+      Element link = doc.createElement("link");
+      link.setAttribute("href", "#" + part.getAttribute("idref"));
+      link.setAttribute("prefix", part.getAttribute("prefix"));
+      link.setTextContent(Utils.normalizeSpace(part.getAttribute("title")));
+      if (part.hasChildNodes()) {
+        part.insertBefore(link, part.getFirstChild());
       } else {
-        LOGGER.debug("Ignoring toc-part level: {}", level);
+        part.appendChild(link);
       }
+    } else {
+      LOGGER.debug("Ignoring toc-part level: {}", level);
     }
   }
 
@@ -50,10 +50,46 @@ public class TitlePage {
   public static void injectTitleFragment(Document doc, @Nullable TitlePageConfig config) {
     Element firstSection = (Element)doc.getDocumentElement().getElementsByTagName("section").item(0);
     if (firstSection != null && config != null) {
-      firstSection.setAttribute("class", "title-page");
-      if (!config.isEmpty()) {
-        createTitlePageFragment(doc, config, firstSection);
+      injectTitleFragment(doc, config, firstSection);
+    }
+  }
+
+  /**
+   * Returns an augmentation step injecting a title page fragment into the first section.
+   *
+   * <p>The fragment is injected once the whole document has been visited so that the values
+   * of title page items are computed from the complete document.
+   *
+   * @param config the title page configuration (may be null, in which case nothing is injected)
+   * @return a new augmentation step
+   *
+   * @see #injectTitleFragment(Document, TitlePageConfig)
+   */
+  public static AugmentationStep step(@Nullable TitlePageConfig config) {
+    return new AugmentationStep() {
+      private @Nullable Element firstSection;
+
+      @Override
+      public void visit(Element element) {
+        if (this.firstSection == null && "section".equals(element.getNodeName()) && element.getParentNode() instanceof Element) {
+          this.firstSection = element;
+        }
       }
+
+      @Override
+      public void end(Document doc) {
+        Element section = this.firstSection;
+        if (section != null && config != null) {
+          injectTitleFragment(doc, config, section);
+        }
+      }
+    };
+  }
+
+  private static void injectTitleFragment(Document doc, TitlePageConfig config, Element firstSection) {
+    firstSection.setAttribute("class", "title-page");
+    if (!config.isEmpty()) {
+      createTitlePageFragment(doc, config, firstSection);
     }
   }
 
@@ -74,8 +110,7 @@ public class TitlePage {
         Element block = doc.createElement("block");
         block.setAttribute("label", item.getName());
         try {
-          String xpath = item.getXpath().trim();
-          String value = getValue(doc, xpath, item.getFormat());
+          String value = getValue(doc, item);
           block.setTextContent(value);
 
         } catch (Exception ex) {
@@ -115,7 +150,20 @@ public class TitlePage {
     }
   }
 
-  private static String getValue(Document doc, String xpath, @Nullable String format) throws XPathExpressionException {
+  /**
+   * Indicates whether the specified expression is one of the date and time functions
+   * evaluated without XPath.
+   *
+   * @param xpath the trimmed expression
+   * @return <code>true</code> if the expression is computed from the current date or time
+   */
+  static boolean isFunction(String xpath) {
+    return "current-date()".equals(xpath) || "current-time()".equals(xpath) || "current-dateTime()".equals(xpath);
+  }
+
+  private static String getValue(Document doc, TitlePageItem item) throws XPathExpressionException {
+    String xpath = item.getXpath().trim();
+    @Nullable String format = item.getFormat();
     switch (xpath) {
       case "current-date()":
         LocalDate date = LocalDate.now();
@@ -127,7 +175,8 @@ public class TitlePage {
         LocalDateTime dateTime = LocalDateTime.now();
         return format == null ? dateTime.toString() : dateTime.format(DateTimeFormatter.ofPattern(format));
       default:
-        String value = Utils.getElementValue(doc, xpath);
+        CompiledXPath compiled = item.getCompiledXpath();
+        String value = compiled != null ? compiled.evaluate(doc) : Utils.getElementValue(doc, xpath);
         if (format != null) {
           value = applyFormat(value, format);
         }
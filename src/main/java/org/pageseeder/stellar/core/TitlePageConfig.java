@@ -59,4 +59,17 @@ public class TitlePageConfig {
     return this.items.isEmpty();
   }
 
+  /**
+   * Returns a deep copy of this configuration with the XPath expressions of its items compiled.
+   *
+   * @return a new configuration with copies of the items of this configuration
+   */
+  TitlePageConfig copy() {
+    TitlePageConfig copy = new TitlePageConfig();
+    for (TitlePageItem item : this.items) {
+      copy.items.add(item.copy());
+    }
+    return copy;
+  }
+
 }
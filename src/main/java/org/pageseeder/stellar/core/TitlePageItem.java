@@ -2,6 +2,10 @@ package org.pageseeder.stellar.core;
 
 import org.eclipse.jdt.annotation.Nullable;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.xpath.XPathExpressionException;
 import java.util.Objects;
 
 /**
@@ -13,10 +17,12 @@ import java.util.Objects;
  * the structure and content of PDF title pages.</p>
  *
  * @since 0.6.2
- * @version 0.6.2
+ * @version 0.7.0
  */
 public class TitlePageItem {
 
+  private static final Logger LOGGER = LoggerFactory.getLogger(TitlePageItem.class);
+
   /**
    * The name/label of the title page item
    */
@@ -32,6 +38,11 @@ public class TitlePageItem {
    */
   private @Nullable String format;
 
+  /**
+   * The compiled XPath expression, only set on copies used for rendering
+   */
+  private @Nullable CompiledXPath compiled;
+
   /**
    * Sets the name of this title page item.
    *
@@ -54,6 +65,7 @@ public class TitlePageItem {
    */
   public void setXpath(String xpath) {
     this.xpath = Objects.requireNonNull(xpath);
+    this.compiled = null;
   }
 
   /**
@@ -101,4 +113,37 @@ public class TitlePageItem {
     return this.format;
   }
 
+  /**
+   * Returns the compiled XPath expression of this item.
+   *
+   * @return the compiled expression or <code>null</code> if the item was not compiled
+   */
+  @Nullable CompiledXPath getCompiledXpath() {
+    return this.compiled;
+  }
+
+  /**
+   * Returns a copy of this title page item.
+   *
+   * <p>The XPath expression of the copy is compiled so that it is only compiled once for
+   * all the documents rendered with it. If it cannot be compiled, the error is reported
+   * when the title page is generated.
+   *
+   * @return a new item with the same name, XPath and format
+   */
+  TitlePageItem copy() {
+    TitlePageItem copy = new TitlePageItem();
+    copy.name = this.name;
+    copy.xpath = this.xpath;
+    copy.format = this.format;
+    if (!TitlePage.isFunction(this.xpath.trim()) && hasNameAndXpath()) {
+      try {
+        copy.compiled = CompiledXPath.of(this.xpath.trim());
+      } catch (XPathExpressionException ex) {
+        LOGGER.warn("Invalid XPath for title page item {}: {}", this.name, ex.getMessage());
+      }
+    }
+    return copy;
+  }
+
 }
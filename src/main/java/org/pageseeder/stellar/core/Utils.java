@@ -10,11 +10,10 @@ import org.w3c.dom.NodeList;
 import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
 
@@ -120,14 +119,64 @@ public final class Utils {
     return null;
   }
 
+  /**
+   * Evaluates the XPath expression as a string, compiling it only once.
+   *
+   * @param doc the document to evaluate the expression on
+   * @param expression the XPath expression
+   *
+   * @return the string value of the expression
+   * @throws XPathExpressionException if the expression cannot be compiled or evaluated
+   */
   public static String getElementValue(Document doc, String expression) throws XPathExpressionException {
-    XPath xpath = XPathFactory.newInstance().newXPath();
-    return xpath.evaluate(expression, doc);
+    return CompiledXPath.of(expression).evaluate(doc);
   }
 
+  /**
+   * Evaluates the XPath expression as a node set, compiling it only once.
+   *
+   * @param doc the document to evaluate the expression on
+   * @param expression the XPath expression
+   *
+   * @return the matching nodes
+   * @throws XPathExpressionException if the expression cannot be compiled or evaluated
+   */
   public static NodeList getNodes(Document doc, String expression) throws XPathExpressionException {
-    XPath xpath = XPathFactory.newInstance().newXPath();
-    return (NodeList) xpath.evaluate(expression, doc, XPathConstants.NODESET);
+    return CompiledXPath.of(expression).evaluateNodes(doc);
+  }
+
+  /**
+   * Computes the SHA-256 digest of the specified content.
+   *
+   * @param content the content to digest
+   * @return the digest as a lowercase hexadecimal string
+   */
+  public static String sha256(byte[] content) {
+    return toHex(newSha256().digest(content));
+  }
+
+  /**
+   * @return a new SHA-256 message digest
+   */
+  static MessageDigest newSha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException("SHA-256 not supported", ex);
+    }
+  }
+
+  /**
+   * @param digest the bytes of a digest
+   * @return the digest as a lowercase hexadecimal string
+   */
+  static String toHex(byte[] digest) {
+    StringBuilder hex = new StringBuilder(digest.length * 2);
+    for (byte b : digest) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+      hex.append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
   }
 
   public static void writeDocumentToXML(Document doc, File file)
@@ -0,0 +1,323 @@
+package org.pageseeder.stellar.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.eclipse.jdt.annotation.Nullable;
+import org.pageseeder.stellar.core.BufferPool;
+import org.pageseeder.stellar.core.PdfRenderEngine;
+import org.pageseeder.stellar.core.RenderScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.InputSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long-running HTTP server rendering PSML documents as PDF.
+ *
+ * <p>The server keeps one {@link PdfRenderEngine} per format profile, so fonts, stylesheets
+ * and decoded images stay warm between requests and the JVM is already compiled; a request
+ * only pays for the render itself.
+ *
+ * <p>Endpoints:
+ * <ul>
+ *   <li><code>POST /render?profile=name&amp;base=uri</code>: renders the PSML in the request
+ *   body; local images are resolved relative to the <code>base</code> file URI if specified.</li>
+ *   <li><code>GET /render?profile=name&amp;path=file.psml</code>: renders a PSML file from the
+ *   document root of the server.</li>
+ *   <li><code>GET /status</code>: the state of the workers and caches as plain text.</li>
+ * </ul>
+ * The <code>profile</code> parameter defaults to {@value #DEFAULT_PROFILE}.
+ *
+ * <p>Requests are handled by a {@link RenderScheduler} which lays out a bounded number of
+ * documents concurrently. At most the number of workers plus the capacity of the queue are
+ * admitted at any time: further requests are rejected immediately with
+ * <code>429 Too Many Requests</code> rather than piling up.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+public final class RenderServer {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RenderServer.class);
+
+  /**
+   * The name of the profile used when a request does not specify one.
+   */
+  public static final String DEFAULT_PROFILE = "default";
+
+  /**
+   * The number of seconds clients are asked to wait after a request is rejected.
+   */
+  private static final String RETRY_AFTER = "1";
+
+  private final Map<String, PdfRenderEngine> profiles;
+
+  private final @Nullable File documentRoot;
+
+  private final HttpServer server;
+
+  private final RenderScheduler scheduler;
+
+  /**
+   * The permits of the requests admitted, either waiting or being handled.
+   */
+  private final Semaphore admissions;
+
+  private final int capacity;
+
+  private final AtomicInteger active = new AtomicInteger();
+
+  private volatile boolean stopping;
+
+  private final BufferPool buffers;
+
+  private final AtomicLong rendered = new AtomicLong();
+
+  private final AtomicLong rejected = new AtomicLong();
+
+  private final AtomicLong failed = new AtomicLong();
+
+  /**
+   * Creates a new server; call {@link #start()} to accept requests.
+   *
+   * @param address the address to listen on, usually a loopback address
+   * @param profiles the render engines keyed by profile name
+   * @param documentRoot the directory of the files that can be rendered by path (may be null)
+   * @param threads the number of documents rendered concurrently
+   * @param queueCapacity the maximum number of requests waiting for a worker
+   *
+   * @throws IOException if the server could not be bound to the address
+   */
+  public RenderServer(InetSocketAddress address, Map<String, PdfRenderEngine> profiles, @Nullable File documentRoot,
+                      int threads, int queueCapacity) throws IOException {
+    if (profiles.isEmpty()) throw new IllegalArgumentException("At least one profile is required");
+    if (threads < 1) throw new IllegalArgumentException("At least one worker is required");
+    if (queueCapacity < 0) throw new IllegalArgumentException("The queue capacity must be positive");
+    this.profiles = Map.copyOf(profiles);
+    this.documentRoot = documentRoot != null ? documentRoot.getCanonicalFile() : null;
+    this.scheduler = RenderScheduler.create(threads);
+    this.capacity = threads + queueCapacity;
+    this.admissions = new Semaphore(this.capacity);
+    this.buffers = new BufferPool(threads);
+    this.server = HttpServer.create(address, 0);
+    // Requests are dispatched from the server thread and handled by workers
+    this.server.createContext("/render", this::dispatch);
+    this.server.createContext("/status", this::status);
+  }
+
+  /**
+   * Starts accepting requests.
+   */
+  public void start() {
+    this.server.start();
+    LOGGER.info("Render server listening on {} with {} and profiles {}", getAddress(),
+        this.scheduler, this.profiles.keySet());
+  }
+
+  /**
+   * Stops accepting requests and waits for the current renders to complete.
+   *
+   * <p>New requests are rejected with <code>503 Service Unavailable</code> while the admitted
+   * requests are handled, the connections are only closed once they have been answered or
+   * the timeout has elapsed.
+   *
+   * @param timeout the maximum time to wait in seconds
+   */
+  public void stop(int timeout) {
+    this.stopping = true;
+    try {
+      // Drain the admitted requests before closing their connections
+      if (!this.admissions.tryAcquire(this.capacity, timeout, TimeUnit.SECONDS)) {
+        LOGGER.warn("Stopping with {} requests still admitted", this.capacity - this.admissions.availablePermits());
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    this.server.stop(0);
+    this.scheduler.close();
+  }
+
+  /**
+   * @return the address the server is bound to
+   */
+  public InetSocketAddress getAddress() {
+    return this.server.getAddress();
+  }
+
+  /**
+   * @return the number of documents rendered successfully
+   */
+  public long getRendered() {
+    return this.rendered.get();
+  }
+
+  /**
+   * @return the number of requests rejected because the queue was full
+   */
+  public long getRejected() {
+    return this.rejected.get();
+  }
+
+  /**
+   * Submits the request to the workers, or rejects it if the queue is full.
+   */
+  private void dispatch(HttpExchange exchange) {
+    if (this.stopping) {
+      sendText(exchange, 503, "Server is stopping");
+      return;
+    }
+    if (!this.admissions.tryAcquire()) {
+      this.rejected.incrementAndGet();
+      exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER);
+      sendText(exchange, 429, "Too many requests");
+      return;
+    }
+    try {
+      this.scheduler.submit(() -> {
+        try {
+          handle(exchange);
+        } finally {
+          this.admissions.release();
+        }
+        return null;
+      });
+    } catch (RejectedExecutionException ex) {
+      this.admissions.release();
+      sendText(exchange, 503, "Server is stopping");
+    }
+  }
+
+  private void handle(HttpExchange exchange) {
+    try {
+      Map<String, String> parameters = parseQuery(exchange.getRequestURI());
+      String profile = parameters.getOrDefault("profile", DEFAULT_PROFILE);
+      PdfRenderEngine engine = this.profiles.get(profile);
+      if (engine == null) {
+        sendText(exchange, 404, "Unknown profile: " + profile);
+        return;
+      }
+      InputSource source;
+      String method = exchange.getRequestMethod();
+      if ("POST".equals(method)) {
+        source = new InputSource(exchange.getRequestBody());
+        source.setSystemId(parameters.getOrDefault("base", "about:request"));
+      } else if ("GET".equals(method) && parameters.containsKey("path")) {
+        File file = resolve(parameters.get("path"));
+        if (file == null) {
+          sendText(exchange, 404, "Document not found");
+          return;
+        }
+        source = new InputSource(file.toURI().toString());
+      } else {
+        sendText(exchange, 405, "Use POST with a PSML body or GET with a path");
+        return;
+      }
+      render(exchange, engine, source);
+    } catch (Exception ex) {
+      this.failed.incrementAndGet();
+      LOGGER.warn("Unable to render {}: {}", exchange.getRequestURI(), ex.getMessage(), ex);
+      sendText(exchange, 500, "Unable to render document: " + ex.getMessage());
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void render(HttpExchange exchange, PdfRenderEngine engine, InputSource source) throws IOException {
+    long start = System.nanoTime();
+    this.active.incrementAndGet();
+    try (BufferPool.Buffer pdf = engine.render(source, this.buffers, this.scheduler)) {
+      exchange.getResponseHeaders().set("Content-Type", "application/pdf");
+      exchange.getResponseHeaders().set("X-Render-Time", Long.toString((System.nanoTime() - start) / 1_000_000));
+      exchange.sendResponseHeaders(200, pdf.size());
+      try (OutputStream out = exchange.getResponseBody()) {
+        pdf.writeTo(out);
+      }
+    } finally {
+      this.active.decrementAndGet();
+    }
+    this.rendered.incrementAndGet();
+  }
+
+  /**
+   * Resolves the specified path within the document root.
+   *
+   * @return the file or <code>null</code> if there is no document root or the path is outside of it
+   */
+  private @Nullable File resolve(@Nullable String path) throws IOException {
+    File root = this.documentRoot;
+    if (root == null || path == null) return null;
+    File file = new File(root, path).getCanonicalFile();
+    if (!file.toPath().startsWith(root.toPath()) || !file.isFile()) return null;
+    return file;
+  }
+
+  private void status(HttpExchange exchange) throws IOException {
+    try {
+      StringBuilder status = new StringBuilder();
+      status.append("scheduler=").append(this.scheduler).append('\n');
+      status.append("admitted=").append(this.capacity - this.admissions.availablePermits()).append('\n');
+      status.append("active=").append(this.active).append('\n');
+      status.append("rendered=").append(this.rendered).append('\n');
+      status.append("rejected=").append(this.rejected).append('\n');
+      status.append("failed=").append(this.failed).append('\n');
+      status.append("buffers=").append(this.buffers).append('\n');
+      for (Map.Entry<String, PdfRenderEngine> profile : this.profiles.entrySet()) {
+        status.append("profile.").append(profile.getKey()).append('=').append(profile.getValue().getImageCache()).append('\n');
+      }
+      sendText(exchange, 200, status.toString());
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static void sendText(HttpExchange exchange, int code, String message) {
+    try {
+      byte[] body = message.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/plain;charset=utf-8");
+      exchange.sendResponseHeaders(code, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    } catch (IOException ex) {
+      LOGGER.debug("Unable to send response: {}", ex.getMessage());
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static Map<String, String> parseQuery(URI uri) throws UnsupportedEncodingException {
+    Map<String, String> parameters = new HashMap<>();
+    String query = uri.getRawQuery();
+    if (query == null) return parameters;
+    for (String pair : query.split("&")) {
+      int equals = pair.indexOf('=');
+      if (equals > 0) {
+        parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+            URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+      }
+    }
+    return parameters;
+  }
+
+  @Override
+  public String toString() {
+    return "RenderServer{address=" + getAddress() + ", profiles=" + this.profiles.keySet() + '}';
+  }
+}
@@ -0,0 +1,5 @@
+/**
+ * A local HTTP server rendering PSML documents as PDF with warm engines.
+ */
+@org.eclipse.jdt.annotation.NonNullByDefault
+package org.pageseeder.stellar.server;
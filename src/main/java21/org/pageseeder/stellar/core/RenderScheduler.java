@@ -0,0 +1,133 @@
+package org.pageseeder.stellar.core;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Schedules the work of batch exports and of the render server.
+ *
+ * <p>Each document is handled by a task {@linkplain #submit(Callable) submitted} to the
+ * scheduler, which reads the inputs and writes the output. The CPU-bound part of the render,
+ * augmentation and layout, is run through {@link #compute(Task)}.
+ *
+ * <p>This is the Java 21 version of this class: tasks run on virtual threads so that any
+ * number of documents can wait on I/O, and computations are handed to a bounded pool of
+ * platform threads, on which the submitting virtual thread waits without holding a carrier.
+ *
+ * @author Christophe Lauret
+ *
+ * @since 0.7.0
+ * @version 0.7.0
+ */
+public final class RenderScheduler implements AutoCloseable {
+
+  private final ExecutorService io;
+
+  private final ExecutorService cpu;
+
+  private final int threads;
+
+  private RenderScheduler(ExecutorService io, ExecutorService cpu, int threads) {
+    this.io = io;
+    this.cpu = cpu;
+    this.threads = threads;
+  }
+
+  /**
+   * Creates a new scheduler.
+   *
+   * @param threads the maximum number of documents laid out concurrently
+   * @return a new scheduler
+   */
+  public static RenderScheduler create(int threads) {
+    if (threads < 1) throw new IllegalArgumentException("At least one thread is required");
+    ExecutorService io = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("stellar-io-", 1).factory());
+    ExecutorService cpu = Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("stellar-render-", 1).factory());
+    return new RenderScheduler(io, cpu, threads);
+  }
+
+  /**
+   * Submits a task handling a document.
+   *
+   * @param task the task
+   * @param <T> the type of result
+   * @return the future result of the task
+   */
+  public <T> Future<T> submit(Callable<T> task) {
+    return this.io.submit(task);
+  }
+
+  /**
+   * Runs a CPU-bound computation from a submitted task and waits for its result.
+   *
+   * @param task the computation
+   * @param <T> the type of result
+   * @return the result of the computation
+   *
+   * @throws IOException if the computation failed with an I/O error
+   */
+  public <T> T compute(Task<T> task) throws IOException {
+    Future<T> result = this.cpu.submit(task::call);
+    try {
+      return result.get();
+    } catch (InterruptedException ex) {
+      result.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the render");
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException io) throw io;
+      if (cause instanceof RuntimeException runtime) throw runtime;
+      if (cause instanceof Error error) throw error;
+      throw new IOException("Unable to render document", cause);
+    }
+  }
+
+  /**
+   * @return <code>true</code> if computations run on other threads than submitted tasks
+   */
+  public boolean isOffloading() {
+    return true;
+  }
+
+  /**
+   * @return the maximum number of documents laid out concurrently
+   */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * Stops the threads of this scheduler, interrupting running tasks.
+   */
+  @Override
+  public void close() {
+    this.io.shutdownNow();
+    this.cpu.shutdownNow();
+  }
+
+  @Override
+  public String toString() {
+    return "RenderScheduler{threads=" + this.threads + ", virtual=true}";
+  }
+
+  /**
+   * A computation that may fail with an I/O error.
+   *
+   * @param <T> the type of result
+   */
+  @FunctionalInterface
+  public interface Task<T> {
+
+    /**
+     * @return the result of the computation
+     * @throws IOException if an I/O error occurs
+     */
+    T call() throws IOException;
+  }
+}
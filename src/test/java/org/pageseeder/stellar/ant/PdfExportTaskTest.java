@@ -3,6 +3,7 @@ package org.pageseeder.stellar.ant;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.ProjectHelper;
+import org.apache.tools.ant.types.FileSet;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -80,6 +81,11 @@ final class PdfExportTaskTest {
     runAntTarget("test-turtles-styled", "build/test/out/ant_turtles_styled.pdf");
   }
 
+  @Test
+  void testAntBuildFile_Whales_Downsampled() {
+    runAntTarget("test-whales-downsampled", "build/test/out/ant_whales_downsampled.pdf");
+  }
+
   @Test
   void testAntBuildFile_Basic_Default() {
     runAntTarget("test-basic-default", "build/test/out/ant_basic_default.pdf");
@@ -120,6 +126,24 @@ final class PdfExportTaskTest {
     runAntTarget("test-useless-styled", "build/test/out/ant_useless_styled.pdf");
   }
 
+  @Test
+  void testAntBuildFile_Batch_Styled() {
+    runAntTarget("test-batch-styled", "build/test/out/batch/whales.pdf");
+    Assertions.assertTrue(new File("build/test/out/batch/turtles.pdf").exists());
+    Assertions.assertTrue(new File("build/test/out/batch/basic.pdf").exists());
+  }
+
+  @Test
+  void testBatchMissingTodir() {
+    PdfExportTask task = new PdfExportTask();
+    task.setProject(newProject());
+    FileSet fileset = new FileSet();
+    fileset.setDir(TEST_DIR.resolve("src/psml").toFile());
+    fileset.setIncludes("whales.psml");
+    task.addFileset(fileset);
+    Assertions.assertThrows(BuildException.class, task::execute);
+  }
+
   @Test
   void testMissingDest() {
     PdfExportTask task = new PdfExportTask();
@@ -0,0 +1,104 @@
+package org.pageseeder.stellar.batch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.pageseeder.stellar.core.PdfRenderConfig;
+import org.pageseeder.stellar.core.PdfRenderEngine;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Function;
+
+final class RenderBatchTest {
+
+  @Test
+  void testManifest_Directory(@TempDir Path dir) throws Exception {
+    Path docs = dir.resolve("docs");
+    Files.createDirectories(docs.resolve("sub"));
+    Files.write(docs.resolve("a.psml"), new byte[0]);
+    Files.write(docs.resolve("sub/b.psml"), new byte[0]);
+    Files.write(docs.resolve("sub/c.xml"), new byte[0]);
+    Properties manifest = new Properties();
+    manifest.setProperty("job.docs.dir", docs.toString());
+    manifest.setProperty("job.docs.output", dir.resolve("out") + "/{path}.pdf");
+
+    List<RenderBatch.Job> jobs = RenderBatch.fromManifest(manifest, settings -> newEngine()).getJobs();
+    Assertions.assertEquals(2, jobs.size());
+    Assertions.assertEquals("docs/a.psml", jobs.get(0).getName());
+    Assertions.assertEquals(dir.resolve("out/a.pdf").toFile(), jobs.get(0).getOutput());
+    Assertions.assertEquals(dir.resolve("out/sub/b.pdf").toFile(), jobs.get(1).getOutput());
+  }
+
+  @Test
+  void testManifest_SharedEngines() {
+    Properties manifest = new Properties();
+    manifest.setProperty("maxTocLevel", "3");
+    manifest.setProperty("batch.threads", "2");
+    manifest.setProperty("job.a.source", "a.psml");
+    manifest.setProperty("job.a.output", "a.pdf");
+    manifest.setProperty("job.b.source", "b.psml");
+    manifest.setProperty("job.b.output", "b.pdf");
+    manifest.setProperty("job.c.source", "c.psml");
+    manifest.setProperty("job.c.output", "c.pdf");
+    manifest.setProperty("job.c.maxTocLevel", "2");
+    List<Properties> created = new ArrayList<>();
+    Function<Properties, PdfRenderEngine> engines = settings -> {
+      created.add(settings);
+      return newEngine();
+    };
+
+    List<RenderBatch.Job> jobs = RenderBatch.fromManifest(manifest, engines).getJobs();
+    Assertions.assertEquals(3, jobs.size());
+    Assertions.assertSame(jobs.get(0).getEngine(), jobs.get(1).getEngine());
+    Assertions.assertNotSame(jobs.get(0).getEngine(), jobs.get(2).getEngine());
+    Assertions.assertEquals(2, created.size());
+    Assertions.assertEquals("3", created.get(0).getProperty("maxTocLevel"));
+    Assertions.assertNull(created.get(0).getProperty("batch.threads"));
+    Assertions.assertEquals("2", created.get(1).getProperty("maxTocLevel"));
+  }
+
+  @Test
+  void testManifest_Invalid() {
+    Properties noOutput = new Properties();
+    noOutput.setProperty("job.a.source", "a.psml");
+    Assertions.assertThrows(IllegalArgumentException.class, () -> RenderBatch.fromManifest(noOutput, settings -> newEngine()));
+
+    Properties sameOutput = new Properties();
+    sameOutput.setProperty("job.a.source", "a.psml");
+    sameOutput.setProperty("job.a.output", "out.pdf");
+    sameOutput.setProperty("job.b.source", "b.psml");
+    sameOutput.setProperty("job.b.output", "out.pdf");
+    Assertions.assertThrows(IllegalArgumentException.class, () -> RenderBatch.fromManifest(sameOutput, settings -> newEngine()));
+
+    Properties noPattern = new Properties();
+    noPattern.setProperty("job.a.dir", "src/test/resources/psml");
+    noPattern.setProperty("job.a.output", "out.pdf");
+    Assertions.assertThrows(IllegalArgumentException.class, () -> RenderBatch.fromManifest(noPattern, settings -> newEngine()));
+  }
+
+  @Test
+  void testRun_FailedJob(@TempDir Path dir) throws Exception {
+    Properties manifest = new Properties();
+    manifest.setProperty("job.basic.source", "src/test/resources/psml/basic.psml");
+    manifest.setProperty("job.basic.output", dir.resolve("basic.pdf").toString());
+    manifest.setProperty("job.missing.source", dir.resolve("missing.psml").toString());
+    manifest.setProperty("job.missing.output", dir.resolve("missing.pdf").toString());
+
+    List<RenderBatch.Result> results = RenderBatch.fromManifest(manifest, settings -> newEngine()).run(2);
+    Assertions.assertEquals(2, results.size());
+    Assertions.assertTrue(results.get(0).isSuccessful());
+    Assertions.assertTrue(new File(dir.toFile(), "basic.pdf").length() > 0);
+    Assertions.assertFalse(results.get(1).isSuccessful());
+    Assertions.assertTrue(results.get(1).toString().startsWith("FAILED missing"));
+  }
+
+  private static PdfRenderEngine newEngine() {
+    return new PdfRenderEngine(PdfRenderConfig.builder().build());
+  }
+
+}
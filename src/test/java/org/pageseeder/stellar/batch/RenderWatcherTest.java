@@ -0,0 +1,105 @@
+package org.pageseeder.stellar.batch;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.pageseeder.stellar.core.PdfRenderConfig;
+import org.pageseeder.stellar.core.PdfRenderEngine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+final class RenderWatcherTest {
+
+  @Test
+  void testRenderOnChange(@TempDir Path dir) throws Exception {
+    Path a = dir.resolve("a.psml");
+    Path b = dir.resolve("b.psml");
+    Files.copy(Paths.get("src/test/resources/psml/basic.psml"), a);
+    Files.copy(Paths.get("src/test/resources/psml/basic.psml"), b);
+    Properties manifest = new Properties();
+    manifest.setProperty("job.a.source", a.toString());
+    manifest.setProperty("job.a.output", dir.resolve("out/a.pdf").toString());
+    manifest.setProperty("job.b.source", b.toString());
+    manifest.setProperty("job.b.output", dir.resolve("out/b.pdf").toString());
+
+    BlockingQueue<List<RenderBatch.Result>> renders = new LinkedBlockingQueue<>();
+    try (RenderWatcher watcher = new RenderWatcher(manifest, settings -> new PdfRenderEngine(PdfRenderConfig.builder().build()),
+        1, 50, renders::add)) {
+      Thread thread = new Thread(() -> {
+        try {
+          watcher.run();
+        } catch (Exception ex) {
+          throw new IllegalStateException(ex);
+        }
+      });
+      thread.start();
+      List<RenderBatch.Result> initial = renders.poll(30, TimeUnit.SECONDS);
+      Assertions.assertNotNull(initial);
+      Assertions.assertEquals(2, initial.size());
+
+      // Only the modified document is rendered again
+      Files.write(b, Files.readAllBytes(b));
+      List<RenderBatch.Result> changed = renders.poll(30, TimeUnit.SECONDS);
+      Assertions.assertNotNull(changed);
+      Assertions.assertEquals(1, changed.size());
+      Assertions.assertEquals("b", changed.get(0).getJob().getName());
+
+      // Unrelated files are ignored
+      Files.write(dir.resolve("notes.txt"), new byte[]{1});
+      Assertions.assertNull(renders.poll(500, TimeUnit.MILLISECONDS));
+
+      watcher.close();
+      thread.join(10_000);
+      Assertions.assertFalse(thread.isAlive());
+    }
+  }
+
+  @Test
+  void testFontChanges(@TempDir Path dir) throws Exception {
+    Path a = dir.resolve("a.psml");
+    Path fonts = Files.createDirectory(dir.resolve("fonts"));
+    Files.copy(Paths.get("src/test/resources/psml/basic.psml"), a);
+    Properties manifest = new Properties();
+    manifest.setProperty("job.a.source", a.toString());
+    manifest.setProperty("job.a.output", dir.resolve("out/a.pdf").toString());
+
+    BlockingQueue<List<RenderBatch.Result>> renders = new LinkedBlockingQueue<>();
+    try (RenderWatcher watcher = new RenderWatcher(manifest,
+        settings -> new PdfRenderEngine(PdfRenderConfig.builder().fontsDir(fonts.toFile()).build()),
+        1, 50, renders::add)) {
+      Thread thread = new Thread(() -> {
+        try {
+          watcher.run();
+        } catch (Exception ex) {
+          throw new IllegalStateException(ex);
+        }
+      });
+      thread.start();
+      Assertions.assertNotNull(renders.poll(30, TimeUnit.SECONDS));
+
+      // The font index, temporary and other files in the fonts directory are ignored
+      Files.write(fonts.resolve(".stellar-fonts.idx"), new byte[]{1});
+      Files.write(fonts.resolve("fonts.idx.tmp"), new byte[]{1});
+      Files.write(fonts.resolve("OFL.md"), new byte[]{1});
+      Assertions.assertNull(renders.poll(500, TimeUnit.MILLISECONDS));
+
+      // A new font renders the document again
+      Files.copy(Paths.get("src/test/resources/fonts/AmaticSC-Regular.ttf"), fonts.resolve("AmaticSC-Regular.ttf"));
+      List<RenderBatch.Result> changed = renders.poll(30, TimeUnit.SECONDS);
+      Assertions.assertNotNull(changed);
+      Assertions.assertEquals(1, changed.size());
+
+      watcher.close();
+      thread.join(10_000);
+      Assertions.assertFalse(thread.isAlive());
+    }
+  }
+
+}
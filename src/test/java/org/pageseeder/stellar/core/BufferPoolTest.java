@@ -0,0 +1,69 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+final class BufferPoolTest {
+
+  @Test
+  void testAcquire_Reuse() {
+    BufferPool pool = new BufferPool(2);
+    BufferPool.Buffer buffer = pool.acquire();
+    buffer.close();
+    buffer.close();
+    Assertions.assertEquals(1, pool.getIdle());
+    Assertions.assertSame(buffer, pool.acquire());
+    Assertions.assertEquals(1, pool.getAllocations());
+    Assertions.assertEquals(1, pool.getReuses());
+    Assertions.assertEquals(0, buffer.size());
+  }
+
+  @Test
+  void testWrite_Grows() throws Exception {
+    for (boolean direct : new boolean[]{false, true}) {
+      BufferPool pool = new BufferPool(1, 4, 1024, direct);
+      try (BufferPool.Buffer buffer = pool.acquire()) {
+        OutputStream out = buffer.getOutputStream();
+        out.write("%PDF-1.4".getBytes(StandardCharsets.US_ASCII));
+        out.write('\n');
+        out.close();
+        Assertions.assertEquals(9, buffer.size());
+        ByteBuffer view = buffer.toByteBuffer();
+        Assertions.assertTrue(view.isReadOnly());
+        Assertions.assertEquals(9, view.remaining());
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        buffer.writeTo(stream);
+        Assertions.assertEquals("%PDF-1.4\n", stream.toString("US-ASCII"));
+
+        ByteArrayOutputStream channel = new ByteArrayOutputStream();
+        buffer.writeTo(Channels.newChannel(channel));
+        Assertions.assertEquals("%PDF-1.4\n", channel.toString("US-ASCII"));
+      }
+      Assertions.assertEquals(1, pool.getIdle());
+    }
+  }
+
+  @Test
+  void testRelease_TooLarge() throws Exception {
+    BufferPool pool = new BufferPool(1, 4, 8, false);
+    BufferPool.Buffer buffer = pool.acquire();
+    buffer.getOutputStream().write(new byte[16]);
+    buffer.close();
+    Assertions.assertEquals(0, pool.getIdle());
+  }
+
+  @Test
+  void testWrite_Closed() {
+    BufferPool pool = new BufferPool(1);
+    BufferPool.Buffer buffer = pool.acquire();
+    buffer.close();
+    Assertions.assertThrows(IllegalStateException.class, () -> buffer.getOutputStream().write(1));
+  }
+}
@@ -0,0 +1,189 @@
+package org.pageseeder.stellar.core;
+
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.PdfArray;
+import com.lowagie.text.pdf.PdfDictionary;
+import com.lowagie.text.pdf.PdfIndirectReference;
+import com.lowagie.text.pdf.PdfName;
+import com.lowagie.text.pdf.PdfObject;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.parser.PdfTextExtractor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class ChunkedRenderTest {
+
+  private static final Path TEST_DIR = Paths.get("build/test/chunked");
+
+  private static File input;
+
+  @BeforeAll
+  static void setup() throws IOException {
+    Files.createDirectories(TEST_DIR);
+    input = TEST_DIR.resolve("manual.psml").toFile();
+    PsmlGenerator.forPages(40).write(input);
+  }
+
+  @Test
+  void testRender_PageNumbers() throws Exception {
+    File output = render(4, "chunked.pdf");
+    PdfReader reader = new PdfReader(output.getPath());
+    try {
+      PdfTextExtractor extractor = new PdfTextExtractor(reader);
+      int pages = reader.getNumberOfPages();
+      // The first page has no footer
+      for (int page = 2; page <= pages; page++) {
+        String text = extractor.getTextFromPage(page);
+        Assertions.assertTrue(text.contains("Page " + page + " of " + pages), "Page " + page + ": " + text);
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  void testRender_TocAndOutline() throws Exception {
+    File output = render(4, "chunked.pdf");
+    PdfReader reader = new PdfReader(output.getPath());
+    try {
+      PdfTextExtractor extractor = new PdfTextExtractor(reader);
+      List<OutlineItem> outline = getOutline(reader);
+      Assertions.assertTrue(outline.size() > 4);
+      // The table of contents is on the pages before the first heading
+      int first = outline.get(0).page;
+      StringBuilder contents = new StringBuilder();
+      for (int page = 1; page < first; page++) {
+        contents.append(extractor.getTextFromPage(page)).append('\n');
+      }
+      String toc = contents.toString().replaceAll("\\h+", " ");
+      for (OutlineItem item : outline) {
+        String title = item.title;
+        int page = item.page;
+        float y = item.y;
+        // The outline goes to the heading and the TOC shows the same page number
+        Rectangle size = reader.getPageSize(page);
+        Assertions.assertTrue(y > 0 && y < size.getHeight(), title + " at " + y);
+        String heading = title.substring(title.indexOf(' ') + 1);
+        Assertions.assertTrue(extractor.getTextFromPage(page).contains(heading.substring(0, heading.lastIndexOf(' '))),
+            title + " on page " + page);
+        Assertions.assertTrue(toc.lines().anyMatch(line -> line.contains(title) && line.trim().endsWith(" " + page)),
+            title + " with page " + page + " in TOC:\n" + toc);
+      }
+      // Links between chunks are internal links
+      for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+        PdfArray annotations = reader.getPageN(page).getAsArray(PdfName.ANNOTS);
+        if (annotations == null) continue;
+        for (int i = 0; i < annotations.size(); i++) {
+          PdfDictionary action = annotations.getAsDict(i).getAsDict(PdfName.A);
+          Assertions.assertTrue(action == null || action.get(PdfName.URI) == null, "URI action on page " + page);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  void testRender_SharedFonts() throws Exception {
+    File sequential = render(1, "sequential.pdf");
+    File chunked = render(4, "chunked-fonts.pdf");
+    Assertions.assertEquals(countFontFiles(sequential), countFontFiles(chunked));
+  }
+
+  @Test
+  void testRender_NoPageBreaks() throws Exception {
+    // Chapters do not start on a new page, so the document is rendered as a whole
+    File sequential = render(1, "sequential-basic.pdf", "src/test/resources/css/basic.css");
+    File chunked = render(4, "chunked-basic.pdf", "src/test/resources/css/basic.css");
+    PdfReader expected = new PdfReader(sequential.getPath());
+    PdfReader actual = new PdfReader(chunked.getPath());
+    try {
+      Assertions.assertEquals(expected.getNumberOfPages(), actual.getNumberOfPages());
+    } finally {
+      expected.close();
+      actual.close();
+    }
+  }
+
+  private static File render(int parallelism, String name) throws IOException {
+    return render(parallelism, name, "src/test/resources/css/chunked.css");
+  }
+
+  private static File render(int parallelism, String name, String stylesheet) throws IOException {
+    PdfRenderEngine engine = new PdfRenderEngine(PdfRenderConfig.builder()
+        .parallelism(parallelism)
+        .fontsDir(new File("src/test/resources/fonts"))
+        .authorStylesheet(new File(stylesheet))
+        .build());
+    File output = TEST_DIR.resolve(name).toFile();
+    engine.render(input, output);
+    return output;
+  }
+
+  /**
+   * @return the top-level items of the outline of the PDF
+   */
+  private static List<OutlineItem> getOutline(PdfReader reader) {
+    Map<Integer, Integer> pages = new HashMap<>();
+    for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+      pages.put(reader.getPageOrigRef(page).getNumber(), page);
+    }
+    List<OutlineItem> items = new ArrayList<>();
+    PdfDictionary outlines = reader.getCatalog().getAsDict(PdfName.OUTLINES);
+    if (outlines == null) return items;
+    for (PdfDictionary item = outlines.getAsDict(PdfName.FIRST); item != null; item = item.getAsDict(PdfName.NEXT)) {
+      PdfArray destination = item.getAsArray(PdfName.DEST);
+      int page = pages.get(((PdfIndirectReference) destination.getPdfObject(0)).getNumber());
+      items.add(new OutlineItem(item.getAsString(PdfName.TITLE).toUnicodeString(), page, destination.getAsNumber(3).floatValue()));
+    }
+    return items;
+  }
+
+  /**
+   * @return the number of embedded font programs
+   */
+  private static int countFontFiles(File pdf) throws IOException {
+    PdfReader reader = new PdfReader(pdf.getPath());
+    try {
+      int count = 0;
+      for (int i = 1; i < reader.getXrefSize(); i++) {
+        PdfObject object = reader.getPdfObject(i);
+        if (object instanceof PdfDictionary && PdfName.FONTDESCRIPTOR.equals(((PdfDictionary) object).get(PdfName.TYPE))) {
+          count++;
+        }
+      }
+      return count;
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * An item of the outline and its destination.
+   */
+  private static final class OutlineItem {
+
+    private final String title;
+
+    private final int page;
+
+    private final float y;
+
+    OutlineItem(String title, int page, float y) {
+      this.title = title;
+      this.page = page;
+      this.y = y;
+    }
+  }
+}
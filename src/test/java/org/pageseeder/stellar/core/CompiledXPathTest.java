@@ -0,0 +1,69 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+final class CompiledXPathTest {
+
+  private static final String XML = "<document><metadata><properties>"
+      + "<property name=\"subtitle\" value=\"Whales\"/>"
+      + "</properties></metadata></document>";
+
+  @Test
+  void testOf_Cached() throws Exception {
+    CompiledXPath first = CompiledXPath.of("//property[@name='subtitle']/@value");
+    CompiledXPath second = CompiledXPath.of("//property[@name='subtitle']/@value");
+    Assertions.assertSame(first, second);
+    Assertions.assertEquals("Whales", first.evaluate(parse(XML)));
+  }
+
+  @Test
+  void testOf_Invalid() {
+    Assertions.assertThrows(XPathExpressionException.class, () -> CompiledXPath.of("//property["));
+  }
+
+  @Test
+  void testEvaluate_Concurrent() throws Exception {
+    CompiledXPath xpath = CompiledXPath.of("count(//property)");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        Document doc = parse(XML);
+        results.add(executor.submit(() -> xpath.evaluate(doc)));
+      }
+      for (Future<String> result : results) {
+        Assertions.assertEquals("1", result.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void testTitlePageItem_Copy() throws Exception {
+    TitlePageConfig config = new TitlePageConfig();
+    config.addItem("subtitle", " //property[@name='subtitle']/@value ");
+    config.addItem("date", "current-date()");
+    TitlePageConfig copy = config.copy();
+    Assertions.assertNull(config.getItems().get(0).getCompiledXpath());
+    Assertions.assertNotNull(copy.getItems().get(0).getCompiledXpath());
+    Assertions.assertNull(copy.getItems().get(1).getCompiledXpath());
+  }
+
+  private static Document parse(String xml) throws Exception {
+    return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+  }
+}
@@ -0,0 +1,49 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+final class DiagnosticsSinkTest {
+
+  @Test
+  void testSubmit(@TempDir Path dir) throws Exception {
+    DiagnosticsSink sink = new DiagnosticsSink(dir.resolve("diagnostics").toFile(), DiagnosticsSink.DEFAULT_MAX_BYTES);
+    Assertions.assertTrue(sink.submit(newDocument(10), "test.pdf.psml"));
+    Assertions.assertTrue(sink.await(10, TimeUnit.SECONDS));
+    File dump = dir.resolve("diagnostics/test.pdf.psml").toFile();
+    Assertions.assertTrue(dump.exists());
+    String xml = new String(Files.readAllBytes(dump.toPath()), StandardCharsets.UTF_8);
+    Assertions.assertTrue(xml.contains("<document>"));
+    Assertions.assertTrue(xml.contains("</document>"));
+  }
+
+  @Test
+  void testSubmit_Truncated(@TempDir Path dir) throws Exception {
+    DiagnosticsSink sink = new DiagnosticsSink(dir.toFile(), 100);
+    Assertions.assertTrue(sink.submit(newDocument(1000), "large.pdf.psml"));
+    Assertions.assertTrue(sink.await(10, TimeUnit.SECONDS));
+    Assertions.assertEquals(100, dir.resolve("large.pdf.psml").toFile().length());
+  }
+
+  private static Document newDocument(int paragraphs) throws Exception {
+    Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    Element root = doc.createElement("document");
+    doc.appendChild(root);
+    for (int i = 0; i < paragraphs; i++) {
+      Element para = doc.createElement("para");
+      para.setTextContent("Paragraph " + i);
+      root.appendChild(para);
+    }
+    return doc;
+  }
+}
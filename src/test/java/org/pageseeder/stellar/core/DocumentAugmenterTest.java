@@ -0,0 +1,59 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.util.List;
+
+final class DocumentAugmenterTest {
+
+  @Test
+  void testAugment_SameAsSequential() throws Exception {
+    for (String name : List.of("whales", "turtles", "basic", "policy-processed")) {
+      Document expected = load(name);
+      TOC.injectLinks(expected, 2);
+      TitlePage.injectTitleFragment(expected, new TitlePageConfig());
+      PsmlDecorator.addClasses(expected);
+      PsmlDecorator.addIds(expected);
+
+      Document actual = load(name);
+      Bookmarks.Collector bookmarks = Bookmarks.collector(3);
+      new DocumentAugmenter(List.of(
+          TOC.linksStep(2),
+          TitlePage.step(new TitlePageConfig()),
+          PsmlDecorator.classesStep(),
+          PsmlDecorator.idsStep(),
+          bookmarks)).augment(actual);
+
+      Assertions.assertTrue(expected.isEqualNode(actual), name);
+      Assertions.assertEquals(Bookmarks.load(expected, 3).toString(), bookmarks.getBookmarks().toString(), name);
+    }
+  }
+
+  @Test
+  void testAugment_VisitsInsertedChildren() throws Exception {
+    Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    doc.appendChild(doc.createElement("document")).appendChild(doc.createElement("section"));
+    StringBuilder visited = new StringBuilder();
+    new DocumentAugmenter(List.of(
+        element -> {
+          if ("section".equals(element.getNodeName())) element.appendChild(doc.createElement("fragment"));
+        },
+        element -> visited.append(element.getNodeName()).append(' '))).augment(doc);
+    Assertions.assertEquals("document section fragment ", visited.toString());
+  }
+
+  @Test
+  void testGetBookmarks_NotTraversed() {
+    Assertions.assertThrows(IllegalStateException.class, () -> Bookmarks.collector(3).getBookmarks());
+  }
+
+  private static Document load(String name) throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    return factory.newDocumentBuilder().parse(new File("src/test/resources/psml/" + name + ".psml"));
+  }
+}
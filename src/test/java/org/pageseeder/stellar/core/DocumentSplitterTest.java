@@ -0,0 +1,138 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.util.List;
+import java.util.function.Predicate;
+
+final class DocumentSplitterTest {
+
+  @Test
+  void testSplit_SmallDocument() throws Exception {
+    Document doc = newDocument(4, 10);
+    List<DocumentSplitter.Chunk> chunks = DocumentSplitter.split(doc, 4, 500, () -> section -> true);
+    Assertions.assertEquals(1, chunks.size());
+    Assertions.assertSame(doc, chunks.get(0).getDocument());
+  }
+
+  @Test
+  void testSplit_SingleSection() throws Exception {
+    Document doc = newDocument(1, 5000);
+    List<DocumentSplitter.Chunk> chunks = DocumentSplitter.split(doc, 4, 500, () -> section -> true);
+    Assertions.assertEquals(1, chunks.size());
+  }
+
+  @Test
+  void testSplit_AtSections() throws Exception {
+    Document doc = newDocument(8, 200);
+    List<DocumentSplitter.Chunk> chunks = DocumentSplitter.split(doc, 4, 400, () -> section -> true);
+    Assertions.assertEquals(4, chunks.size());
+    int sections = 0;
+    for (DocumentSplitter.Chunk chunk : chunks) {
+      Element root = chunk.getDocument().getDocumentElement();
+      Assertions.assertEquals("document", root.getNodeName());
+      Assertions.assertEquals("book", root.getAttribute("level"));
+      Node first = root.getFirstChild();
+      Assertions.assertEquals("section", first.getNodeName());
+      Assertions.assertTrue(chunk.contains(((Element) first).getAttribute("id")));
+      sections += root.getElementsByTagName("section").getLength();
+    }
+    Assertions.assertEquals(8, sections);
+  }
+
+  @Test
+  void testSplit_PageBreaks() throws Exception {
+    Document doc = newDocument(8, 200);
+    List<DocumentSplitter.Chunk> chunks = DocumentSplitter.split(doc, 4, 400,
+        () -> section -> "s5".equals(section.getAttribute("id")));
+    Assertions.assertEquals(2, chunks.size());
+    Assertions.assertTrue(chunks.get(1).contains("s5"));
+    Assertions.assertFalse(chunks.get(1).contains("s4"));
+  }
+
+  @Test
+  void testSplit_NoPageBreaks() throws Exception {
+    Document doc = newDocument(8, 200);
+    List<DocumentSplitter.Chunk> chunks = DocumentSplitter.split(doc, 4, 400, () -> section -> false);
+    Assertions.assertEquals(1, chunks.size());
+    Assertions.assertSame(doc, chunks.get(0).getDocument());
+  }
+
+  @Test
+  void testStartsPage() throws Exception {
+    Document doc = newDocument(3, 1);
+    Element heading = doc.createElement("heading");
+    heading.setAttribute("level", "2");
+    Element fragment = (Element) doc.getElementById("s2").getFirstChild();
+    fragment.insertBefore(heading, fragment.getFirstChild());
+
+    // Only the heading at the start of the third section has a page break
+    Predicate<Element> basic = startsPage(doc, "src/test/resources/css/basic.css");
+    Assertions.assertFalse(basic.test(doc.getElementById("s1")));
+    Assertions.assertTrue(basic.test(doc.getElementById("s2")));
+
+    // Every section after the first has a page break
+    Predicate<Element> chunked = startsPage(doc, "src/test/resources/css/chunked.css");
+    Assertions.assertFalse(chunked.test(doc.getElementById("s0")));
+    Assertions.assertTrue(chunked.test(doc.getElementById("s1")));
+  }
+
+  @Test
+  void testSplit_CrossChunkLinks() throws Exception {
+    Document doc = newDocument(4, 200);
+    Element link = doc.createElement("link");
+    link.setAttribute("href", "#s3");
+    doc.getElementById("s0").appendChild(link);
+    Element local = doc.createElement("link");
+    local.setAttribute("href", "#s0");
+    doc.getElementById("s0").appendChild(local);
+
+    List<DocumentSplitter.Chunk> chunks = DocumentSplitter.split(doc, 2, 100, () -> section -> true);
+    Assertions.assertEquals(2, chunks.size());
+    Element first = chunks.get(0).getDocument().getDocumentElement();
+    Element rewritten = (Element) first.getElementsByTagName("link").item(0);
+    Element unchanged = (Element) first.getElementsByTagName("link").item(1);
+    Assertions.assertEquals(DocumentSplitter.CROSS_CHUNK_SCHEME + "s3", rewritten.getAttribute("href"));
+    Assertions.assertEquals("#s0", unchanged.getAttribute("href"));
+    Assertions.assertTrue(chunks.get(1).contains("s3"));
+    Assertions.assertEquals("#s3", link.getAttribute("href"));
+  }
+
+  private static Predicate<Element> startsPage(Document doc, String stylesheet) {
+    PdfRenderEngine engine = new PdfRenderEngine(PdfRenderConfig.builder()
+        .authorStylesheet(new File(stylesheet))
+        .build());
+    ITextRenderer renderer = engine.newRenderer(null);
+    renderer.setDocument(doc, new File("test.psml").toURI().toString(), engine.newNamespaceHandler());
+    return DocumentSplitter.startsPage(renderer.getSharedContext().getCss());
+  }
+
+  /**
+   * Creates a document with the specified number of sections, each with a number of paragraphs.
+   */
+  private static Document newDocument(int sections, int paragraphs) throws Exception {
+    Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    Element root = doc.createElement("document");
+    root.setAttribute("level", "book");
+    doc.appendChild(root);
+    for (int i = 0; i < sections; i++) {
+      Element section = doc.createElement("section");
+      section.setAttribute("id", "s" + i);
+      section.setIdAttribute("id", true);
+      Element fragment = doc.createElement("fragment");
+      for (int j = 0; j < paragraphs; j++) {
+        fragment.appendChild(doc.createElement("para")).setTextContent("Paragraph " + j);
+      }
+      section.appendChild(fragment);
+      root.appendChild(section);
+    }
+    return doc;
+  }
+}
@@ -0,0 +1,42 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+final class FontFamiliesTest {
+
+  @Test
+  void testScan() {
+    String css = "body { font-family: 'Inter 18pt', \"Noto Emoji\", Open   Sans, sans-serif; }\n"
+        + "/* h1 { font-family: Commented; } */\n"
+        + "h1 { font: bold 12pt/1.2 Amatic, serif; }\n"
+        + "p { font-size: 9pt; font-family: inherit !important; }";
+    Assertions.assertEquals(List.of("Inter 18pt", "Noto Emoji", "Open Sans", "sans-serif", "Amatic", "serif"),
+        List.copyOf(FontFamilies.scan(css)));
+  }
+
+  @Test
+  void testGet_Stylesheet() {
+    Set<String> families = FontFamilies.get(new File("src/test/resources/css/turtles.css").toURI().toString());
+    Assertions.assertTrue(families.contains("Inter 18pt"));
+    Assertions.assertTrue(families.contains("Amatic"));
+    Assertions.assertFalse(families.contains("Noto Emoji"));
+  }
+
+  @Test
+  void testGet_Import(@TempDir Path dir) throws Exception {
+    Files.write(dir.resolve("main.css"), "@import url('fonts.css');\nbody { font-family: Inter; }".getBytes(StandardCharsets.UTF_8));
+    Files.write(dir.resolve("fonts.css"), "code { font-family: \"Fira Code\", monospace; }".getBytes(StandardCharsets.UTF_8));
+    Set<String> families = FontFamilies.get(dir.resolve("main.css").toUri().toString());
+    Assertions.assertEquals(Set.of("Inter", "Fira Code", "monospace"), families);
+  }
+
+}
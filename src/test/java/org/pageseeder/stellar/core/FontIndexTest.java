@@ -0,0 +1,122 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+final class FontIndexTest {
+
+  private static final Path FONTS = Paths.get("src/test/resources/fonts");
+
+  @Test
+  void testReadMetadata() throws Exception {
+    FontMetadata regular = FontMetadata.read(FONTS.resolve("Inter_18pt-Regular.ttf").toFile());
+    Assertions.assertEquals("Inter 18pt", regular.getFamily());
+    Assertions.assertEquals(400, regular.getWeight());
+    Assertions.assertFalse(regular.isItalic());
+
+    FontMetadata boldItalic = FontMetadata.read(FONTS.resolve("Inter_18pt-BoldItalic.ttf").toFile());
+    Assertions.assertEquals("Inter 18pt", boldItalic.getFamily());
+    Assertions.assertEquals(700, boldItalic.getWeight());
+    Assertions.assertTrue(boldItalic.isItalic());
+  }
+
+  @Test
+  void testNotAFont(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("fake.ttf");
+    Files.write(file, "not a font".getBytes());
+    FontIndex.clear();
+    Assertions.assertNull(FontIndex.forDirectory(dir.toFile()).get(file.toFile()));
+  }
+
+  @Test
+  void testNotInFontsDirectory(@TempDir Path dir) throws Exception {
+    File font = copy("AmaticSC-Regular.ttf", dir);
+    FontIndex.clear();
+    FontIndex index = FontIndex.forDirectory(dir.toFile());
+    Assertions.assertNotNull(index.get(font));
+    index.save();
+    try (Stream<Path> files = Files.list(dir)) {
+      Assertions.assertEquals(List.of(font.toPath()), files.collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  void testPersisted(@TempDir Path dir) throws Exception {
+    File font = copy("AmaticSC-Regular.ttf", dir);
+    // Keep the index with the fonts
+    Path file = Files.createFile(dir.resolve(FontIndex.FILENAME));
+    FontIndex.clear();
+    FontIndex index = FontIndex.forDirectory(dir.toFile());
+    Assertions.assertEquals(List.of("Amatic SC"), index.get(font).get(0).getFamilies());
+    index.save();
+    Assertions.assertTrue(Files.size(file) > 0);
+    if (Files.getFileStore(file).supportsFileAttributeView(PosixFileAttributeView.class)) {
+      Assertions.assertEquals("rw-r--r--", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+    }
+
+    // Overwrite the font without changing its size or time: the new JVM must trust the index
+    long modified = font.lastModified();
+    Files.write(font.toPath(), new byte[(int) font.length()]);
+    Assertions.assertTrue(font.setLastModified(modified));
+    FontIndex.clear();
+    FontIndex reloaded = FontIndex.forDirectory(dir.toFile());
+    Assertions.assertEquals(1, reloaded.size());
+    Assertions.assertEquals("Amatic SC", reloaded.get(font).get(0).getFamily());
+  }
+
+  @Test
+  void testValidatedByHash(@TempDir Path dir) throws Exception {
+    File font = copy("Amatic-Bold.ttf", dir);
+    FontIndex.clear();
+    FontIndex index = FontIndex.forDirectory(dir.toFile());
+    Assertions.assertEquals("Amatic", index.get(font).get(0).getFamily());
+
+    // Same content with a different time is still valid
+    Assertions.assertTrue(font.setLastModified(font.lastModified() - 60_000));
+    Assertions.assertEquals("Amatic", index.get(font).get(0).getFamily());
+
+    // Different content with the same size is read again
+    Files.write(font.toPath(), new byte[(int) font.length()]);
+    Assertions.assertTrue(font.setLastModified(font.lastModified() - 120_000));
+    Assertions.assertNull(index.get(font));
+  }
+
+  @Test
+  void testReadCollection(@TempDir Path dir) throws Exception {
+    // A collection of two fonts sharing the same tables
+    byte[] font = Files.readAllBytes(FONTS.resolve("Inter_18pt-Bold.ttf"));
+    ByteBuffer ttc = ByteBuffer.allocate(20 + font.length);
+    ttc.putInt(0x74746366).putInt(0x00010000).putInt(2).putInt(20).putInt(20).put(font);
+    int tables = ttc.getShort(20 + 4) & 0xFFFF;
+    for (int i = 0; i < tables; i++) {
+      int offset = 20 + 12 + i * 16 + 8;
+      ttc.putInt(offset, ttc.getInt(offset) + 20);
+    }
+    Path file = dir.resolve("Inter.ttc");
+    Files.write(file, ttc.array());
+
+    List<FontMetadata> fonts = FontMetadata.readAll(file.toFile());
+    Assertions.assertEquals(2, fonts.size());
+    Assertions.assertEquals("Inter 18pt", fonts.get(1).getFamily());
+    Assertions.assertEquals(700, fonts.get(1).getWeight());
+  }
+
+  private static File copy(String name, Path dir) throws Exception {
+    Path target = dir.resolve(name);
+    Files.copy(FONTS.resolve(name), target);
+    return target.toFile();
+  }
+
+}
@@ -0,0 +1,109 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.xhtmlrenderer.pdf.FontDescription;
+import org.xhtmlrenderer.pdf.FontFamily;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+final class FontRegistryTest {
+
+  @Test
+  void testInstall_ParsesOnce() {
+    FontRegistry.clear();
+    List<File> fonts = Fonts.listFonts(new File("src/test/resources/fonts"));
+    Assertions.assertFalse(fonts.isEmpty());
+
+    ITextRenderer first = new ITextRenderer();
+    FontRegistry.install(first, fonts);
+    ITextRenderer second = new ITextRenderer();
+    FontRegistry.install(second, fonts);
+
+    Assertions.assertEquals(1, FontRegistry.size());
+    Assertions.assertEquals(first.getFontResolver().getFonts().keySet(), second.getFontResolver().getFonts().keySet());
+  }
+
+  @Test
+  void testInstall_OnlyUsedFamilies() {
+    FontRegistry.clear();
+    List<File> fonts = Fonts.listFonts(new File("src/test/resources/fonts"));
+    Assertions.assertTrue(FontRegistry.getFamilies(fonts).containsAll(Set.of("Amatic SC", "Inter 18pt", "Noto Emoji")));
+
+    ITextRenderer renderer = new ITextRenderer();
+    Set<String> defaults = new HashSet<>(renderer.getFontResolver().getFonts().keySet());
+    FontRegistry.install(renderer, fonts, List.of("amatic sc", "sans-serif"));
+    Set<String> added = new HashSet<>(renderer.getFontResolver().getFonts().keySet());
+    added.removeAll(defaults);
+    Assertions.assertEquals(Set.of("Amatic SC"), added);
+    Assertions.assertFalse(renderer.getFontResolver().getFonts().containsKey("Noto Emoji"));
+  }
+
+  @Test
+  void testInstall_FamiliesPerRenderer() {
+    FontRegistry.clear();
+    List<File> fonts = Fonts.listFonts(new File("src/test/resources/fonts"));
+    ITextRenderer first = new ITextRenderer();
+    FontRegistry.install(first, fonts, List.of("Inter 18pt"));
+    ITextRenderer second = new ITextRenderer();
+    FontRegistry.install(second, fonts, List.of("Inter 18pt"));
+
+    FontFamily a = first.getFontResolver().getFonts().get("Inter 18pt");
+    FontFamily b = second.getFontResolver().getFonts().get("Inter 18pt");
+    Assertions.assertNotSame(a, b);
+    Assertions.assertFalse(a.getFontDescriptions().isEmpty());
+    // The parsed fonts are shared
+    Assertions.assertSame(a.getFontDescriptions().get(0).getFont(), b.getFontDescriptions().get(0).getFont());
+
+    // A face added to the family of one renderer does not affect the other
+    a.addFontDescription(new FontDescription(a.getFontDescriptions().get(0).getFont()));
+    Assertions.assertEquals(a.getFontDescriptions().size() - 1, b.getFontDescriptions().size());
+  }
+
+  @Test
+  void testInstall_ParsedOncePerFile() {
+    FontRegistry.clear();
+    List<File> all = Fonts.listFonts(new File("src/test/resources/fonts"));
+    ITextRenderer first = new ITextRenderer();
+    FontRegistry.install(first, all, List.of("Amatic SC"));
+    // A different set of files containing the same font reuses the parsed font
+    List<File> amatic = List.of(new File("src/test/resources/fonts/AmaticSC-Regular.ttf"));
+    ITextRenderer second = new ITextRenderer();
+    FontRegistry.install(second, amatic);
+    Assertions.assertEquals(2, FontRegistry.size());
+    Assertions.assertSame(first.getFontResolver().getFonts().get("Amatic SC").getFontDescriptions().get(0).getFont(),
+        second.getFontResolver().getFonts().get("Amatic SC").getFontDescriptions().get(0).getFont());
+  }
+
+  @Test
+  void testInstall_WithoutFamilyConstructor() throws Exception {
+    FontRegistry.clear();
+    List<File> fonts = List.of(new File("src/test/resources/fonts/AmaticSC-Regular.ttf"));
+    ITextRenderer shared = new ITextRenderer();
+    FontRegistry.install(shared, fonts);
+    List<FontDescription> parsed = shared.getFontResolver().getFonts().get("Amatic SC").getFontDescriptions();
+
+    // No constructor, the files are added to the font resolver
+    ITextRenderer fallback = new ITextRenderer();
+    FontRegistry.installWith(fallback, fonts, null);
+    List<FontDescription> added = fallback.getFontResolver().getFonts().get("Amatic SC").getFontDescriptions();
+    Assertions.assertEquals(parsed.size(), added.size());
+
+    // The constructor is not accessible, so creating a family fails
+    ITextRenderer inaccessible = new ITextRenderer();
+    FontRegistry.installWith(inaccessible, fonts, FontFamily.class.getDeclaredConstructor(String.class));
+    Assertions.assertEquals(parsed.size(), inaccessible.getFontResolver().getFonts().get("Amatic SC").getFontDescriptions().size());
+  }
+
+  @Test
+  void testInstall_NoFonts() {
+    FontRegistry.clear();
+    FontRegistry.install(new ITextRenderer(), List.of());
+    Assertions.assertEquals(0, FontRegistry.size());
+  }
+
+}
@@ -0,0 +1,34 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+final class FontsTest {
+
+  @Test
+  void testListFonts_Recursive(@TempDir Path dir) throws Exception {
+    Files.createDirectories(dir.resolve("serif/bold"));
+    Files.createDirectories(dir.resolve(".hidden"));
+    for (String name : List.of("b.ttf", "a.OTF", "serif/c.ttc", "serif/bold/d.ttf", ".hidden/e.ttf", "notes.txt")) {
+      Files.write(dir.resolve(name), new byte[0]);
+    }
+    List<File> fonts = Fonts.listFonts(dir.toFile());
+    Assertions.assertEquals(List.of(
+        dir.resolve("a.OTF").toFile(),
+        dir.resolve("b.ttf").toFile(),
+        dir.resolve("serif/bold/d.ttf").toFile(),
+        dir.resolve("serif/c.ttc").toFile()), fonts);
+  }
+
+  @Test
+  void testListFonts_MissingDirectory() {
+    Assertions.assertEquals(List.of(), Fonts.listFonts(new File("build/test/no-such-fonts")));
+  }
+
+}
@@ -0,0 +1,97 @@
+package org.pageseeder.stellar.core;
+
+import com.lowagie.text.Image;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+final class ImageCacheTest {
+
+  private static final File LOGO = new File("src/test/resources/css/images/example-logo.png");
+
+  private static final File WHITE_LOGO = new File("src/test/resources/css/images/example-logo-white.png");
+
+  @Test
+  void testGet_Hit() throws Exception {
+    ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+    Image first = cache.get(LOGO);
+    Image second = cache.get(LOGO);
+    Assertions.assertSame(first, second);
+    Assertions.assertEquals(1, cache.getHits());
+    Assertions.assertEquals(1, cache.getMisses());
+    Assertions.assertEquals(1, cache.size());
+  }
+
+  @Test
+  void testGet_Concurrent() throws Exception {
+    ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<Image>> images = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        images.add(executor.submit(() -> {
+          start.await();
+          return cache.get(LOGO);
+        }));
+      }
+      start.countDown();
+      for (Future<Image> image : images) {
+        Assertions.assertSame(images.get(0).get(), image.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    Assertions.assertEquals(1, cache.getMisses());
+    Assertions.assertEquals(threads - 1, cache.getHits());
+  }
+
+  @Test
+  void testGet_Eviction() throws Exception {
+    // Only enough room for the largest of the two images
+    ImageCache sizes = new ImageCache(ImageCache.DEFAULT_MAX_BYTES);
+    sizes.get(LOGO);
+    long logo = sizes.getBytes();
+    sizes.clear();
+    sizes.get(WHITE_LOGO);
+    long budget = Math.max(logo, sizes.getBytes());
+
+    ImageCache cache = new ImageCache(budget);
+    cache.get(LOGO);
+    cache.get(WHITE_LOGO);
+    Assertions.assertEquals(1, cache.getEvictions());
+    Assertions.assertEquals(1, cache.size());
+    Assertions.assertTrue(cache.getBytes() <= budget);
+  }
+
+  @Test
+  void testGet_Disabled() throws Exception {
+    ImageCache cache = new ImageCache(0);
+    cache.get(LOGO);
+    cache.get(LOGO);
+    Assertions.assertEquals(0, cache.getHits());
+    Assertions.assertEquals(2, cache.getMisses());
+    Assertions.assertEquals(0, cache.size());
+  }
+
+  @Test
+  void testLoad_Digest(@TempDir Path dir) throws Exception {
+    File copy = dir.resolve("copy.png").toFile();
+    Files.copy(LOGO.toPath(), copy.toPath());
+    ImageCache cache = new ImageCache(0);
+    Assertions.assertEquals(cache.load(LOGO).digest(), cache.load(copy).digest());
+    Assertions.assertNotEquals(cache.load(LOGO).digest(), cache.load(WHITE_LOGO).digest());
+  }
+
+}
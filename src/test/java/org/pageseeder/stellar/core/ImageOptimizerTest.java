@@ -0,0 +1,92 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+final class ImageOptimizerTest {
+
+  private static final File PHOTO = new File("src/test/resources/psml/whales/pexels-eliannedipp-4666750.jpg");
+
+  private static final File LOGO = new File("src/test/resources/css/images/example-logo.png");
+
+  @Test
+  void testResample_Jpeg() throws Exception {
+    ImageOptimizer optimizer = new ImageOptimizer(150);
+    byte[] data = optimizer.resample(PHOTO, 120, 80);
+    Assertions.assertNotNull(data);
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+    Assertions.assertEquals(120, image.getWidth());
+    Assertions.assertEquals(80, image.getHeight());
+    Assertions.assertTrue(data.length < PHOTO.length());
+  }
+
+  @Test
+  void testResample_KeepsTransparency() throws Exception {
+    ImageOptimizer optimizer = new ImageOptimizer(150);
+    BufferedImage source = ImageIO.read(LOGO);
+    byte[] data = optimizer.resample(LOGO, source.getWidth() / 4, source.getHeight() / 4);
+    Assertions.assertNotNull(data);
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+    Assertions.assertEquals(source.getColorModel().hasAlpha(), image.getColorModel().hasAlpha());
+  }
+
+  @Test
+  void testResample_Cmyk(@TempDir Path dir) throws Exception {
+    ImageOptimizer optimizer = new ImageOptimizer(150);
+    // Decoded by the JDK as CMYK
+    File cmyk = writeCmykJpeg(dir.resolve("cmyk.jpg"), 0);
+    Assertions.assertNull(optimizer.resample(cmyk, 50, 40));
+    // Rejected by the JDK decoder
+    File unsupported = writeCmykJpeg(dir.resolve("unsupported.jpg"), 1);
+    Assertions.assertNull(optimizer.resample(unsupported, 50, 40));
+  }
+
+  @Test
+  void testToPixels() {
+    ImageOptimizer optimizer = new ImageOptimizer(300);
+    Assertions.assertEquals(600, optimizer.toPixels(2f));
+    Assertions.assertTrue(optimizer.shouldResample(1000, 600));
+    Assertions.assertFalse(optimizer.shouldResample(650, 600));
+  }
+
+  /**
+   * Writes a 4-channel JPEG with an Adobe marker using the specified color transform.
+   */
+  private static File writeCmykJpeg(Path path, int transform) throws IOException {
+    WritableRaster raster = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, 400, 300, 4, null);
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+    try (ImageOutputStream ios = ImageIO.createImageOutputStream(jpeg)) {
+      writer.setOutput(ios);
+      writer.write(null, new IIOImage(raster, null, null), null);
+    } finally {
+      writer.dispose();
+    }
+    byte[] data = jpeg.toByteArray();
+    byte[] adobe = {(byte) 0xFF, (byte) 0xEE, 0, 14, 'A', 'd', 'o', 'b', 'e', 0, 100, 0, 0, 0, 0, (byte) transform};
+    try (OutputStream out = Files.newOutputStream(path)) {
+      out.write(data, 0, 2);
+      out.write(adobe);
+      out.write(data, 2, data.length - 2);
+    }
+    return path.toFile();
+  }
+
+}
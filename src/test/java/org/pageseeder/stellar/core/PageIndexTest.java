@@ -0,0 +1,53 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.xhtmlrenderer.render.PageBox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class PageIndexTest {
+
+  @Test
+  void testIndexOf() {
+    PageIndex index = new PageIndex(pages(0, 1000, 2000, 3000));
+    Assertions.assertEquals(0, index.indexOf(0));
+    Assertions.assertEquals(0, index.indexOf(999));
+    Assertions.assertEquals(1, index.indexOf(1000));
+    Assertions.assertEquals(2, index.indexOf(2500));
+    Assertions.assertEquals(3, index.indexOf(3999));
+  }
+
+  @Test
+  void testIndexOf_OutOfRange() {
+    PageIndex index = new PageIndex(pages(0, 1000));
+    Assertions.assertEquals(0, index.indexOf(-10));
+    Assertions.assertEquals(1, index.indexOf(50000));
+  }
+
+  @Test
+  void testIndexOf_EmptyPage() {
+    PageIndex index = new PageIndex(pages(0, 1000, 1000, 2000));
+    Assertions.assertEquals(2, index.indexOf(1000));
+    Assertions.assertEquals(2, index.indexOf(1500));
+  }
+
+  @Test
+  void testNoPages() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new PageIndex(List.of()));
+  }
+
+  private static List<PageBox> pages(int... tops) {
+    List<PageBox> pages = new ArrayList<>();
+    for (int top : tops) {
+      pages.add(new PageBox() {
+        @Override
+        public int getTop() {
+          return top;
+        }
+      });
+    }
+    return pages;
+  }
+}
@@ -0,0 +1,120 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xml.sax.InputSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+final class PdfRenderEngineTest {
+
+  private static final Path TEST_DIR = Paths.get("build/test/engine");
+
+  @BeforeAll
+  static void setup() throws IOException {
+    Path resourcesDir = Paths.get("src/test/resources");
+    Files.createDirectories(TEST_DIR);
+    try (Stream<Path> stream = Files.walk(resourcesDir)) {
+      stream.forEach(source -> {
+        Path destination = TEST_DIR.resolve(resourcesDir.relativize(source));
+        try {
+          if (Files.isDirectory(source)) {
+            Files.createDirectories(destination);
+          } else {
+            Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
+          }
+        } catch (IOException ex) {
+          throw new UncheckedIOException("Failed to copy file", ex);
+        }
+      });
+    }
+  }
+
+  @Test
+  void testConfigIsImmutable() {
+    TitlePageConfig titlePage = new TitlePageConfig();
+    titlePage.addItem("date", "current-date()");
+    PdfRenderConfig config = PdfRenderConfig.builder().titlePage(titlePage).build();
+    titlePage.addItem("other", "//uri/@title");
+    Assertions.assertNotNull(config.getTitlePageConfig());
+    Assertions.assertEquals(1, config.getTitlePageConfig().getItems().size());
+  }
+
+  @Test
+  void testRenderConcurrently() throws Exception {
+    PdfRenderEngine engine = new PdfRenderEngine(PdfRenderConfig.builder()
+        .fontsDir(TEST_DIR.resolve("fonts").toFile())
+        .authorStylesheet(TEST_DIR.resolve("css/whale.css").toFile())
+        .build());
+    Files.createDirectories(TEST_DIR.resolve("out"));
+    File input = TEST_DIR.resolve("psml/whales.psml").toFile();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<File>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        File output = TEST_DIR.resolve("out/whales-" + i + ".pdf").toFile();
+        results.add(executor.submit(() -> {
+          engine.render(input, output);
+          return output;
+        }));
+      }
+      for (Future<File> result : results) {
+        File output = result.get();
+        Assertions.assertTrue(output.length() > 0, "Output should not be empty: " + output);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  void testDiagnostics_FailedRender(@TempDir Path dir) throws Exception {
+    PdfRenderEngine engine = new PdfRenderEngine(PdfRenderConfig.builder().diagnosticsDir(dir.toFile()).build());
+    DiagnosticsSink diagnostics = engine.getDiagnostics();
+    Assertions.assertNotNull(diagnostics);
+    InputSource source = new InputSource(TEST_DIR.resolve("psml/basic.psml").toUri().toString());
+    OutputStream failing = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("Disk full");
+      }
+    };
+    Assertions.assertThrows(Exception.class, () -> engine.render(source, failing));
+    Assertions.assertTrue(diagnostics.await(10, TimeUnit.SECONDS));
+    try (Stream<Path> dumps = Files.list(dir)) {
+      Assertions.assertEquals(1, dumps.filter(path -> path.getFileName().toString().matches("basic-[0-9a-f]{8}\\.pdf\\.psml")).count());
+    }
+  }
+
+  @Test
+  void testDiagnostics_SameNames(@TempDir Path dir) throws Exception {
+    PdfRenderEngine engine = new PdfRenderEngine(PdfRenderConfig.builder().diagnosticsDir(dir.resolve("diagnostics").toFile()).build());
+    for (String folder : List.of("a", "b")) {
+      Path input = dir.resolve(folder).resolve("basic.psml");
+      Files.createDirectories(input.getParent());
+      Files.copy(TEST_DIR.resolve("psml/basic.psml"), input);
+      engine.render(input.toFile(), dir.resolve(folder).resolve("basic.pdf").toFile());
+    }
+    Assertions.assertTrue(engine.getDiagnostics().await(10, TimeUnit.SECONDS));
+    try (Stream<Path> dumps = Files.list(dir.resolve("diagnostics"))) {
+      Assertions.assertEquals(2, dumps.count());
+    }
+  }
+
+}
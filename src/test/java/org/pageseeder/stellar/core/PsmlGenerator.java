@@ -0,0 +1,275 @@
+package org.pageseeder.stellar.core;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Generates large PSML documents for scaling tests.
+ *
+ * <p>The output only depends on the parameters and the seed, so two documents generated with
+ * the same parameters are identical. Each chapter is a top-level section with a level 1
+ * heading, nested subsections down to the heading depth, paragraphs and a table; images are
+ * spread evenly across the chapters. A table of contents is generated for all headings.
+ */
+final class PsmlGenerator {
+
+  private static final String[] WORDS = {
+      "actuator", "arm", "assembly", "battery", "bracket", "cable", "casing", "circuit", "clearance",
+      "component", "connector", "controller", "cycle", "device", "enclosure", "fastener", "firmware",
+      "hinge", "input", "interval", "lever", "linkage", "load", "mechanism", "motion", "mounting",
+      "output", "panel", "position", "power", "pulse", "relay", "screw", "sensor", "servo", "signal",
+      "spring", "supply", "switch", "terminal", "test", "torque", "voltage", "wiring", "the", "and",
+      "of", "to", "with", "for", "each", "must", "should", "when", "before", "after", "during"
+  };
+
+  private int chapters = 10;
+
+  private int depth = 3;
+
+  private int paragraphs = 2;
+
+  private int tableRows = 8;
+
+  private int tableColumns = 4;
+
+  private int images = 0;
+
+  private long seed = 42;
+
+  /**
+   * Returns a generator whose output should be about the specified number of A4 pages when
+   * rendered with the default stylesheet; the actual number depends on the fonts and styles.
+   *
+   * @param pages the approximate number of pages
+   * @return a new generator
+   */
+  static PsmlGenerator forPages(int pages) {
+    // A chapter with the default parameters fills about two pages
+    return new PsmlGenerator().chapters(Math.max(1, pages / 2)).images(pages / 10);
+  }
+
+  PsmlGenerator chapters(int chapters) {
+    this.chapters = chapters;
+    return this;
+  }
+
+  /**
+   * @param depth the deepest heading level, from 1 to 6
+   * @return this generator
+   */
+  PsmlGenerator depth(int depth) {
+    if (depth < 1 || depth > 6) throw new IllegalArgumentException("Heading depth must be between 1 and 6");
+    this.depth = depth;
+    return this;
+  }
+
+  /**
+   * @param paragraphs the number of paragraphs in each section
+   * @return this generator
+   */
+  PsmlGenerator paragraphs(int paragraphs) {
+    this.paragraphs = paragraphs;
+    return this;
+  }
+
+  /**
+   * @param rows the number of body rows in the table of each chapter, 0 for no tables
+   * @param columns the number of columns of the tables
+   * @return this generator
+   */
+  PsmlGenerator table(int rows, int columns) {
+    this.tableRows = rows;
+    this.tableColumns = columns;
+    return this;
+  }
+
+  /**
+   * @param images the total number of images in the document
+   * @return this generator
+   */
+  PsmlGenerator images(int images) {
+    this.images = images;
+    return this;
+  }
+
+  PsmlGenerator seed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  /**
+   * Writes the PSML document to the specified file and the images it refers to in an
+   * <code>images</code> directory next to it.
+   *
+   * @param file the PSML file to write
+   * @throws IOException if the files could not be written
+   */
+  void write(File file) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (this.images > 0) {
+      writeImages(new File(dir, "images"));
+    }
+    try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      write(out);
+    }
+  }
+
+  /**
+   * Writes the PSML document.
+   *
+   * @param out where the PSML is written
+   * @throws IOException if an I/O error occurs
+   */
+  void write(Writer out) throws IOException {
+    Random random = new Random(this.seed);
+    String title = "Generated manual " + this.chapters + "x" + this.depth;
+    out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    out.write("<document type=\"references\" level=\"portable\">\n");
+    out.write("  <documentinfo>\n");
+    out.write("    <uri title=\"" + title + "\"><displaytitle>" + title + "</displaytitle></uri>\n");
+    out.write("  </documentinfo>\n");
+    out.write("  <section id=\"title\">\n");
+    out.write("    <fragment id=\"title\"><heading level=\"1\">" + title + "</heading></fragment>\n");
+    out.write("  </section>\n");
+    writeToc(out);
+    int image = 0;
+    for (int chapter = 1; chapter <= this.chapters; chapter++) {
+      // Spread the images evenly across chapters
+      int last = (int) ((long) chapter * this.images / this.chapters);
+      out.write("  <section id=\"s" + chapter + "\">\n");
+      writeFragment(out, random, String.valueOf(chapter), 1);
+      writeSubsections(out, random, String.valueOf(chapter), 2);
+      if (this.tableRows > 0) {
+        writeTable(out, random, chapter);
+      }
+      while (image < last) {
+        image++;
+        out.write("    <fragment id=\"f" + chapter + "-i" + image + "\">\n");
+        out.write("      <para><image src=\"images/figure-" + ((image - 1) % 10) + ".png\" width=\"400\" height=\"300\" alt=\"Figure "
+            + image + "\"/></para>\n");
+        out.write("    </fragment>\n");
+      }
+      out.write("  </section>\n");
+    }
+    out.write("</document>\n");
+  }
+
+  @Override
+  public String toString() {
+    return "PsmlGenerator{chapters=" + this.chapters + ", depth=" + this.depth + ", paragraphs=" + this.paragraphs
+        + ", table=" + this.tableRows + "x" + this.tableColumns + ", images=" + this.images + ", seed=" + this.seed + '}';
+  }
+
+  private void writeToc(Writer out) throws IOException {
+    out.write("  <toc>\n    <toc-tree title=\"Contents\">\n");
+    for (int chapter = 1; chapter <= this.chapters; chapter++) {
+      writeTocPart(out, String.valueOf(chapter), 1);
+    }
+    out.write("    </toc-tree>\n  </toc>\n");
+  }
+
+  private void writeTocPart(Writer out, String prefix, int level) throws IOException {
+    out.write("      <toc-part level=\"" + level + "\" title=\"" + title(prefix) + "\" prefix=\"" + prefix + "\" idref=\"h"
+        + prefix.replace('.', '-') + "\"");
+    if (level < this.depth) {
+      out.write(">\n");
+      for (int i = 1; i <= 2; i++) {
+        writeTocPart(out, prefix + "." + i, level + 1);
+      }
+      out.write("      </toc-part>\n");
+    } else {
+      out.write("/>\n");
+    }
+  }
+
+  private void writeSubsections(Writer out, Random random, String prefix, int level) throws IOException {
+    if (level > this.depth) return;
+    for (int i = 1; i <= 2; i++) {
+      String number = prefix + "." + i;
+      writeFragment(out, random, number, level);
+      writeSubsections(out, random, number, level + 1);
+    }
+  }
+
+  private void writeFragment(Writer out, Random random, String prefix, int level) throws IOException {
+    String id = prefix.replace('.', '-');
+    out.write("    <fragment id=\"f" + id + "\">\n");
+    out.write("      <heading level=\"" + level + "\" prefix=\"" + prefix + "\" numbered=\"true\" id=\"h" + id + "\">"
+        + title(prefix) + "</heading>\n");
+    for (int p = 0; p < paragraphsAt(level); p++) {
+      out.write("      <para>" + sentence(random, 60) + "</para>\n");
+    }
+    out.write("    </fragment>\n");
+  }
+
+  private void writeTable(Writer out, Random random, int chapter) throws IOException {
+    out.write("    <fragment id=\"f" + chapter + "-t\">\n      <table>\n        <row part=\"header\">");
+    for (int c = 0; c < this.tableColumns; c++) {
+      out.write("<cell>" + sentence(random, 2) + "</cell>");
+    }
+    out.write("</row>\n");
+    for (int r = 0; r < this.tableRows; r++) {
+      out.write("        <row>");
+      for (int c = 0; c < this.tableColumns; c++) {
+        out.write("<cell>" + sentence(random, 5) + "</cell>");
+      }
+      out.write("</row>\n");
+    }
+    out.write("      </table>\n    </fragment>\n");
+  }
+
+  /**
+   * Deeper sections are shorter, so that the size of a chapter does not double with each level.
+   */
+  private int paragraphsAt(int level) {
+    return level == 1 ? this.paragraphs : Math.max(1, this.paragraphs - level + 2);
+  }
+
+  /**
+   * The title of a heading only depends on its number so that the TOC matches the headings.
+   */
+  private String title(String prefix) {
+    return sentence(new Random(this.seed * 31 + prefix.hashCode()), 4);
+  }
+
+  private static String sentence(Random random, int words) {
+    StringBuilder sentence = new StringBuilder();
+    for (int i = 0; i < words; i++) {
+      String word = WORDS[random.nextInt(WORDS.length)];
+      if (i == 0) {
+        sentence.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+      } else {
+        sentence.append(' ').append(word);
+      }
+    }
+    return sentence.toString();
+  }
+
+  private void writeImages(File dir) throws IOException {
+    Files.createDirectories(dir.toPath());
+    for (int i = 0; i < Math.min(10, this.images); i++) {
+      File file = new File(dir, "figure-" + i + ".png");
+      if (file.exists()) continue;
+      BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+      Graphics2D g = image.createGraphics();
+      try {
+        g.setPaint(new Color(Color.HSBtoRGB(i / 10f, 0.4f, 0.9f)));
+        g.fillRect(0, 0, 400, 300);
+        g.setPaint(Color.DARK_GRAY);
+        g.drawString("Figure " + i, 20, 40);
+      } finally {
+        g.dispose();
+      }
+      ImageIO.write(image, "png", file);
+    }
+  }
+
+}
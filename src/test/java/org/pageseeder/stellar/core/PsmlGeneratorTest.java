@@ -0,0 +1,73 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+final class PsmlGeneratorTest {
+
+  @Test
+  void testDeterministic() throws Exception {
+    Assertions.assertEquals(generate(PsmlGenerator.forPages(20)), generate(PsmlGenerator.forPages(20)));
+    Assertions.assertNotEquals(generate(PsmlGenerator.forPages(20)), generate(PsmlGenerator.forPages(20).seed(7)));
+  }
+
+  @Test
+  void testStructure() throws Exception {
+    Document doc = parse(generate(new PsmlGenerator().chapters(5).depth(4).table(3, 2).images(4)));
+    Element root = doc.getDocumentElement();
+
+    // Title section and one section per chapter
+    Assertions.assertEquals(6, root.getElementsByTagName("section").getLength());
+    Assertions.assertEquals(4, root.getElementsByTagName("image").getLength());
+    Assertions.assertEquals(5, root.getElementsByTagName("table").getLength());
+    Assertions.assertEquals(5 * 4, root.getElementsByTagName("row").getLength());
+
+    // 1 + 2 + 4 + 8 headings per chapter, plus the title
+    NodeList headings = root.getElementsByTagName("heading");
+    Assertions.assertEquals(5 * 15 + 1, headings.getLength());
+    int deepest = 0;
+    Map<String, String> titles = new HashMap<>();
+    for (int i = 0; i < headings.getLength(); i++) {
+      Element heading = (Element) headings.item(i);
+      deepest = Math.max(deepest, Integer.parseInt(heading.getAttribute("level")));
+      titles.put(heading.getAttribute("id"), heading.getTextContent());
+    }
+    Assertions.assertEquals(4, deepest);
+
+    // Every TOC part points to a heading with the same title
+    NodeList parts = root.getElementsByTagName("toc-part");
+    Assertions.assertEquals(5 * 15, parts.getLength());
+    for (int i = 0; i < parts.getLength(); i++) {
+      Element part = (Element) parts.item(i);
+      Assertions.assertEquals(part.getAttribute("title"), titles.get(part.getAttribute("idref")));
+    }
+  }
+
+  @Test
+  void testScalesWithPages() throws Exception {
+    int small = generate(PsmlGenerator.forPages(10)).length();
+    int large = generate(PsmlGenerator.forPages(100)).length();
+    Assertions.assertTrue(large > small * 8 && large < small * 12, small + " -> " + large);
+  }
+
+  private static String generate(PsmlGenerator generator) throws Exception {
+    StringWriter out = new StringWriter();
+    generator.write(out);
+    return out.toString();
+  }
+
+  private static Document parse(String xml) throws Exception {
+    return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+  }
+
+}
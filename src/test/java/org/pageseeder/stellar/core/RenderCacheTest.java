@@ -0,0 +1,69 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+final class RenderCacheTest {
+
+  @Test
+  void testKey_SameContent(@TempDir Path dir) throws Exception {
+    RenderCache cache = new RenderCache(dir.resolve("cache").toFile());
+    File a = write(dir.resolve("a.psml"), "<document/>");
+    File b = write(dir.resolve("b.psml"), "<document/>");
+    Assertions.assertEquals(cache.newKey().addFile("input", a).build(), cache.newKey().addFile("input", b).build());
+    Assertions.assertNotEquals(cache.newKey().addFile("input", a).build(), cache.newKey().addFile("image", a).build());
+    Assertions.assertNotEquals(cache.newKey().add("a", "bc").build(), cache.newKey().add("ab", "c").build());
+    Assertions.assertNotEquals(cache.newKey().add("a", "").build(), cache.newKey().add("a", null).build());
+  }
+
+  @Test
+  void testKey_ChangedContent(@TempDir Path dir) throws Exception {
+    RenderCache cache = new RenderCache(dir.resolve("cache").toFile());
+    File input = write(dir.resolve("input.psml"), "<document/>");
+    String before = cache.newKey().addFile("input", input).build();
+    write(dir.resolve("input.psml"), "<document level=\"portable\"/>");
+    Assertions.assertNotEquals(before, cache.newKey().addFile("input", input).build());
+    Assertions.assertNotEquals(before, cache.newKey().addFile("input", dir.resolve("missing.psml").toFile()).build());
+  }
+
+  @Test
+  void testRestore(@TempDir Path dir) throws Exception {
+    RenderCache cache = new RenderCache(dir.resolve("cache").toFile());
+    String key = cache.newKey().add("input", "test").build();
+    File output = dir.resolve("output.pdf").toFile();
+    Assertions.assertFalse(cache.restore(key, output));
+    Assertions.assertEquals(1, cache.getMisses());
+
+    write(output.toPath(), "%PDF-1.4");
+    cache.store(key, output);
+    Assertions.assertTrue(output.delete());
+    Assertions.assertTrue(cache.restore(key, output));
+    Assertions.assertEquals(1, cache.getHits());
+    Assertions.assertEquals("%PDF-1.4", new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void testRestore_Copy(@TempDir Path dir) throws Exception {
+    RenderCache cache = new RenderCache(dir.resolve("cache").toFile());
+    String key = cache.newKey().add("input", "test").build();
+    File output = write(dir.resolve("output.pdf"), "%PDF-1.4");
+    cache.store(key, output);
+    Assertions.assertTrue(cache.restore(key, output));
+    // Overwriting the output must not change the cached file
+    write(output.toPath(), "%PDF-1.7");
+    File other = dir.resolve("other.pdf").toFile();
+    Assertions.assertTrue(cache.restore(key, other));
+    Assertions.assertEquals("%PDF-1.4", new String(Files.readAllBytes(other.toPath()), StandardCharsets.UTF_8));
+  }
+
+  private static File write(Path path, String content) throws Exception {
+    Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    return path.toFile();
+  }
+}
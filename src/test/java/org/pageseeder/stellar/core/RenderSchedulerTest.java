@@ -0,0 +1,36 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+final class RenderSchedulerTest {
+
+  @Test
+  void testSubmit_Compute() throws Exception {
+    try (RenderScheduler scheduler = RenderScheduler.create(2)) {
+      Future<String> result = scheduler.submit(() -> scheduler.compute(() -> "rendered"));
+      Assertions.assertEquals("rendered", result.get());
+      Assertions.assertEquals(2, scheduler.getThreads());
+    }
+  }
+
+  @Test
+  void testCompute_Error() throws Exception {
+    try (RenderScheduler scheduler = RenderScheduler.create(1)) {
+      Future<String> result = scheduler.submit(() -> scheduler.compute(() -> {
+        throw new IOException("Unreadable");
+      }));
+      ExecutionException ex = Assertions.assertThrows(ExecutionException.class, result::get);
+      Assertions.assertTrue(ex.getCause() instanceof IOException);
+    }
+  }
+
+  @Test
+  void testCreate_NoThreads() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> RenderScheduler.create(0));
+  }
+}
@@ -0,0 +1,223 @@
+package org.pageseeder.stellar.core;
+
+import com.lowagie.text.pdf.PdfReader;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Renders generated documents of increasing size and compares the page count, output size,
+ * render time and peak heap with stored baselines.
+ *
+ * <p>The page count and output size do not depend on the machine: their baselines are in
+ * <code>src/test/scaling/baselines.properties</code> and the page count must match exactly.
+ * The render time and peak heap do, so their baselines are recorded locally in
+ * <code>src/test/scaling/timings.properties</code>, which is not committed, and only
+ * compared when present.
+ *
+ * <p>This suite is excluded from <code>./gradlew test</code> and <code>./gradlew check</code>;
+ * it only runs with <code>./gradlew scalingTest</code>.
+ * The following system properties are supported:
+ * <ul>
+ *   <li><code>stellar.scaling.pages</code>: the comma-separated sizes in pages (default 10,100,1000,5000)</li>
+ *   <li><code>stellar.scaling.margin</code>: how much a run may exceed its baseline (default 0.25)</li>
+ *   <li><code>stellar.scaling.baselines</code>: the baselines file (default src/test/scaling/baselines.properties)</li>
+ *   <li><code>stellar.scaling.timings</code>: the timings file (default src/test/scaling/timings.properties)</li>
+ *   <li><code>stellar.scaling.update</code>: record the results of this run as the new baselines and timings</li>
+ * </ul>
+ *
+ * <p>When the timings file exists, a size also fails if its time per page is more than twice
+ * that of the previous size, which is how super-linear behaviour shows.
+ */
+@Tag("scaling")
+final class ScalingTest {
+
+  private static final Path TEST_DIR = Paths.get("build/test/scaling");
+
+  private static final double LINEARITY = 2.0;
+
+  @Test
+  void testScaling() throws Exception {
+    int[] sizes = parseSizes(System.getProperty("stellar.scaling.pages", "10,100,1000,5000"));
+    double margin = Double.parseDouble(System.getProperty("stellar.scaling.margin", "0.25"));
+    Path baselinesFile = Paths.get(System.getProperty("stellar.scaling.baselines", "src/test/scaling/baselines.properties"));
+    Path timingsFile = Paths.get(System.getProperty("stellar.scaling.timings", "src/test/scaling/timings.properties"));
+    boolean update = Boolean.getBoolean("stellar.scaling.update");
+    Properties baselines = load(baselinesFile);
+    Properties timings = load(timingsFile);
+
+    Files.createDirectories(TEST_DIR);
+    PdfRenderEngine engine = new PdfRenderEngine(PdfRenderConfig.builder()
+        .fontsDir(new File("src/test/resources/fonts"))
+        .build());
+
+    // Warm up the JIT and the engine caches so that the smallest size is not penalised
+    render(engine, sizes[0], "warmup");
+
+    List<String> failures = new ArrayList<>();
+    Properties results = new Properties();
+    Properties resultTimings = new Properties();
+    Result previous = null;
+    for (int size : sizes) {
+      Result result = render(engine, size, "manual-" + size);
+      System.out.println(result);
+      result.store(results, resultTimings);
+      failures.addAll(result.compare(baselines, timings, margin));
+      if (!timings.isEmpty() && previous != null && result.millisPerPage() > LINEARITY * previous.millisPerPage()) {
+        failures.add(String.format("%d pages: %.1f ms/page is more than %.0f times %.1f ms/page at %d pages",
+            size, result.millisPerPage(), LINEARITY, previous.millisPerPage(), previous.size));
+      }
+      previous = result;
+    }
+
+    Properties all = new Properties();
+    all.putAll(results);
+    all.putAll(resultTimings);
+    store(all, TEST_DIR.resolve("results.properties"));
+    if (update) {
+      store(results, baselinesFile);
+      store(resultTimings, timingsFile);
+      System.out.println("Updated scaling baselines: " + baselinesFile + " and " + timingsFile);
+    } else if (timings.isEmpty()) {
+      System.out.println("No scaling timings in " + timingsFile + ", run with -Dstellar.scaling.update=true to record them");
+    }
+    Assertions.assertTrue(failures.isEmpty(), "Scaling regressions:\n" + String.join("\n", failures));
+  }
+
+  private static Result render(PdfRenderEngine engine, int size, String name) throws IOException {
+    Path dir = TEST_DIR.resolve(name);
+    Files.createDirectories(dir);
+    File input = dir.resolve(name + ".psml").toFile();
+    File output = dir.resolve(name + ".pdf").toFile();
+    PsmlGenerator.forPages(size).write(input);
+
+    List<MemoryPoolMXBean> pools = heapPools();
+    System.gc();
+    pools.forEach(MemoryPoolMXBean::resetPeakUsage);
+    long start = System.nanoTime();
+    engine.render(input, output);
+    long time = (System.nanoTime() - start) / 1_000_000;
+    // The sum of the peaks of each pool, an upper bound of the actual peak
+    long heap = pools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+
+    PdfReader reader = new PdfReader(output.getPath());
+    int pages = reader.getNumberOfPages();
+    reader.close();
+    return new Result(size, pages, time, heap, output.length());
+  }
+
+  private static List<MemoryPoolMXBean> heapPools() {
+    List<MemoryPoolMXBean> pools = new ArrayList<>();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) pools.add(pool);
+    }
+    return pools;
+  }
+
+  private static int[] parseSizes(String sizes) {
+    String[] values = sizes.split(",");
+    int[] pages = new int[values.length];
+    for (int i = 0; i < values.length; i++) {
+      pages[i] = Integer.parseInt(values[i].trim());
+    }
+    return pages;
+  }
+
+  private static Properties load(Path file) throws IOException {
+    Properties properties = new Properties();
+    if (Files.exists(file)) {
+      try (InputStream in = Files.newInputStream(file)) {
+        properties.load(in);
+      }
+    }
+    return properties;
+  }
+
+  private static void store(Properties properties, Path file) throws IOException {
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    try (OutputStream out = Files.newOutputStream(file)) {
+      properties.store(out, "Scaling results: time in ms, heap and size in bytes");
+    }
+  }
+
+  /**
+   * The measures for one size.
+   */
+  private static final class Result {
+
+    private final int size;
+
+    private final int pages;
+
+    private final long time;
+
+    private final long heap;
+
+    private final long bytes;
+
+    Result(int size, int pages, long time, long heap, long bytes) {
+      this.size = size;
+      this.pages = pages;
+      this.time = time;
+      this.heap = heap;
+      this.bytes = bytes;
+    }
+
+    double millisPerPage() {
+      return (double) this.time / Math.max(1, this.pages);
+    }
+
+    /**
+     * @param baselines receives the page count and output size
+     * @param timings receives the render time and peak heap
+     */
+    void store(Properties baselines, Properties timings) {
+      baselines.setProperty(this.size + ".pages", Integer.toString(this.pages));
+      baselines.setProperty(this.size + ".size", Long.toString(this.bytes));
+      timings.setProperty(this.size + ".time", Long.toString(this.time));
+      timings.setProperty(this.size + ".heap", Long.toString(this.heap));
+    }
+
+    List<String> compare(Properties baselines, Properties timings, double margin) {
+      List<String> failures = new ArrayList<>();
+      String pages = baselines.getProperty(this.size + ".pages");
+      if (pages != null && Integer.parseInt(pages) != this.pages) {
+        failures.add(String.format("%d pages: %d pages rendered instead of %s", this.size, this.pages, pages));
+      }
+      compare(failures, baselines, "size", this.bytes, margin);
+      compare(failures, timings, "time", this.time, margin);
+      compare(failures, timings, "heap", this.heap, margin);
+      return failures;
+    }
+
+    private void compare(List<String> failures, Properties baselines, String measure, long actual, double margin) {
+      String baseline = baselines.getProperty(this.size + "." + measure);
+      if (baseline == null) return;
+      long expected = Long.parseLong(baseline);
+      if (actual > expected * (1 + margin)) {
+        failures.add(String.format("%d pages: %s %d exceeds baseline %d by more than %.0f%%",
+            this.size, measure, actual, expected, margin * 100));
+      }
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%5d pages (%5d actual): %7d ms, %6.1f ms/page, %5d MB peak heap, %7d KB",
+          this.size, this.pages, this.time, millisPerPage(), this.heap >> 20, this.bytes >> 10);
+    }
+  }
+}
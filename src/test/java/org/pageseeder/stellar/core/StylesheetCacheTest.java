@@ -0,0 +1,49 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xhtmlrenderer.css.sheet.Stylesheet;
+import org.xhtmlrenderer.css.sheet.StylesheetInfo;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+final class StylesheetCacheTest {
+
+  @Test
+  void testGet_SameInstance(@TempDir Path dir) throws Exception {
+    Path css = dir.resolve("test.css");
+    Files.writeString(css, "para { color: red; }");
+    String uri = css.toUri().toString();
+
+    Stylesheet first = StylesheetCache.get(uri, StylesheetInfo.AUTHOR);
+    Stylesheet second = StylesheetCache.get(uri, StylesheetInfo.AUTHOR);
+
+    Assertions.assertNotNull(first);
+    Assertions.assertSame(first, second);
+  }
+
+  @Test
+  void testGet_InvalidatedOnChange(@TempDir Path dir) throws Exception {
+    Path css = dir.resolve("test.css");
+    Files.writeString(css, "para { color: red; }");
+    String uri = css.toUri().toString();
+
+    Stylesheet first = StylesheetCache.get(uri, StylesheetInfo.AUTHOR);
+    Files.writeString(css, "para { color: blue; margin: 0; }");
+    File file = css.toFile();
+    Assertions.assertTrue(file.setLastModified(file.lastModified() + 2000));
+    Stylesheet second = StylesheetCache.get(uri, StylesheetInfo.AUTHOR);
+
+    Assertions.assertNotNull(second);
+    Assertions.assertNotSame(first, second);
+  }
+
+  @Test
+  void testGet_Missing() {
+    Assertions.assertNull(StylesheetCache.get(new File("does/not/_exist_.css").toURI().toString(), StylesheetInfo.AUTHOR));
+  }
+
+}
@@ -0,0 +1,41 @@
+package org.pageseeder.stellar.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+final class StylesheetResourcesTest {
+
+  @Test
+  void testFind(@TempDir Path dir) throws Exception {
+    Files.createDirectories(dir.resolve("css/images"));
+    File main = write(dir.resolve("css/main.css"), "@import \"common.css\";\n"
+        + "@import url('print.css');\n"
+        + "/* url(commented.png) */\n"
+        + "body { background: url(images/cover.png); content: \"url(quoted.png)\"; }\n"
+        + "@font-face { src: url(\"../fonts/serif.ttf\"); }\n"
+        + "div { background: url(data:image/png;base64,AAAA) url(http://example.org/logo.png); }\n");
+    write(dir.resolve("css/common.css"), "@import \"main.css\";\nh1 { background: url(images/title.png#top); }\n");
+    Map<String, File> resources = StylesheetResources.find(main);
+    Assertions.assertEquals(List.of("common.css", "images/title.png", "print.css", "images/cover.png", "../fonts/serif.ttf"),
+        List.copyOf(resources.keySet()));
+    Assertions.assertEquals(dir.resolve("css/images/title.png").toFile(), resources.get("images/title.png"));
+  }
+
+  @Test
+  void testFind_Missing(@TempDir Path dir) throws Exception {
+    Assertions.assertTrue(StylesheetResources.find(dir.resolve("missing.css").toFile()).isEmpty());
+  }
+
+  private static File write(Path path, String content) throws Exception {
+    Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    return path.toFile();
+  }
+}
@@ -0,0 +1,139 @@
+package org.pageseeder.stellar.server;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.pageseeder.stellar.core.PdfRenderConfig;
+import org.pageseeder.stellar.core.PdfRenderEngine;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+final class RenderServerTest {
+
+  private static RenderServer server;
+
+  @BeforeAll
+  static void start() throws Exception {
+    PdfRenderEngine engine = new PdfRenderEngine(PdfRenderConfig.builder().build());
+    server = new RenderServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+        Map.of(RenderServer.DEFAULT_PROFILE, engine), new File("src/test/resources/psml"), 1, 1);
+    server.start();
+  }
+
+  @AfterAll
+  static void stop() {
+    server.stop(1);
+  }
+
+  @Test
+  void testRender_Post() throws Exception {
+    byte[] psml = Files.readAllBytes(new File("src/test/resources/psml/basic.psml").toPath());
+    HttpURLConnection connection = open("/render");
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(psml);
+    }
+    Assertions.assertEquals(200, connection.getResponseCode());
+    Assertions.assertEquals("application/pdf", connection.getContentType());
+    Assertions.assertTrue(read(connection.getInputStream()).startsWith("%PDF-"));
+  }
+
+  @Test
+  void testRender_Path() throws Exception {
+    HttpURLConnection connection = open("/render?path=basic.psml");
+    Assertions.assertEquals(200, connection.getResponseCode());
+    Assertions.assertTrue(read(connection.getInputStream()).startsWith("%PDF-"));
+  }
+
+  @Test
+  void testRender_PathOutsideRoot() throws Exception {
+    Assertions.assertEquals(404, open("/render?path=../css/basic.css").getResponseCode());
+  }
+
+  @Test
+  void testRender_UnknownProfile() throws Exception {
+    Assertions.assertEquals(404, open("/render?profile=unknown&path=basic.psml").getResponseCode());
+  }
+
+  @Test
+  void testRender_NoDocument() throws Exception {
+    Assertions.assertEquals(405, open("/render").getResponseCode());
+  }
+
+  @Test
+  void testStatus() throws Exception {
+    HttpURLConnection connection = open("/status");
+    Assertions.assertEquals(200, connection.getResponseCode());
+    Assertions.assertTrue(read(connection.getInputStream()).contains("rejected=0"));
+  }
+
+  @Test
+  void testRender_TooManyRequests() throws Exception {
+    PdfRenderEngine engine = new PdfRenderEngine(PdfRenderConfig.builder().build());
+    RenderServer busy = new RenderServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+        Map.of(RenderServer.DEFAULT_PROFILE, engine), null, 1, 0);
+    busy.start();
+    byte[] psml = Files.readAllBytes(new File("src/test/resources/psml/basic.psml").toPath());
+    Thread stopping = new Thread(() -> busy.stop(30));
+    try (Socket socket = new Socket(busy.getAddress().getAddress(), busy.getAddress().getPort())) {
+      // The render blocks on the request body until the rest of it is sent
+      OutputStream out = socket.getOutputStream();
+      out.write(("POST /render HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + psml.length + "\r\n\r\n")
+          .getBytes(StandardCharsets.US_ASCII));
+      out.write(psml, 0, psml.length / 2);
+      out.flush();
+      while (!read(open(busy, "/status").getInputStream()).contains("admitted=1")) {
+        Thread.sleep(10);
+      }
+      HttpURLConnection rejected = open(busy, "/render?path=basic.psml");
+      Assertions.assertEquals(429, rejected.getResponseCode());
+      Assertions.assertEquals("1", rejected.getHeaderField("Retry-After"));
+      Assertions.assertEquals(1, busy.getRejected());
+
+      // The admitted request is still answered after the server starts stopping
+      stopping.start();
+      while (open(busy, "/render?path=basic.psml").getResponseCode() != 503) {
+        Thread.sleep(10);
+      }
+      out.write(psml, psml.length / 2, psml.length - psml.length / 2);
+      out.flush();
+      String response = read(socket.getInputStream());
+      Assertions.assertTrue(response.startsWith("HTTP/1.1 200"), response.lines().findFirst().orElse(""));
+      Assertions.assertTrue(response.contains("%PDF-"));
+    } finally {
+      if (stopping.getState() == Thread.State.NEW) {
+        busy.stop(0);
+      } else {
+        stopping.join(30_000);
+      }
+    }
+  }
+
+  private static HttpURLConnection open(String path) throws Exception {
+    return open(server, path);
+  }
+
+  private static HttpURLConnection open(RenderServer server, String path) throws Exception {
+    InetSocketAddress address = server.getAddress();
+    URL url = new URL("http://" + address.getHostString() + ":" + address.getPort() + path);
+    return (HttpURLConnection) url.openConnection();
+  }
+
+  private static String read(InputStream in) throws Exception {
+    try (InputStream stream = in) {
+      return new String(stream.readAllBytes(), StandardCharsets.ISO_8859_1);
+    }
+  }
+}